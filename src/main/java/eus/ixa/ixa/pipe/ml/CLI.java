@@ -181,18 +181,22 @@ public class CLI {
     Properties props = setEvalProperties(lang, model, testset, corpusFormat, netypes, clearFeatures);
     
       Evaluate evaluator = new Evaluate(props);
-      if (parsedArguments.getString("evalReport") != null) {
-        if (parsedArguments.getString("evalReport").equalsIgnoreCase("brief")) {
-          evaluator.evaluate();
-        } else if (parsedArguments.getString("evalReport").equalsIgnoreCase(
-            "error")) {
-          evaluator.evalError();
-        } else if (parsedArguments.getString("evalReport").equalsIgnoreCase(
-            "detailed")) {
+      try {
+        if (parsedArguments.getString("evalReport") != null) {
+          if (parsedArguments.getString("evalReport").equalsIgnoreCase("brief")) {
+            evaluator.evaluate();
+          } else if (parsedArguments.getString("evalReport").equalsIgnoreCase(
+              "error")) {
+            evaluator.evalError();
+          } else if (parsedArguments.getString("evalReport").equalsIgnoreCase(
+              "detailed")) {
+            evaluator.detailEvaluate();
+          }
+        } else {
           evaluator.detailEvaluate();
         }
-      } else {
-        evaluator.detailEvaluate();
+      } finally {
+        evaluator.close();
       }
   }
   
@@ -0,0 +1,567 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eus.ixa.ixa.pipe.ml.tok.RuleBasedSegmenter;
+import eus.ixa.ixa.pipe.ml.tok.RuleBasedTokenizer;
+import eus.ixa.ixa.pipe.ml.tok.Token;
+import eus.ixa.ixa.pipe.ml.utils.Span;
+import eus.ixa.ixa.pipe.ml.utils.StringUtils;
+
+/**
+ * Runs the segmentation, tokenization and any number of sequence labelers
+ * (POS tagging, lemmatization, NERC and so on) over many documents using
+ * several threads. Every document is processed through all the stages by a
+ * single task, so the adaptive data of the labelers is cleared at the start
+ * of every document and the results are the same as processing the
+ * documents one after the other. At most a bounded number of documents is
+ * queued or being processed at any time and the annotated documents are
+ * returned in input order.
+ *
+ * The labelers are shared by all the threads; each thread uses its own
+ * decoding context. The time spent and the documents and tokens processed
+ * by every stage are collected to report their throughput.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public class PipelineRunner {
+
+  /**
+   * The name of the segmentation stage.
+   */
+  public static final String SEGMENTATION = "segmentation";
+  /**
+   * The name of the tokenization stage.
+   */
+  public static final String TOKENIZATION = "tokenization";
+
+  private final Properties properties;
+  private final int threads;
+  private final int queueSize;
+  private final List<LabelerStage> labelers = new ArrayList<LabelerStage>();
+  private final Map<String, StageStatistics> statistics = new LinkedHashMap<String, StageStatistics>();
+
+  /**
+   * Construct a pipeline runner with a queue of four documents per thread.
+   *
+   * @param properties
+   *          the segmenter and tokenizer properties: language, hardParagraph
+   *          and untokenizable
+   * @param threads
+   *          the number of threads
+   */
+  public PipelineRunner(final Properties properties, final int threads) {
+    this(properties, threads, 4 * threads);
+  }
+
+  /**
+   * Construct a pipeline runner.
+   *
+   * @param properties
+   *          the segmenter and tokenizer properties: language, hardParagraph
+   *          and untokenizable
+   * @param threads
+   *          the number of threads
+   * @param queueSize
+   *          the maximum number of documents queued or being processed
+   */
+  public PipelineRunner(final Properties properties, final int threads,
+      final int queueSize) {
+    if (threads <= 0 || queueSize <= 0) {
+      throw new IllegalArgumentException(
+          "The number of threads and the queue size must be positive!");
+    }
+    this.properties = new Properties();
+    this.properties.setProperty("hardParagraph", "no");
+    this.properties.setProperty("untokenizable", "no");
+    this.properties.putAll(properties);
+    if (this.properties.getProperty("language") == null) {
+      throw new IllegalArgumentException("The language property is required!");
+    }
+    this.threads = threads;
+    this.queueSize = queueSize;
+    statistics.put(SEGMENTATION, new StageStatistics(SEGMENTATION));
+    statistics.put(TOKENIZATION, new StageStatistics(TOKENIZATION));
+  }
+
+  /**
+   * Add a sequence labeler stage, such as a POS tagger or a NERC. The stages
+   * are run in the order they are added.
+   *
+   * @param name
+   *          the name of the stage
+   * @param labeler
+   *          the sequence labeler
+   * @return this pipeline runner
+   */
+  public PipelineRunner addLabeler(final String name,
+      final StatisticalSequenceLabeler labeler) {
+    return addStage(new LabelerStage(name, labeler, false));
+  }
+
+  /**
+   * Add a lemmatizer stage. The spans types of the stage are the lemmas
+   * decoded from the shortest edit scripts predicted by the labeler.
+   *
+   * @param name
+   *          the name of the stage
+   * @param lemmatizer
+   *          the lemmatizer model
+   * @return this pipeline runner
+   */
+  public PipelineRunner addLemmatizer(final String name,
+      final StatisticalSequenceLabeler lemmatizer) {
+    return addStage(new LabelerStage(name, lemmatizer, true));
+  }
+
+  private PipelineRunner addStage(final LabelerStage stage) {
+    if (statistics.containsKey(stage.name)) {
+      throw new IllegalArgumentException("Duplicated stage name: " + stage.name);
+    }
+    labelers.add(stage);
+    statistics.put(stage.name, new StageStatistics(stage.name));
+    return this;
+  }
+
+  /**
+   * Get the statistics of every stage, in pipeline order, accumulated over
+   * all the documents processed so far.
+   *
+   * @return the statistics
+   */
+  public List<StageStatistics> getStatistics() {
+    return Collections.unmodifiableList(new ArrayList<StageStatistics>(
+        statistics.values()));
+  }
+
+  /**
+   * Process a list of texts.
+   *
+   * @param texts
+   *          the texts
+   * @return the annotated documents, in the same order as the texts
+   */
+  public List<Document> process(final List<String> texts) {
+    final List<Document> documents = new ArrayList<Document>(texts.size());
+    final Iterator<String> textIterator = texts.iterator();
+    process(new Iterator<Document>() {
+      private int index = 0;
+
+      public boolean hasNext() {
+        return textIterator.hasNext();
+      }
+
+      public Document next() {
+        return new Document(Integer.toString(index++), textIterator.next());
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }, new DocumentConsumer() {
+      public void accept(final Document document) {
+        documents.add(document);
+      }
+    });
+    return documents;
+  }
+
+  /**
+   * Process every file of a directory, in file name order. The files are
+   * read as UTF-8 text when their turn comes, so that only the queued
+   * documents are in memory.
+   *
+   * @param directory
+   *          the directory
+   * @param consumer
+   *          the consumer of the annotated documents, called in file order
+   * @throws IOException
+   *           if a file can not be read
+   */
+  public void process(final File directory, final DocumentConsumer consumer)
+      throws IOException {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Not a directory: " + directory);
+    }
+    Arrays.sort(files);
+    final List<File> textFiles = new ArrayList<File>();
+    for (final File file : files) {
+      if (file.isFile()) {
+        textFiles.add(file);
+      }
+    }
+    final Iterator<File> fileIterator = textFiles.iterator();
+    try {
+      process(new Iterator<Document>() {
+        public boolean hasNext() {
+          return fileIterator.hasNext();
+        }
+
+        public Document next() {
+          final File file = fileIterator.next();
+          try {
+            return new Document(file.getName(), readFile(file));
+          } catch (final IOException e) {
+            throw new PipelineException(e);
+          }
+        }
+
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      }, consumer);
+    } catch (final PipelineException e) {
+      throw (IOException) e.getCause();
+    }
+  }
+
+  /**
+   * Process a stream of documents. The documents are read from the iterator
+   * only when there is room for them in the queue and they are given to the
+   * consumer, in the calling thread and in input order, as soon as they and
+   * all the previous documents are annotated.
+   *
+   * @param documents
+   *          the documents, with their name and text
+   * @param consumer
+   *          the consumer of the annotated documents
+   */
+  public void process(final Iterator<Document> documents,
+      final DocumentConsumer consumer) {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final Deque<Future<Document>> queue = new ArrayDeque<Future<Document>>(
+        queueSize);
+    final long start = System.nanoTime();
+    long noDocs = 0;
+    long noTokens = 0;
+    try {
+      while (documents.hasNext()) {
+        if (queue.size() >= queueSize) {
+          final Document document = getResult(queue.poll());
+          noTokens += document.getNumberOfTokens();
+          noDocs++;
+          consumer.accept(document);
+        }
+        final Document document = documents.next();
+        queue.add(executor.submit(new Callable<Document>() {
+          public Document call() {
+            annotate(document);
+            return document;
+          }
+        }));
+      }
+      while (!queue.isEmpty()) {
+        final Document document = getResult(queue.poll());
+        noTokens += document.getNumberOfTokens();
+        noDocs++;
+        consumer.accept(document);
+      }
+    } finally {
+      for (final Future<Document> future : queue) {
+        future.cancel(true);
+      }
+      executor.shutdownNow();
+    }
+    final double seconds = (System.nanoTime() - start) / 1000000000.0;
+    System.err.printf(
+        "ixa-pipe-ml pipeline processed %d documents (%d tokens) with %d threads at %.2f docs per second and %.2f tokens per second.%n",
+        noDocs, noTokens, threads, noDocs / seconds, noTokens / seconds);
+    for (final StageStatistics stage : statistics.values()) {
+      System.err.println("  " + stage);
+    }
+  }
+
+  /**
+   * Run all the stages on a document.
+   *
+   * @param document
+   *          the document
+   */
+  private void annotate(final Document document) {
+    long start = System.nanoTime();
+    final String builtText = RuleBasedSegmenter.readText(new BufferedReader(
+        new StringReader(document.getText())));
+    final String[] sentences = new RuleBasedSegmenter(builtText, properties)
+        .segmentSentence();
+    long end = System.nanoTime();
+    final long segmentationTime = end - start;
+
+    start = end;
+    final RuleBasedTokenizer tokenizer = new RuleBasedTokenizer(builtText,
+        properties);
+    final List<List<Token>> tokens = tokenizer.tokenize(sentences);
+    final List<String[]> tokenArrays = new ArrayList<String[]>(tokens.size());
+    int noTokens = 0;
+    for (final List<Token> sentence : tokens) {
+      tokenArrays.add(StringUtils.convertListTokenToArrayStrings(sentence));
+      noTokens += sentence.size();
+    }
+    document.setTokens(tokens, tokenArrays, noTokens);
+    end = System.nanoTime();
+    statistics.get(SEGMENTATION).add(segmentationTime, noTokens);
+    statistics.get(TOKENIZATION).add(end - start, noTokens);
+
+    for (final LabelerStage stage : labelers) {
+      start = end;
+      stage.labeler.clearAdaptiveData();
+      final List<Span[]> spans = stage.labeler.seqToSpans(tokenArrays);
+      if (stage.lemmatizer) {
+        for (int i = 0; i < spans.size(); i++) {
+          StringUtils.decodeLemmasToSpans(tokenArrays.get(i), spans.get(i));
+        }
+      }
+      document.annotations.put(stage.name, spans);
+      end = System.nanoTime();
+      statistics.get(stage.name).add(end - start, noTokens);
+    }
+  }
+
+  private static String readFile(final File file) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    final BufferedReader breader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      final char[] buffer = new char[8192];
+      int read;
+      while ((read = breader.read(buffer)) != -1) {
+        sb.append(buffer, 0, read);
+      }
+    } finally {
+      breader.close();
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Waits for the annotation of a document.
+   * @param future the task
+   * @return the annotated document
+   */
+  private static Document getResult(final Future<Document> future) {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while annotating", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * A sequence labeler stage.
+   */
+  private static class LabelerStage {
+
+    private final String name;
+    private final StatisticalSequenceLabeler labeler;
+    private final boolean lemmatizer;
+
+    private LabelerStage(final String name,
+        final StatisticalSequenceLabeler labeler, final boolean lemmatizer) {
+      this.name = name;
+      this.labeler = labeler;
+      this.lemmatizer = lemmatizer;
+    }
+  }
+
+  /**
+   * Receives the annotated documents.
+   */
+  public interface DocumentConsumer {
+
+    /**
+     * Receive an annotated document.
+     * @param document the document
+     */
+    void accept(Document document);
+  }
+
+  /**
+   * A document and its annotations.
+   */
+  public static class Document {
+
+    private final String name;
+    private final String text;
+    private List<List<Token>> tokens = Collections.emptyList();
+    private List<String[]> tokenArrays = Collections.emptyList();
+    private int noTokens = 0;
+    private final Map<String, List<Span[]>> annotations = new LinkedHashMap<String, List<Span[]>>();
+
+    /**
+     * Construct a document to be annotated.
+     * @param name the name of the document
+     * @param text the text
+     */
+    public Document(final String name, final String text) {
+      this.name = name;
+      this.text = text;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    /**
+     * Get the tokens of every sentence, with their offsets in the text.
+     * @return the tokenized sentences
+     */
+    public List<List<Token>> getTokens() {
+      return tokens;
+    }
+
+    /**
+     * Get the token strings of every sentence.
+     * @return the tokenized sentences
+     */
+    public List<String[]> getTokenArrays() {
+      return tokenArrays;
+    }
+
+    public int getNumberOfTokens() {
+      return noTokens;
+    }
+
+    /**
+     * Get the spans of every sentence produced by a labeler stage.
+     * @param stage the name of the stage
+     * @return the spans of each sentence or null if there is no such stage
+     */
+    public List<Span[]> getAnnotations(final String stage) {
+      return annotations.get(stage);
+    }
+
+    private void setTokens(final List<List<Token>> tokens,
+        final List<String[]> tokenArrays, final int noTokens) {
+      this.tokens = tokens;
+      this.tokenArrays = tokenArrays;
+      this.noTokens = noTokens;
+    }
+  }
+
+  /**
+   * The documents, tokens and time processed by a stage.
+   */
+  public static class StageStatistics {
+
+    private final String name;
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+
+    private StageStatistics(final String name) {
+      this.name = name;
+    }
+
+    private void add(final long time, final int noTokens) {
+      documents.incrementAndGet();
+      tokens.addAndGet(noTokens);
+      nanos.addAndGet(time);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getDocuments() {
+      return documents.get();
+    }
+
+    public long getTokens() {
+      return tokens.get();
+    }
+
+    /**
+     * Get the time spent in the stage, added over all the threads.
+     * @return the time in seconds
+     */
+    public double getSeconds() {
+      return nanos.get() / 1000000000.0;
+    }
+
+    /**
+     * Get the documents processed per second of a single thread.
+     * @return the documents per second
+     */
+    public double getDocumentsPerSecond() {
+      final double seconds = getSeconds();
+      return seconds == 0 ? 0 : getDocuments() / seconds;
+    }
+
+    /**
+     * Get the tokens processed per second of a single thread.
+     * @return the tokens per second
+     */
+    public double getTokensPerSecond() {
+      final double seconds = getSeconds();
+      return seconds == 0 ? 0 : getTokens() / seconds;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d documents, %d tokens, %.2f docs per second, %.2f tokens per second per thread",
+          name, getDocuments(), getTokens(), getDocumentsPerSecond(),
+          getTokensPerSecond());
+    }
+  }
+
+  /**
+   * Carries the exceptions of reading the documents through the iterator.
+   */
+  private static class PipelineException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private PipelineException(final IOException e) {
+      super(e);
+    }
+  }
+}
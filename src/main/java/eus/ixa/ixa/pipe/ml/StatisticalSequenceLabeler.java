@@ -16,18 +16,19 @@
 
 package eus.ixa.ixa.pipe.ml;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 
+import eus.ixa.ixa.pipe.ml.sequence.ModelRegistry;
 import eus.ixa.ixa.pipe.ml.sequence.Sequence;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceFactory;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerME;
@@ -46,11 +47,10 @@ import eus.ixa.ixa.pipe.ml.utils.StringUtils;
 public class StatisticalSequenceLabeler {
 
   /**
-   * The models to use for every language. The keys of the hash are the
-   * language codes, the values the models.
+   * The handle of the model in the {@link ModelRegistry}, shared with the
+   * other labelers using the same model file.
    */
-  private static ConcurrentHashMap<String, SequenceLabelerModel> seqModels =
-      new ConcurrentHashMap<String, SequenceLabelerModel>();
+  private ModelRegistry.Handle modelHandle;
   /**
    * The sequence labeler.
    */
@@ -120,6 +120,28 @@ public class StatisticalSequenceLabeler {
     return probSpans.toArray(new Span[probSpans.size()]);
   }
   
+  /**
+   * Get the array of Spans of every sentence in a document. The sentences
+   * are tagged in order, sharing the adaptive data of the document, which
+   * starts cleared.
+   * @param sentences the tokens of each sentence
+   * @return the list containing the array of Sequence Spans for each sentence
+   */
+  public final List<Span[]> seqToSpans(final List<String[]> sentences) {
+    return sequenceLabeler.tag(sentences);
+  }
+
+  /**
+   * Get the array of Spans of every sentence of several documents, tagging
+   * the documents concurrently.
+   * @param documents the documents, each of them a list of tokenized sentences
+   * @param executor the executor running the tagging of each document
+   * @return for each document, the array of Sequence Spans for each sentence
+   */
+  public final List<List<Span[]>> seqToSpans(final List<List<String[]>> documents, final ExecutorService executor) {
+    return sequenceLabeler.tag(documents, executor);
+  }
+
   public final Span[] lemmatizeToSpans(final String[] tokens) {
     Span[] seqSpans = sequenceLabeler.tag(tokens);
     StringUtils.decodeLemmasToSpans(tokens, seqSpans);
@@ -151,6 +173,23 @@ public class StatisticalSequenceLabeler {
     return sequences;
   }
   
+  /**
+   * Produce the list of {@link Sequence} objects of every sentence in a
+   * document.
+   *
+   * @param sentences the tokens of each sentence
+   * @return a List of sequences for each sentence
+   */
+  public final List<List<Sequence>> getSequences(final List<String[]> sentences) {
+    List<Span[]> origSpans = sequenceLabeler.tag(sentences);
+    List<List<Sequence>> sequences = new ArrayList<List<Sequence>>(sentences.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      Span[] seqSpans = SequenceLabelerME.dropOverlappingSpans(origSpans.get(i));
+      sequences.add(getSequencesFromSpans(sentences.get(i), seqSpans));
+    }
+    return sequences;
+  }
+
   public final List<Sequence> getLemmaSequences(final String[] tokens) {
     Span[] origSpans = sequenceLabeler.tag(tokens);
     Span[] seqSpans = SequenceLabelerME.dropOverlappingSpans(origSpans);
@@ -234,8 +273,20 @@ public class StatisticalSequenceLabeler {
   }
 
   /**
-   * Loads statically the probabilistic model. Every instance of this finder
-   * will share the same model.
+   * Release the model, which can then be evicted from the
+   * {@link ModelRegistry} if no other labeler is using it. The labeler can
+   * not be used after closing it.
+   */
+  public final void close() {
+    if (modelHandle != null) {
+      modelHandle.close();
+    }
+  }
+
+  /**
+   * Loads the probabilistic model from the default {@link ModelRegistry}.
+   * Every instance of this labeler using the same model file will share the
+   * same model.
    *
    * @param lang the language
    * @param model the model to be loaded
@@ -244,18 +295,15 @@ public class StatisticalSequenceLabeler {
   private final SequenceLabelerModel loadModel(final String lang, final String model) {
     long lStartTime = new Date().getTime();
     try {
-      synchronized (seqModels) {
-        if (!seqModels.containsKey(lang+model)) {
-          seqModels.put(lang+model, new SequenceLabelerModel(new FileInputStream(model)));
-        }
-      }
+      modelHandle = ModelRegistry.getDefault().acquire(new File(model));
     } catch (IOException e) {
       e.printStackTrace();
+      return null;
     }
     long lEndTime = new Date().getTime();
     long difference = lEndTime - lStartTime;
     System.err.println("IXA pipes Sequence model loaded in: " + difference
         + " miliseconds ... [DONE]");
-    return seqModels.get(lang+model);
+    return modelHandle.getModel();
   }
 }
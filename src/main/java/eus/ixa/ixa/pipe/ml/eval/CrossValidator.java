@@ -68,6 +68,14 @@ public class CrossValidator {
    * The folds value for cross validation.
    */
   private int folds;
+  /**
+   * The maximum number of folds trained at the same time.
+   */
+  private int foldThreads;
+  /**
+   * The estimated memory of a fold in megabytes, 0 if unknown.
+   */
+  private int foldMemory;
   /**
    * The sequence encoding of the named entity spans, e.g., BIO or BILOU.
    */
@@ -96,6 +104,8 @@ public class CrossValidator {
     trainSamples = AbstractTrainer.getSequenceStream(trainData, clearFeatures, corpusFormat);
     this.beamSize = Flags.getBeamsize(params);
     this.folds = Flags.getFolds(params);
+    this.foldThreads = Flags.getFoldThreads(params);
+    this.foldMemory = Flags.getFoldMemory(params);
     this.sequenceCodec =  SequenceLabelerFactory.instantiateSequenceCodec(getSequenceCodec(Flags.getSequenceCodec(params)));
     if (params.getSettings().get("Types") != null) {
       String netypes = params.getSettings().get("Types");
@@ -115,7 +125,7 @@ public class CrossValidator {
     Map<String, Object> resources = DefaultTrainer.loadResources(params, featureGeneratorBytes);
     this.nameClassifierFactory = SequenceLabelerFactory.create(
         SequenceLabelerFactory.class.getName(), featureGeneratorBytes,
-        resources, sequenceCodec);
+        resources, sequenceCodec, Flags.getFeatureHashSize(params));
   }
   
   private void getEvalListeners(TrainingParameters params) {
@@ -138,7 +148,11 @@ public class CrossValidator {
       validator = new SequenceLabelerCrossValidator(lang,
           null, params, nameClassifierFactory,
           listeners.toArray(new SequenceLabelerEvaluationMonitor[listeners.size()]));
-      validator.evaluate(trainSamples, folds);
+      if (foldThreads > 1) {
+        validator.evaluate(trainSamples, folds, foldThreads, foldMemory * 1024L * 1024L);
+      } else {
+        validator.evaluate(trainSamples, folds);
+      }
     } catch (IOException e) {
       System.err.println("IO error while loading training set!");
       e.printStackTrace();
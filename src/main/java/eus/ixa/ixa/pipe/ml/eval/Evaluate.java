@@ -15,22 +15,21 @@
  */
 package eus.ixa.ixa.pipe.ml.eval;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
 
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.eval.EvaluationMonitor;
+import eus.ixa.ixa.pipe.ml.sequence.ModelRegistry;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceEvaluationErrorListener;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabeler;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerDetailedFMeasureListener;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerEvaluationMonitor;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerEvaluator;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerME;
-import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerModel;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceSample;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceSampleTypeFilter;
 import eus.ixa.ixa.pipe.ml.train.AbstractTrainer;
@@ -53,11 +52,9 @@ public class Evaluate {
    */
   private SequenceLabeler sequenceLabeler;
   /**
-   * The models to use for every language. The keys of the hash are the
-   * language codes, the values the models.
+   * The handle of the evaluated model in the {@link ModelRegistry}.
    */
-  private static ConcurrentHashMap<String, SequenceLabelerModel> seqModels =
-      new ConcurrentHashMap<String, SequenceLabelerModel>();
+  private ModelRegistry.Handle modelHandle;
  
   /**
    * Construct an evaluator. It takes from the properties a model,
@@ -69,7 +66,6 @@ public class Evaluate {
    */
   public Evaluate(final Properties props) throws IOException {
     
-    String lang = props.getProperty("language");
     String clearFeatures = props.getProperty("clearFeatures");
     String model = props.getProperty("model");
     String testSet = props.getProperty("testset");
@@ -81,8 +77,18 @@ public class Evaluate {
       String[] neTypes = seqTypes.split(",");
       testSamples = new SequenceSampleTypeFilter(neTypes, testSamples);
     }
-    seqModels.putIfAbsent(lang, new SequenceLabelerModel(new FileInputStream(model)));
-    sequenceLabeler = new SequenceLabelerME(seqModels.get(lang));
+    modelHandle = ModelRegistry.getDefault().acquire(new File(model));
+    sequenceLabeler = new SequenceLabelerME(modelHandle.getModel());
+  }
+
+  /**
+   * Release the evaluated model, which can then be evicted from the
+   * {@link ModelRegistry}. The evaluator can not be used after closing it.
+   */
+  public final void close() {
+    if (modelHandle != null) {
+      modelHandle.close();
+    }
   }
 
   /**
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.ml.features;
+
+/**
+ * Maps features into a fixed size feature space using the hashing trick. Each
+ * feature is hashed with the 32 bit murmur3 function into a bucket of a table
+ * of the given size, and every bucket is represented by a single shared
+ * feature string. The vocabulary of the model is thus bounded by the table
+ * size and the model lookups of the hashed features are cheaper, because the
+ * bucket strings are short, their hash codes are cached and they are compared
+ * by identity.
+ *
+ * The same table size must be used for training and for tagging; it is
+ * stored in the model manifest. Instances are thread-safe.
+ */
+public class FeatureHasher {
+
+  private static final int C1 = 0xcc9e2d51;
+  private static final int C2 = 0x1b873593;
+  private static final int SEED = 0x9747b28c;
+
+  private final int tableSize;
+  /**
+   * The bucket features, created lazily. Concurrent writes of the same
+   * bucket store equal immutable strings, so races are harmless.
+   */
+  private final String[] buckets;
+
+  /**
+   * Creates a feature hasher.
+   * @param tableSize the number of buckets of the feature space
+   */
+  public FeatureHasher(int tableSize) {
+    if (tableSize <= 0) {
+      throw new IllegalArgumentException(
+          "The feature hashing table size must be positive: " + tableSize);
+    }
+    this.tableSize = tableSize;
+    this.buckets = new String[tableSize];
+  }
+
+  /**
+   * Get the number of buckets of the feature space.
+   * @return the table size
+   */
+  public int getTableSize() {
+    return tableSize;
+  }
+
+  /**
+   * Get the bucket of a feature.
+   * @param feature the feature
+   * @return the bucket index, between 0 and the table size
+   */
+  public int hash(String feature) {
+    return (murmur3(feature) & Integer.MAX_VALUE) % tableSize;
+  }
+
+  /**
+   * Get the hashed feature which represents a feature.
+   * @param feature the feature
+   * @return the shared feature of its bucket
+   */
+  public String hashFeature(String feature) {
+    int bucket = hash(feature);
+    String hashed = buckets[bucket];
+    if (hashed == null) {
+      hashed = Integer.toString(bucket);
+      buckets[bucket] = hashed;
+    }
+    return hashed;
+  }
+
+  /**
+   * Replaces, in place, every feature of the array by its hashed feature.
+   * @param features the features
+   * @return the same array, with the hashed features
+   */
+  public String[] hashFeatures(String[] features) {
+    for (int i = 0; i < features.length; i++) {
+      features[i] = hashFeature(features[i]);
+    }
+    return features;
+  }
+
+  /**
+   * Murmur3 32 bit hash of the UTF-16 code units of a string, two characters
+   * per block.
+   * @param feature the string
+   * @return the hash
+   */
+  private static int murmur3(String feature) {
+    int length = feature.length();
+    int h = SEED;
+    int i = 1;
+    for (; i < length; i += 2) {
+      int k = feature.charAt(i - 1) | (feature.charAt(i) << 16);
+      h ^= mixK(k);
+      h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+    }
+    if ((length & 1) == 1) {
+      h ^= mixK(feature.charAt(length - 1));
+    }
+    h ^= length * 2;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private static int mixK(int k) {
+    k *= C1;
+    k = Integer.rotateLeft(k, 15);
+    return k * C2;
+  }
+}
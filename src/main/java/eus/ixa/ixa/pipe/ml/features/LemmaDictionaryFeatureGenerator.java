@@ -56,8 +56,9 @@ public class LemmaDictionaryFeatureGenerator extends CustomFeatureGenerator impl
     // cache annotation results for each sentence
     if (currentSentence != tokens) {
       currentSentence = tokens;
-      currentTags = posModelResource.seqToSpans(tokens);
-      currentLemmas = lemmaDictResource.lemmatize(tokens, currentTags);
+      currentTags = SentenceAnnotationCache.getTags(tokens, posModelResource);
+      currentLemmas = SentenceAnnotationCache.getLemmas(tokens,
+          posModelResource, lemmaDictResource);
     }
     String lemma = currentLemmas.get(index);
     features.add("lemmaDict=" + lemma);
@@ -32,7 +32,7 @@ public class LemmaModelFeatureGenerator extends CustomFeatureGenerator implement
     //cache annotations for each sentence
     if (currentSentence != tokens) {
       currentSentence = tokens;
-      currentLemmas = seqModelResource.lemmatize(tokens);
+      currentLemmas = SentenceAnnotationCache.getLemmas(tokens, seqModelResource);
     }
     String lemma = currentLemmas[index];
     features.add("lemmaModel=" + lemma);
@@ -66,13 +66,11 @@ public class MFSFeatureGenerator extends CustomFeatureGenerator implements
     // cache annotation results for each sentence
     if (currentSentence != tokens) {
       currentSentence = tokens;
-      currentTags = posModelResource.seqToSpans(tokens);
-      currentLemmas = lemmaDictResource.lemmatize(tokens, currentTags);
-      if (isBio) {
-        currentMFSList = mfsDictResource.getFirstSenseBio(currentLemmas, currentTags);
-      } else {
-        currentMFSList = mfsDictResource.getFirstSenseBilou(currentLemmas, currentTags);
-      }
+      currentTags = SentenceAnnotationCache.getTags(tokens, posModelResource);
+      currentLemmas = SentenceAnnotationCache.getLemmas(tokens,
+          posModelResource, lemmaDictResource);
+      currentMFSList = SentenceAnnotationCache.getFirstSenses(tokens,
+          posModelResource, lemmaDictResource, mfsDictResource, isBio);
     }
     String posTag = currentTags[index].getType();
 
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.ml.features;
+
+/**
+ * Marks the custom feature generators whose features depend on the previous
+ * outcomes. The sequence labeler caches the features of the other generators
+ * once per token of a sentence, while the features of these generators are
+ * computed again for every hypothesis of the beam.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public interface OutcomeDependentFeatureGenerator {
+}
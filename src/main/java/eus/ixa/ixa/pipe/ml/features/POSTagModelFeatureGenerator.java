@@ -36,7 +36,7 @@ public class POSTagModelFeatureGenerator extends CustomFeatureGenerator implemen
     //cache annotations for each sentence
     if (currentSentence != tokens) {
       currentSentence = tokens;
-      currentTags = posModelResource.seqToSpans(tokens);
+      currentTags = SentenceAnnotationCache.getTags(tokens, posModelResource);
     }
     String posTag = currentTags[index].getType();
     if (isPos) {
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.features;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eus.ixa.ixa.pipe.ml.lemma.DictionaryLemmatizer;
+import eus.ixa.ixa.pipe.ml.resources.MFSResource;
+import eus.ixa.ixa.pipe.ml.resources.SequenceModelResource;
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+/**
+ * Annotations of the sentence being labeled, shared by the feature
+ * generators so that the POS tags, lemmas and most frequent senses of a
+ * sentence are computed once for all of them. The annotations are kept for
+ * the sentence last seen by the current thread, identified by its tokens
+ * array, and for every resource used to compute them.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+final class SentenceAnnotationCache {
+
+  private static final ThreadLocal<SentenceAnnotationCache> threadCache = new ThreadLocal<SentenceAnnotationCache>() {
+    @Override
+    protected SentenceAnnotationCache initialValue() {
+      return new SentenceAnnotationCache();
+    }
+  };
+
+  private String[] sentence;
+  private final Map<Key, Object> annotations = new HashMap<Key, Object>();
+
+  private SentenceAnnotationCache() {
+  }
+
+  /**
+   * Get the POS tags of a sentence.
+   * @param tokens the sentence
+   * @param posModel the POS tagger
+   * @return the POS tags
+   */
+  static Span[] getTags(final String[] tokens,
+      final SequenceModelResource posModel) {
+    final Key key = new Key("tags", posModel, null, null);
+    Span[] tags = (Span[]) get(tokens, key);
+    if (tags == null) {
+      tags = posModel.seqToSpans(tokens);
+      put(tokens, key, tags);
+    }
+    return tags;
+  }
+
+  /**
+   * Get the lemmas of a sentence from a lemmatizer model.
+   * @param tokens the sentence
+   * @param lemmaModel the lemmatizer
+   * @return the lemmas
+   */
+  static String[] getLemmas(final String[] tokens,
+      final SequenceModelResource lemmaModel) {
+    final Key key = new Key("modelLemmas", lemmaModel, null, null);
+    String[] lemmas = (String[]) get(tokens, key);
+    if (lemmas == null) {
+      lemmas = lemmaModel.lemmatize(tokens);
+      put(tokens, key, lemmas);
+    }
+    return lemmas;
+  }
+
+  /**
+   * Get the lemmas of a sentence from a lemma dictionary.
+   * @param tokens the sentence
+   * @param posModel the POS tagger
+   * @param lemmaDict the lemma dictionary
+   * @return the lemmas
+   */
+  @SuppressWarnings("unchecked")
+  static List<String> getLemmas(final String[] tokens,
+      final SequenceModelResource posModel, final DictionaryLemmatizer lemmaDict) {
+    final Key key = new Key("dictLemmas", posModel, lemmaDict, null);
+    List<String> lemmas = (List<String>) get(tokens, key);
+    if (lemmas == null) {
+      lemmas = lemmaDict.lemmatize(tokens, getTags(tokens, posModel));
+      put(tokens, key, lemmas);
+    }
+    return lemmas;
+  }
+
+  /**
+   * Get the most frequent senses of a sentence.
+   * @param tokens the sentence
+   * @param posModel the POS tagger
+   * @param lemmaDict the lemma dictionary
+   * @param mfsDict the most frequent sense resource
+   * @param isBio whether to use the BIO encoding instead of BILOU
+   * @return the most frequent senses
+   */
+  @SuppressWarnings("unchecked")
+  static List<String> getFirstSenses(final String[] tokens,
+      final SequenceModelResource posModel,
+      final DictionaryLemmatizer lemmaDict, final MFSResource mfsDict,
+      final boolean isBio) {
+    final Key key = new Key(isBio ? "mfsBio" : "mfsBilou", posModel,
+        lemmaDict, mfsDict);
+    List<String> senses = (List<String>) get(tokens, key);
+    if (senses == null) {
+      final Span[] tags = getTags(tokens, posModel);
+      final List<String> lemmas = getLemmas(tokens, posModel, lemmaDict);
+      senses = isBio ? mfsDict.getFirstSenseBio(lemmas, tags) : mfsDict
+          .getFirstSenseBilou(lemmas, tags);
+      put(tokens, key, senses);
+    }
+    return senses;
+  }
+
+  private static Object get(final String[] tokens, final Key key) {
+    final SentenceAnnotationCache cache = threadCache.get();
+    if (cache.sentence != tokens) {
+      cache.sentence = tokens;
+      cache.annotations.clear();
+    }
+    return cache.annotations.get(key);
+  }
+
+  private static void put(final String[] tokens, final Key key,
+      final Object annotation) {
+    final SentenceAnnotationCache cache = threadCache.get();
+    // computing the annotation may have labeled other sentences
+    if (cache.sentence == tokens) {
+      cache.annotations.put(key, annotation);
+    }
+  }
+
+  /**
+   * The kind of annotation and the resources used to compute it, compared by
+   * identity.
+   */
+  private static final class Key {
+
+    private final String layer;
+    private final Object first;
+    private final Object second;
+    private final Object third;
+
+    private Key(final String layer, final Object first, final Object second,
+        final Object third) {
+      this.layer = layer;
+      this.first = first;
+      this.second = second;
+      this.third = third;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) other;
+      return layer.equals(key.layer) && first == key.first
+          && second == key.second && third == key.third;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = layer.hashCode();
+      hash = 31 * hash + System.identityHashCode(first);
+      hash = 31 * hash + System.identityHashCode(second);
+      return 31 * hash + System.identityHashCode(third);
+    }
+  }
+}
@@ -41,7 +41,7 @@ import eus.ixa.ixa.pipe.ml.utils.Span;
  * @version 2015-03-30
  */
 public class SuperSenseFeatureGenerator extends CustomFeatureGenerator implements
-    ArtifactToSerializerMapper {
+    ArtifactToSerializerMapper, OutcomeDependentFeatureGenerator {
 
   private SequenceModelResource posModelResource;
   private DictionaryLemmatizer lemmaDictResource;
@@ -61,13 +61,11 @@ public class SuperSenseFeatureGenerator extends CustomFeatureGenerator implement
     // cache results for each sentence
     if (currentSentence != tokens) {
       currentSentence = tokens;
-      currentTags = posModelResource.seqToSpans(tokens);
-      currentLemmas = lemmaDictResource.lemmatize(tokens, currentTags);
-      if (isBio) {
-        currentMFSList = mfsDictResource.getFirstSenseBio(currentLemmas, currentTags);
-      } else {
-      currentMFSList = mfsDictResource.getFirstSenseBilou(currentLemmas, currentTags);
-      }
+      currentTags = SentenceAnnotationCache.getTags(tokens, posModelResource);
+      currentLemmas = SentenceAnnotationCache.getLemmas(tokens,
+          posModelResource, lemmaDictResource);
+      currentMFSList = SentenceAnnotationCache.getFirstSenses(tokens,
+          posModelResource, lemmaDictResource, mfsDictResource, isBio);
     }
 
     String curLemma = currentLemmas.get(index);
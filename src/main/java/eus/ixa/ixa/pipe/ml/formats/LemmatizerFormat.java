@@ -22,6 +22,10 @@ import eus.ixa.ixa.pipe.ml.utils.StringUtils;
  * This format differs from TabulatedFormat in which the type of the Span
  * consists of an automatically induced lemma class.
  * 
+ * The lemma classes are computed on the thread reading the samples. Only the
+ * training events built from the samples are generated in parallel, by the
+ * number of threads of the EventThreads training parameter.
+ * 
  * @author ragerri
  * @version 2016-03-15
  * 
@@ -1,14 +1,16 @@
 package eus.ixa.ixa.pipe.ml.lemma;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,19 +28,35 @@ import opennlp.tools.util.model.SerializableArtifact;
 /**
  * Lemmatize by simple dictionary lookup into a hashmap built from a file
  * containing, for each line, word\tablemma\tabpostag.
- * 
+ *
+ * The entries are kept in an open addressing hash table over long keys
+ * combining the id of the postag with the hash code of the word, so that
+ * looking up a lemma does not create any object. The dictionary is
+ * serialized in a binary format, listing the distinct postags and lemmas
+ * once; the text format is still accepted when loading.
+ *
  * @author ragerri
  * @version 2014-07-08
  */
 public class DictionaryLemmatizer implements SerializableArtifact {
 
 private static final Pattern spacePattern = Pattern.compile("\t");
-  
+  /**
+   * The first bytes of a binary dictionary; no text dictionary starts with
+   * NUL.
+   */
+  private static final int MAGIC = 0x0049584d;
+  private static final int VERSION = 1;
+
   public static class DictionaryLemmatizerSerializer implements ArtifactSerializer<DictionaryLemmatizer> {
 
     public DictionaryLemmatizer create(InputStream in) throws IOException,
         InvalidFormatException {
-      return new DictionaryLemmatizer(in);
+      BufferedInputStream bufferedIn = new BufferedInputStream(in);
+      if (isBinary(bufferedIn)) {
+        return read(bufferedIn);
+      }
+      return new DictionaryLemmatizer(bufferedIn);
     }
 
     public void serialize(DictionaryLemmatizer artifact, OutputStream out)
@@ -46,63 +64,212 @@ private static final Pattern spacePattern = Pattern.compile("\t");
       artifact.serialize(out);
     }
   }
-  
+
+  /**
+   * The ids of the postags.
+   */
+  private final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+  /**
+   * The postags by id.
+   */
+  private final List<String> tags = new ArrayList<String>();
   /**
-   * The hashmap containing the dictionary.
+   * The key of each entry, the postag id in the high bits and the hash code
+   * of the word in the low bits.
    */
-  private final HashMap<List<String>, String> dictMap;
+  private long[] keys = new long[16];
+  private String[] words = new String[16];
+  private String[] lemmas = new String[16];
+  /**
+   * Open addressing hash table with the entry indexes plus one, 0 is empty.
+   */
+  private int[] table = new int[32];
+  private int size = 0;
 
   /**
    * Construct a hashmap from the input tab separated dictionary.
-   * 
+   *
    * The input file should have, for each line, word\tablemma\tabpostag
-   * 
+   *
    * @param dictionary
    *          the input dictionary via inputstream
    */
   public DictionaryLemmatizer(final InputStream dictionary) {
-    this.dictMap = new HashMap<List<String>, String>();
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
         dictionary, Charset.forName("UTF-8")));
+    // share the lemmas among the entries
+    final Map<String, String> lemmaPool = new HashMap<String, String>();
     String line;
     try {
       while ((line = breader.readLine()) != null) {
         final String[] elems = spacePattern.split(line);
-        this.dictMap.put(Arrays.asList(elems[0], elems[2]), elems[1]);
+        String lemma = lemmaPool.get(elems[1]);
+        if (lemma == null) {
+          lemma = elems[1];
+          lemmaPool.put(lemma, lemma);
+        }
+        this.put(elems[0], elems[2], lemma);
       }
     } catch (final IOException e) {
       e.printStackTrace();
     }
+    this.trim();
+  }
+
+  private DictionaryLemmatizer() {
   }
 
   /**
-   * Get the Map containing the dictionary.
-   * 
-   * @return dictMap the Map
+   * Check if a stream contains a binary dictionary, without consuming it.
+   * @param in the stream, which must support mark
+   * @return true if the stream starts with a binary dictionary
+   * @throws IOException if io error
    */
-  public HashMap<List<String>, String> getDictMap() {
-    return this.dictMap;
+  public static boolean isBinary(final BufferedInputStream in) throws IOException {
+    in.mark(4);
+    try {
+      return new DataInputStream(in).readInt() == MAGIC;
+    } catch (final EOFException e) {
+      return false;
+    } finally {
+      in.reset();
+    }
+  }
+
+  /**
+   * Read a binary dictionary written by {@link #serialize(OutputStream)}.
+   * @param in the stream
+   * @return the dictionary
+   * @throws IOException if io error
+   */
+  public static DictionaryLemmatizer read(final InputStream in) throws IOException {
+    final DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != MAGIC) {
+      throw new InvalidFormatException("Not a binary lemma dictionary!");
+    }
+    final int version = data.readInt();
+    if (version != VERSION) {
+      throw new InvalidFormatException("Unsupported lemma dictionary version "
+          + version + "!");
+    }
+    final DictionaryLemmatizer dictionary = new DictionaryLemmatizer();
+    final String[] tagTable = new String[data.readInt()];
+    for (int i = 0; i < tagTable.length; i++) {
+      tagTable[i] = data.readUTF();
+    }
+    final String[] lemmaTable = new String[data.readInt()];
+    for (int i = 0; i < lemmaTable.length; i++) {
+      lemmaTable[i] = data.readUTF();
+    }
+    final int entries = data.readInt();
+    for (int i = 0; i < entries; i++) {
+      final String word = data.readUTF();
+      final String tag = tagTable[data.readInt()];
+      dictionary.put(word, tag, lemmaTable[data.readInt()]);
+    }
+    dictionary.trim();
+    return dictionary;
+  }
+
+  /**
+   * Add an entry, replacing the lemma if the word and postag are already in
+   * the dictionary.
+   */
+  private void put(final String word, final String postag, final String lemma) {
+    Integer tagId = tagIds.get(postag);
+    if (tagId == null) {
+      tagId = tags.size();
+      tagIds.put(postag, tagId);
+      tags.add(postag);
+    }
+    final long key = key(tagId, word);
+    final int index = indexOf(key, word);
+    if (index >= 0) {
+      lemmas[index] = lemma;
+      return;
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, Math.max(16, size * 2));
+      words = Arrays.copyOf(words, Math.max(16, size * 2));
+      lemmas = Arrays.copyOf(lemmas, Math.max(16, size * 2));
+    }
+    keys[size] = key;
+    words[size] = word;
+    lemmas[size] = lemma;
+    size++;
+    if (size * 2 > table.length) {
+      table = new int[table.length * 2];
+      for (int i = 0; i < size; i++) {
+        insert(i);
+      }
+    } else {
+      insert(size - 1);
+    }
+  }
+
+  /**
+   * Release the unused capacity of the entries once loaded.
+   */
+  private void trim() {
+    keys = Arrays.copyOf(keys, size);
+    words = Arrays.copyOf(words, size);
+    lemmas = Arrays.copyOf(lemmas, size);
+  }
+
+  private void insert(final int index) {
+    final int mask = table.length - 1;
+    int slot = mix(keys[index]) & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = index + 1;
+  }
+
+  private int indexOf(final long key, final String word) {
+    final int mask = table.length - 1;
+    int slot = mix(key) & mask;
+    int entry;
+    while ((entry = table[slot]) != 0) {
+      final int index = entry - 1;
+      if (keys[index] == key && words[index].equals(word)) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private static long key(final int tagId, final String word) {
+    return ((long) tagId << 32) | (word.hashCode() & 0xffffffffL);
+  }
+
+  private static int mix(final long key) {
+    final long h = key * 0x9e3779b97f4a7c15L;
+    return (int) (h ^ (h >>> 32));
   }
 
   /**
-   * Get the dictionary keys (word and postag).
-   * 
-   * @param word
-   *          the surface form word
-   * @param postag
-   *          the assigned postag
-   * @return returns the dictionary keys
+   * Get a Map with the entries of the dictionary. The map is a copy built
+   * from the dictionary on every call.
+   *
+   * @return dictMap the Map
    */
-  private List<String> getDictKeys(final String word, final String postag) {
-    final List<String> keys = new ArrayList<String>();
-    keys.addAll(Arrays.asList(word.toLowerCase(), postag));
-    return keys;
+  public HashMap<List<String>, String> getDictMap() {
+    final HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
+    for (int i = 0; i < size; i++) {
+      dictMap.put(Arrays.asList(words[i], getTag(i)), lemmas[i]);
+    }
+    return dictMap;
+  }
+
+  private String getTag(final int index) {
+    return tags.get((int) (keys[index] >>> 32));
   }
-  
+
   public List<String> lemmatize(final String[] tokens, final Span[] postags) {
     List<String> lemmas = new ArrayList<String>();
     for (int i = 0; i < tokens.length; i++) {
-      lemmas.add(this.apply(tokens[i], postags[i].getType())); 
+      lemmas.add(this.apply(tokens[i], postags[i].getType()));
     }
     return lemmas;
   }
@@ -114,30 +281,54 @@ private static final Pattern spacePattern = Pattern.compile("\t");
    * @return the lemma
    */
   public String apply(final String word, final String postag) {
-    String lemma = null;
-    final List<String> keys = this.getDictKeys(word, postag);
-    // lookup lemma as value of the map
-    final String keyValue = this.dictMap.get(keys);
-    if (keyValue != null) {
-      lemma = keyValue;
-    } else {
-      lemma = "O";
+    final Integer tagId = this.tagIds.get(postag);
+    if (tagId == null) {
+      return "O";
     }
-    return lemma;
+    // toLowerCase returns the same string for lowercased words
+    final String lowercased = word.toLowerCase();
+    final int index = this.indexOf(key(tagId, lowercased), lowercased);
+    return index < 0 ? "O" : this.lemmas[index];
   }
-  
-  public void serialize(OutputStream out) throws IOException {
-    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
 
-    for (Map.Entry<List<String>, String> entry : dictMap.entrySet()) {
-      writer.write(entry.getKey().get(0) + "\t" + entry.getValue() + "\t" + entry.getKey().get(1) +"\n");
+  /**
+   * Serializes the dictionary in its binary format: a header with the magic
+   * number and the version, the postags, the distinct lemmas and the entries,
+   * each with its word and the indexes of its postag and lemma.
+   * @param out the output stream
+   * @throws IOException if io error
+   */
+  public void serialize(OutputStream out) throws IOException {
+    final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(tags.size());
+    for (final String tag : tags) {
+      data.writeUTF(tag);
+    }
+    final Map<String, Integer> lemmaIds = new HashMap<String, Integer>();
+    final List<String> lemmaTable = new ArrayList<String>();
+    for (int i = 0; i < size; i++) {
+      if (!lemmaIds.containsKey(lemmas[i])) {
+        lemmaIds.put(lemmas[i], lemmaTable.size());
+        lemmaTable.add(lemmas[i]);
+      }
     }
-    writer.flush();
+    data.writeInt(lemmaTable.size());
+    for (final String lemma : lemmaTable) {
+      data.writeUTF(lemma);
+    }
+    data.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      data.writeUTF(words[i]);
+      data.writeInt((int) (keys[i] >>> 32));
+      data.writeInt(lemmaIds.get(lemmas[i]));
+    }
+    data.flush();
   }
 
   public Class<?> getArtifactSerializerClass() {
     return DictionaryLemmatizerSerializer.class;
   }
-  
-}
 
+}
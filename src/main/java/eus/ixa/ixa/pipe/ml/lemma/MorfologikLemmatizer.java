@@ -18,19 +18,14 @@ package eus.ixa.ixa.pipe.ml.lemma;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 
-import morfologik.stemming.Dictionary;
-import morfologik.stemming.DictionaryLookup;
-import morfologik.stemming.IStemmer;
-import morfologik.stemming.WordData;
+import eus.ixa.ixa.pipe.ml.resources.MorfologikLookup;
 
 /**
  * Lemmatizer based on Morfologik Stemming library. It requires a FSA Morfologik
- * dictionary as input.
+ * dictionary as input. The analyses of the most frequent words are cached, and
+ * an instance can be shared by several threads.
  * 
  * @author ragerri
  * @version 2014-07-08
@@ -39,9 +34,9 @@ import morfologik.stemming.WordData;
 public class MorfologikLemmatizer {
 
   /**
-   * The Morfologik steamer to perform lemmatization with FSA dictionaries.
+   * The Morfologik lookup to perform lemmatization with FSA dictionaries.
    */
-  private final IStemmer dictLookup;
+  private final MorfologikLookup dictLookup;
 
   /**
    * Reads a dictionary in morfologik FSA format.
@@ -56,97 +51,55 @@ public class MorfologikLemmatizer {
    */
   public MorfologikLemmatizer(final URL dictURL)
       throws IOException {
-    this.dictLookup = new DictionaryLookup(Dictionary.read(dictURL));
+    this(dictURL, MorfologikLookup.DEFAULT_CACHE_SIZE);
   }
 
   /**
-   * Get the lemma for a surface form word and a postag from a FSA morfologik
-   * generated dictionary.
+   * Reads a dictionary in morfologik FSA format.
    * 
-   * @param word
-   *          the surface form
-   * @return the hashmap with the word and tag as keys and the lemma as value
+   * @param dictURL
+   *          the URL containing the dictionary
+   * @param cacheSize
+   *          the maximum number of words whose analyses are cached
+   * @throws IOException
+   *           throws an exception if dictionary path is not correct
    */
-  private HashMap<List<String>, String> getLemmaTagsDict(final String word) {
-    final List<WordData> wdList = this.dictLookup.lookup(word);
-    final HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
-    for (final WordData wd : wdList) {
-      final List<String> wordLemmaTags = new ArrayList<String>();
-      wordLemmaTags.add(word);
-      wordLemmaTags.add(wd.getTag().toString());
-      dictMap.put(wordLemmaTags, wd.getStem().toString());
-    }
-    return dictMap;
+  public MorfologikLemmatizer(final URL dictURL, final int cacheSize)
+      throws IOException {
+    this.dictLookup = new MorfologikLookup(dictURL, cacheSize);
   }
-  
+
   public final void getAllPosLemmas(final String word, List<String> posLemmaValues) {
-    final List<WordData> wdList = this.dictLookup.lookup(word);
-    for (final WordData wd : wdList) {
-      posLemmaValues.add(wd.getTag().toString() + "#" + wd.getStem().toString());
+    final MorfologikLookup.Analyses analyses = this.dictLookup.lookup(word);
+    for (int i = 0; i < analyses.size(); i++) {
+      posLemmaValues.add(analyses.getTag(i) + "#" + analyses.getLemma(i));
     }
   }
 
   /**
-   * Generate the dictionary keys (word, postag).
-   * 
-   * @param word
-   *          the surface form
-   * @param postag
-   *          the assigned postag
-   * @return a list of keys consisting of the word and its postag
-   */
-  private List<String> getDictKeys(final String word, final String postag) {
-    final List<String> keys = new ArrayList<String>();
-    keys.addAll(Arrays.asList(word.toLowerCase(), postag));
-    return keys;
-  }
-
-  /**
-   * Generates the dictionary map.
-   * 
-   * @param word
-   *          the surface form word
-   * @param postag
-   *          the postag assigned by the pos tagger
-   * @return the hash map dictionary
-   */
-  private HashMap<List<String>, String> getDictMap(final String word,
-      final String postag) {
-    HashMap<List<String>, String> dictMap = new HashMap<List<String>, String>();
-    dictMap = this.getLemmaTagsDict(word.toLowerCase());
-    return dictMap;
-  }
-  
-  /* (non-Javadoc)
-   * @see eus.ixa.ixa.pipe.lemma.Lemmatizer#lemmatize(java.lang.String[], java.lang.String[])
+   * Lemmatize a sentence.
+   * @param tokens the tokens
+   * @param postags the postags of the tokens
+   * @return the lemmas
    */
   public String[] lemmatize(final String[] tokens, final String[] postags) {
-    List<String> lemmas = new ArrayList<String>();
+    final String[] lemmas = new String[tokens.length];
     for (int i = 0; i < tokens.length; i++) {
-      lemmas.add(this.apply(tokens[i], postags[i])); 
+      lemmas[i] = this.apply(tokens[i], postags[i]);
     }
-    return lemmas.toArray(new String[lemmas.size()]);
+    return lemmas;
   }
 
   /**
    * Looks-up the lemma in a dictionary. Outputs "O" if not found.
- * @param word the token
- * @param postag the postag
- * @return the lemma
- */
-public String apply(final String word, final String postag) {
-    String lemma = null;
-    final List<String> keys = this.getDictKeys(word, postag);
-    final HashMap<List<String>, String> dictMap = this.getDictMap(word, postag);
-    // lookup lemma as value of the map
-    final String keyValue = dictMap.get(keys);
-    if (keyValue != null) {
-      lemma = keyValue;
-    } else {
-      lemma = "O";
-    }
-    return lemma;
+   * @param word the token
+   * @param postag the postag
+   * @return the lemma
+   */
+  public String apply(final String word, final String postag) {
+    final String lemma = this.dictLookup.lookup(word.toLowerCase()).getLemma(
+        postag);
+    return lemma == null ? "O" : lemma;
   }
 
 }
-
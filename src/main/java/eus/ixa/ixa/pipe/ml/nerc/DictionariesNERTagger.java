@@ -18,15 +18,14 @@ package eus.ixa.ixa.pipe.ml.nerc;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import eus.ixa.ixa.pipe.ml.StatisticalSequenceLabeler;
 import eus.ixa.ixa.pipe.ml.resources.Dictionaries;
+import eus.ixa.ixa.pipe.ml.resources.TokenTrie;
 import eus.ixa.ixa.pipe.ml.sequence.Sequence;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceFactory;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerME;
 import eus.ixa.ixa.pipe.ml.utils.Span;
-import eus.ixa.ixa.pipe.ml.utils.StringUtils;
 
 /**
  * Named Entity Recognition module based on {@link Dictionaries} objects This
@@ -105,31 +104,19 @@ public class DictionariesNERTagger {
 
   /**
    * Detects Named Entities in a {@link Dictionaries} by NE type ignoring case.
+   * Every occurrence of every dictionary entry is found with the token tries
+   * of the dictionaries, in time linear in the sentence length.
    * 
    * @param tokens
    *          the tokenized sentence
    * @return spans of the Named Entities
    */
   public final Span[] nercToSpans(final String[] tokens) {
-    List<Span> neSpans = new ArrayList<Span>();
-    for (Map<String, String> neDict : dictionaries.getIgnoreCaseDictionaries()) {
-      for (Map.Entry<String, String> neEntry : neDict.entrySet()) {
-        String neForm = neEntry.getKey();
-        String neType = neEntry.getValue();
-        List<Integer> neIds = StringUtils.exactTokenFinderIgnoreCase(neForm,
-            tokens);
-        if (!neIds.isEmpty()) {
-          for (int i = 0; i < neIds.size(); i += 2) {
-            Span neSpan = new Span(neIds.get(i), neIds.get(i+1), neType);
-            neSpans.add(neSpan);
-            if (debug) {
-              System.err.println(neSpans.toString());
-            }
-          }
-        }
-      }
+    String[] lowercaseTokens = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      lowercaseTokens[i] = tokens[i].toLowerCase();
     }
-    return neSpans.toArray(new Span[neSpans.size()]);
+    return findSpans(dictionaries.getIgnoreCaseDictionaryTries(), lowercaseTokens);
   }
 
   /**
@@ -141,23 +128,26 @@ public class DictionariesNERTagger {
    * @return spans of the Named Entities all
    */
   public final Span[] nercToSpansExact(final String[] tokens) {
+    return findSpans(dictionaries.getDictionaryTries(), tokens);
+  }
+
+  /**
+   * Finds the entries of every dictionary in a sentence.
+   * 
+   * @param dictionaryTries
+   *          the dictionaries
+   * @param tokens
+   *          the tokenized sentence
+   * @return spans of the Named Entities
+   */
+  private Span[] findSpans(final List<TokenTrie> dictionaryTries,
+      final String[] tokens) {
     List<Span> neSpans = new ArrayList<Span>();
-    for (Map<String, String> neDict : dictionaries.getDictionaries()) {
-      for (Map.Entry<String, String> neEntry : neDict.entrySet()) {
-        String neForm = neEntry.getKey();
-        String neType = neEntry.getValue();
-        List<Integer> neIds = StringUtils.exactTokenFinder(neForm,
-            tokens);
-        if (!neIds.isEmpty()) {
-          for (int i = 0; i < neIds.size(); i += 2) {
-            Span neSpan = new Span(neIds.get(i), neIds.get(i+1), neType);
-            neSpans.add(neSpan);
-            if (debug) {
-              System.err.println(neSpans.toString());
-            }
-          }
-        }
-      }
+    for (TokenTrie neDict : dictionaryTries) {
+      neDict.findAll(tokens, neSpans);
+    }
+    if (debug) {
+      System.err.println(neSpans.toString());
     }
     return neSpans.toArray(new Span[neSpans.size()]);
   }
@@ -18,17 +18,14 @@ package eus.ixa.ixa.pipe.ml.pos;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.List;
 
-import morfologik.stemming.Dictionary;
-import morfologik.stemming.DictionaryLookup;
-import morfologik.stemming.IStemmer;
-import morfologik.stemming.WordData;
+import eus.ixa.ixa.pipe.ml.resources.MorfologikLookup;
 
 /**
  * POS tagger based on Morfologik Stemming library. It requires a FSA Morfologik
  * dictionary as input. Right now this is only thought to work with monosemic
- * dictionaries.
+ * dictionaries. The analyses of the most frequent words are cached, and an
+ * instance can be shared by several threads.
  * 
  * @author ragerri
  * @version 2014-12-05
@@ -37,9 +34,9 @@ import morfologik.stemming.WordData;
 public class MorfologikTagger implements DictionaryTagger {
 
   /**
-   * The Morfologik steamer to perform pos tagging with FSA dictionaries.
+   * The Morfologik lookup to perform pos tagging with FSA dictionaries.
    */
-  private final IStemmer dictLookup;
+  private final MorfologikLookup dictLookup;
 
   /**
    * Reads a dictionary in morfologik FSA format.
@@ -53,7 +50,24 @@ public class MorfologikTagger implements DictionaryTagger {
    */
   public MorfologikTagger(final URL dictURL, final String aLang)
       throws IOException {
-    this.dictLookup = new DictionaryLookup(Dictionary.read(dictURL));
+    this(dictURL, aLang, MorfologikLookup.DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Reads a dictionary in morfologik FSA format.
+   * 
+   * @param dictURL
+   *          the URL containing the dictionary
+   * @param aLang
+   *          the language
+   * @param cacheSize
+   *          the maximum number of words whose analyses are cached
+   * @throws IOException
+   *           throws an exception if dictionary path is not correct
+   */
+  public MorfologikTagger(final URL dictURL, final String aLang,
+      final int cacheSize) throws IOException {
+    this.dictLookup = new MorfologikLookup(dictURL, cacheSize);
   }
 
   /**
@@ -65,10 +79,11 @@ public class MorfologikTagger implements DictionaryTagger {
    * @return the hashmap with the word as key and the postag as value
    */
   public String tag(final String word, final String posTag) {
-    final List<WordData> wdList = this.dictLookup.lookup(word.toLowerCase());
+    final MorfologikLookup.Analyses analyses = this.dictLookup.lookup(word
+        .toLowerCase());
     String newPosTag = null;
-    for (final WordData wd : wdList) {
-      newPosTag = wd.getTag().toString();
+    if (analyses.size() > 0) {
+      newPosTag = analyses.getTag(analyses.size() - 1);
     }
     if (newPosTag == null) {
       newPosTag = posTag;
@@ -24,7 +24,6 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -32,8 +31,8 @@ import java.util.regex.Pattern;
 
 import com.google.common.base.Joiner;
 
+import eus.ixa.ixa.pipe.ml.resources.TokenTrie;
 import eus.ixa.ixa.pipe.ml.utils.Span;
-import eus.ixa.ixa.pipe.ml.utils.StringUtils;
 
 /**
  * Reads a dictionary multiword\tmultiwordlemma\tpostag\tambiguity and matches
@@ -47,7 +46,11 @@ public class MultiWordMatcher {
 
   private static final Pattern tabPattern = Pattern.compile("\t");
   private static final Pattern linePattern = Pattern.compile("#");
-  private static Map<String, String> dictionary;
+  /**
+   * The lowercased multiwords and their postags as a token trie. It is
+   * immutable, so the matcher can be shared between threads.
+   */
+  private final TokenTrie dictionary;
 
   /**
    * Construct a multiword dictionary matcher.
@@ -55,18 +58,18 @@ public class MultiWordMatcher {
    * @throws IOException if io problems
    */
   public MultiWordMatcher(final InputStream dictInputStream) throws IOException {
-    if (dictionary == null) {
-      loadDictionary(dictInputStream);
-    }
+    this.dictionary = loadDictionary(dictInputStream);
   }
 
   /**
    * Load the dictionaries.
+   * @param dictInputStream the dictionary
+   * @return the multiword dictionary as a token trie
    * @throws IOException
    *           if io problems
    */
-  private void loadDictionary(final InputStream dictInputStream) throws IOException {
-    dictionary = new HashMap<String, String>();
+  private static TokenTrie loadDictionary(final InputStream dictInputStream) throws IOException {
+    final Map<String, String> dictionary = new HashMap<String, String>();
     final BufferedReader breader = new BufferedReader(new InputStreamReader(
         dictInputStream, Charset.forName("UTF-8")));
     String line;
@@ -81,6 +84,7 @@ public class MultiWordMatcher {
             + " is not well-formed; skipping!!");
       }
     }
+    return new TokenTrie(dictionary);
   }
 
   /**
@@ -114,38 +118,22 @@ public class MultiWordMatcher {
   }
 
   /**
-   * Detects multiword expressions ignoring case.
+   * Detects multiword expressions ignoring case. The longest multiword
+   * starting at each token is found in a single pass with the token trie of
+   * the dictionary.
    * 
    * @param tokens
    *          the tokenized sentence
    * @return spans of the multiword
    */
   public final Span[] multiWordsToSpans(final String[] tokens) {
-    final List<Span> multiWordsFound = new LinkedList<Span>();
-
+    final List<Span> multiWordsFound = new ArrayList<Span>();
+    final String[] lowercaseTokens = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      lowercaseTokens[i] = tokens[i].toLowerCase();
+    }
     for (int offsetFrom = 0; offsetFrom < tokens.length; offsetFrom++) {
-      Span multiwordFound = null;
-      String tokensSearching[] = new String[] {};
-
-      for (int offsetTo = offsetFrom; offsetTo < tokens.length; offsetTo++) {
-
-        final int lengthSearching = offsetTo - offsetFrom + 1;
-        if (lengthSearching > getMaxTokenCount()) {
-          break;
-        } else {
-          tokensSearching = new String[lengthSearching];
-          System.arraycopy(tokens, offsetFrom, tokensSearching, 0,
-              lengthSearching);
-
-          final String entryForSearch = StringUtils
-              .getStringFromTokens(tokensSearching);
-          final String entryValue = dictionary
-              .get(entryForSearch.toLowerCase());
-          if (entryValue != null) {
-            multiwordFound = new Span(offsetFrom, offsetTo + 1, entryValue);
-          }
-        }
-      }
+      final Span multiwordFound = dictionary.longestMatch(lowercaseTokens, offsetFrom);
       if (multiwordFound != null) {
         multiWordsFound.add(multiwordFound);
         offsetFrom += multiwordFound.length() - 1;
@@ -155,12 +143,11 @@ public class MultiWordMatcher {
   }
 
   /**
-   * Get the key,value size of the dictionary.
+   * Get the number of tokens of the longest multiword in the dictionary.
    * 
    * @return maximum token count in the dictionary
    */
   public int getMaxTokenCount() {
-    return dictionary.size();
+    return dictionary.getMaxLength();
   }
 }
-
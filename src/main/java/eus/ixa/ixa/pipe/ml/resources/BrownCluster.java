@@ -15,21 +15,20 @@
  */
 package eus.ixa.ixa.pipe.ml.resources;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import opennlp.tools.util.InvalidFormatException;
-import opennlp.tools.util.model.ArtifactSerializer;
 import opennlp.tools.util.model.SerializableArtifact;
 
 
@@ -49,20 +48,75 @@ public class BrownCluster implements SerializableArtifact {
   
   private static final Pattern tabPattern = Pattern.compile("\t");
 
-  public static class BrownClusterSerializer implements ArtifactSerializer<BrownCluster> {
+  public static class BrownClusterSerializer implements LexiconSerializer<BrownCluster> {
 
     public BrownCluster create(InputStream in) throws IOException,
         InvalidFormatException {
-      return new BrownCluster(in);
+      BufferedInputStream bufferedIn = new BufferedInputStream(in);
+      if (ClusterLexicon.isBinary(bufferedIn)) {
+        return new BrownCluster(ClusterLexicon.read(bufferedIn));
+      }
+      return new BrownCluster(bufferedIn);
+    }
+
+    public BrownCluster create(File file) throws IOException {
+      if (ClusterLexicon.isBinary(file)) {
+        return new BrownCluster(ClusterLexicon.map(file));
+      }
+      try (InputStream in = new FileInputStream(file)) {
+        return create(in);
+      }
     }
 
     public void serialize(BrownCluster artifact, OutputStream out)
         throws IOException {
-      artifact.serialize(out);
+      artifact.tokenToClusterMap.writeText(out, '\t');
+    }
+  }
+
+  /**
+   * Serializes the lexicon in the binary format of {@link ClusterLexicon}.
+   */
+  public static class BinaryBrownClusterSerializer extends BrownClusterSerializer {
+
+    @Override
+    public BrownCluster create(InputStream in) throws IOException,
+        InvalidFormatException {
+      return new BrownCluster(super.create(in).tokenToClusterMap, true);
+    }
+
+    @Override
+    public BrownCluster create(File file) throws IOException {
+      return new BrownCluster(super.create(file).tokenToClusterMap, true);
+    }
+
+    @Override
+    public void serialize(BrownCluster artifact, OutputStream out)
+        throws IOException {
+      artifact.tokenToClusterMap.write(out);
     }
   }
   
-  private Map<String, String> tokenToClusterMap = new HashMap<String, String>();
+  private final ClusterLexicon tokenToClusterMap;
+  /**
+   * Whether the lexicon is serialized in the binary format.
+   */
+  private final boolean binary;
+
+  /**
+   * Creates the Brown clustering lexicon from a binary lexicon, which may be
+   * memory mapped with {@link ClusterLexicon#map(java.io.File)}.
+   * It is serialized in the text format.
+   * @param lexicon the lexicon
+   */
+  public BrownCluster(ClusterLexicon lexicon) {
+    this(lexicon, false);
+  }
+
+  private BrownCluster(ClusterLexicon lexicon, boolean binary) {
+    this.tokenToClusterMap = lexicon;
+    this.binary = binary;
+  }
 
   /**
    * Generates the token to cluster map from Brown cluster input file.
@@ -72,6 +126,7 @@ public class BrownCluster implements SerializableArtifact {
    */
   public BrownCluster(InputStream in) throws IOException {
 
+    Map<String, String> tokenToClusterMap = new HashMap<String, String>();
     BufferedReader breader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
     String line;
     while ((line = breader.readLine()) != null) {
@@ -88,6 +143,8 @@ public class BrownCluster implements SerializableArtifact {
         tokenToClusterMap.put(normalizedToken, lineArray[1].intern());
       }
     }
+    this.tokenToClusterMap = new ClusterLexicon(tokenToClusterMap);
+    this.binary = false;
   }
 
   /**
@@ -96,21 +153,26 @@ public class BrownCluster implements SerializableArtifact {
    * @return the brown class if such token is in the brown cluster map
    */
   public String lookupToken(String string) {
-    return tokenToClusterMap.get(string);
+    return tokenToClusterMap.lookup(string);
   }
 
+  /**
+   * Serializes the lexicon in the text format, or in the binary format of
+   * {@link ClusterLexicon} if it was loaded by the
+   * {@link BinaryBrownClusterSerializer}.
+   * @param out the output stream
+   * @throws IOException if io error
+   */
   public void serialize(OutputStream out) throws IOException {
-    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
-
-    for (Map.Entry<String, String> entry : tokenToClusterMap.entrySet()) {
-      writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+    if (binary) {
+      tokenToClusterMap.write(out);
+    } else {
+      tokenToClusterMap.writeText(out, '\t');
     }
-
-    writer.flush();
   }
 
   public Class<?> getArtifactSerializerClass() {
-    return BrownClusterSerializer.class;
+    return binary ? BinaryBrownClusterSerializer.class : BrownClusterSerializer.class;
   }
 }
 
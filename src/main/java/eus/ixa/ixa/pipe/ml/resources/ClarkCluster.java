@@ -16,21 +16,20 @@
 
 package eus.ixa.ixa.pipe.ml.resources;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import opennlp.tools.util.InvalidFormatException;
-import opennlp.tools.util.model.ArtifactSerializer;
 import opennlp.tools.util.model.SerializableArtifact;
 
 
@@ -54,23 +53,79 @@ public class ClarkCluster implements SerializableArtifact {
    */
   public static final Pattern dotInsideI = Pattern.compile("\u0130", Pattern.UNICODE_CHARACTER_CLASS);
   
-  public static class ClarkClusterSerializer implements ArtifactSerializer<ClarkCluster> {
+  public static class ClarkClusterSerializer implements LexiconSerializer<ClarkCluster> {
 
     public ClarkCluster create(InputStream in) throws IOException,
         InvalidFormatException {
-      return new ClarkCluster(in);
+      BufferedInputStream bufferedIn = new BufferedInputStream(in);
+      if (ClusterLexicon.isBinary(bufferedIn)) {
+        return new ClarkCluster(ClusterLexicon.read(bufferedIn));
+      }
+      return new ClarkCluster(bufferedIn);
+    }
+
+    public ClarkCluster create(File file) throws IOException {
+      if (ClusterLexicon.isBinary(file)) {
+        return new ClarkCluster(ClusterLexicon.map(file));
+      }
+      try (InputStream in = new FileInputStream(file)) {
+        return create(in);
+      }
     }
 
     public void serialize(ClarkCluster artifact, OutputStream out)
         throws IOException {
-      artifact.serialize(out);
+      artifact.tokenToClusterMap.writeText(out, ' ');
+    }
+  }
+
+  /**
+   * Serializes the lexicon in the binary format of {@link ClusterLexicon}.
+   */
+  public static class BinaryClarkClusterSerializer extends ClarkClusterSerializer {
+
+    @Override
+    public ClarkCluster create(InputStream in) throws IOException,
+        InvalidFormatException {
+      return new ClarkCluster(super.create(in).tokenToClusterMap, true);
+    }
+
+    @Override
+    public ClarkCluster create(File file) throws IOException {
+      return new ClarkCluster(super.create(file).tokenToClusterMap, true);
+    }
+
+    @Override
+    public void serialize(ClarkCluster artifact, OutputStream out)
+        throws IOException {
+      artifact.tokenToClusterMap.write(out);
     }
   }
   
-  private Map<String, String> tokenToClusterMap = new HashMap<String, String>();
+  private final ClusterLexicon tokenToClusterMap;
+  /**
+   * Whether the lexicon is serialized in the binary format.
+   */
+  private final boolean binary;
+
+  /**
+   * Creates the Clark clustering lexicon from a binary lexicon, which may be
+   * memory mapped with {@link ClusterLexicon#map(java.io.File)}.
+   * It is serialized in the text format.
+   * @param lexicon the lexicon
+   */
+  public ClarkCluster(ClusterLexicon lexicon) {
+    this(lexicon, false);
+  }
+
+  private ClarkCluster(ClusterLexicon lexicon, boolean binary) {
+    this.tokenToClusterMap = lexicon;
+    this.binary = binary;
+  }
 
   public ClarkCluster(InputStream in) throws IOException {
 
+    Map<String, String> tokenToClusterMap = new HashMap<String, String>();
     BufferedReader breader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
     String line;
     while ((line = breader.readLine()) != null) {
@@ -84,28 +139,39 @@ public class ClarkCluster implements SerializableArtifact {
         tokenToClusterMap.put(normalizedToken.toLowerCase(), lineArray[1].intern());
       }
     }
+    this.tokenToClusterMap = new ClusterLexicon(tokenToClusterMap);
+    this.binary = false;
   }
 
   public String lookupToken(String string) {
-    return tokenToClusterMap.get(string);
+    return tokenToClusterMap.lookup(string);
   }
   
+  /**
+   * Get a read-only map view of the clustering lexicon.
+   * @return the map view
+   */
   public Map<String, String> getMap() {
-    return tokenToClusterMap;
+    return tokenToClusterMap.asMap();
   }
 
+  /**
+   * Serializes the lexicon in the text format, or in the binary format of
+   * {@link ClusterLexicon} if it was loaded by the
+   * {@link BinaryClarkClusterSerializer}.
+   * @param out the output stream
+   * @throws IOException if io error
+   */
   public void serialize(OutputStream out) throws IOException {
-    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
-
-    for (Map.Entry<String, String> entry : tokenToClusterMap.entrySet()) {
-      writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+    if (binary) {
+      tokenToClusterMap.write(out);
+    } else {
+      tokenToClusterMap.writeText(out, ' ');
     }
-
-    writer.flush();
   }
 
   public Class<?> getArtifactSerializerClass() {
-    return ClarkClusterSerializer.class;
+    return binary ? BinaryClarkClusterSerializer.class : ClarkClusterSerializer.class;
   }
 }
 
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.ml.resources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import opennlp.tools.util.InvalidFormatException;
+
+/**
+ * Compact read-only token to class lexicon used by the clustering and
+ * dictionary resources. The tokens are stored sorted as UTF-8 bytes, each
+ * token points to its class through an int into a table of distinct class
+ * strings, and an open addressing hash table over the
+ * {@link String#hashCode()} of the tokens gives constant time lookups without
+ * creating any object.
+ *
+ * The lexicon lives in a single buffer with a binary layout, so a binary
+ * lexicon is loaded from a serialized model with one bulk read and no parsing,
+ * and a binary lexicon file can be memory mapped with {@link #map(File)},
+ * sharing its pages among several processes through the OS page cache. The
+ * resources are serialized in their text format unless the binary one is
+ * chosen with their binary {@link LexiconSerializer}. The layout is a header
+ * of seven ints (magic number, size, number of classes, hash table capacity,
+ * token bytes length, class bytes length and version) followed by the token
+ * offsets, token hashes, class ids, hash table and class offsets as big
+ * endian ints, and by the UTF-8 bytes of the tokens and of the classes.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class ClusterLexicon {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  /**
+   * The first bytes of a binary lexicon; no text lexicon starts with NUL.
+   */
+  private static final int MAGIC = 0x0049584c;
+  private static final int VERSION = 1;
+  private static final int HEADER_INTS = 7;
+
+  /**
+   * The whole lexicon, with the binary layout.
+   */
+  private final ByteBuffer buffer;
+  /**
+   * The UTF-8 bytes of the sorted tokens.
+   */
+  private final ByteBuffer tokenBytes;
+  /**
+   * The start of each token in the bytes, plus the end of the last one.
+   */
+  private final IntBuffer tokenOffsets;
+  /**
+   * The hash code of each token.
+   */
+  private final IntBuffer tokenHashes;
+  /**
+   * The index in the class table of the class of each token.
+   */
+  private final IntBuffer clusterIds;
+  /**
+   * Open addressing hash table with the token indexes plus one, 0 is empty.
+   */
+  private final IntBuffer table;
+  /**
+   * The distinct classes.
+   */
+  private final String[] clusters;
+  private final int size;
+  private final int mask;
+
+  /**
+   * Build a lexicon from a token to class map.
+   * @param tokenToClusterMap the map
+   */
+  public ClusterLexicon(Map<String, String> tokenToClusterMap) {
+    this(build(tokenToClusterMap));
+  }
+
+  private ClusterLexicon(ByteBuffer buffer) {
+    this.buffer = buffer;
+    IntBuffer header = buffer.asIntBuffer();
+    this.size = header.get(1);
+    int clusterCount = header.get(2);
+    int capacity = header.get(3);
+    int tokenBytesLength = header.get(4);
+    int clusterBytesLength = header.get(5);
+
+    int position = HEADER_INTS * 4;
+    this.tokenOffsets = slice(buffer, position, (size + 1) * 4).asIntBuffer();
+    position += (size + 1) * 4;
+    this.tokenHashes = slice(buffer, position, size * 4).asIntBuffer();
+    position += size * 4;
+    this.clusterIds = slice(buffer, position, size * 4).asIntBuffer();
+    position += size * 4;
+    this.table = slice(buffer, position, capacity * 4).asIntBuffer();
+    position += capacity * 4;
+    IntBuffer clusterOffsets = slice(buffer, position, (clusterCount + 1) * 4).asIntBuffer();
+    position += (clusterCount + 1) * 4;
+    this.tokenBytes = slice(buffer, position, tokenBytesLength);
+    position += tokenBytesLength;
+    ByteBuffer clusterBytes = slice(buffer, position, clusterBytesLength);
+    this.mask = capacity - 1;
+
+    this.clusters = new String[clusterCount];
+    for (int i = 0; i < clusterCount; i++) {
+      clusters[i] = decode(clusterBytes, clusterOffsets.get(i), clusterOffsets.get(i + 1)).intern();
+    }
+  }
+
+  /**
+   * Check if a stream contains a binary lexicon, without consuming it.
+   * @param in the stream, which must support mark
+   * @return true if the stream starts with a binary lexicon
+   * @throws IOException if io error
+   */
+  public static boolean isBinary(BufferedInputStream in) throws IOException {
+    in.mark(4);
+    try {
+      return new DataInputStream(in).readInt() == MAGIC;
+    } catch (EOFException e) {
+      return false;
+    } finally {
+      in.reset();
+    }
+  }
+
+  /**
+   * Check if a file contains a binary lexicon.
+   * @param file the file
+   * @return true if the file starts with a binary lexicon
+   * @throws IOException if io error
+   */
+  public static boolean isBinary(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readInt() == MAGIC;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Read a binary lexicon written by {@link #write(OutputStream)}.
+   * @param in the stream
+   * @return the lexicon
+   * @throws IOException if io error
+   */
+  public static ClusterLexicon read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    int[] header = new int[HEADER_INTS];
+    for (int i = 0; i < HEADER_INTS; i++) {
+      header[i] = data.readInt();
+    }
+    checkHeader(header);
+    byte[] bytes = new byte[length(header)];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    buffer.asIntBuffer().put(header);
+    data.readFully(bytes, HEADER_INTS * 4, bytes.length - HEADER_INTS * 4);
+    return new ClusterLexicon(buffer);
+  }
+
+  /**
+   * Memory map a binary lexicon file written by {@link #write(OutputStream)}.
+   * @param file the file
+   * @return the lexicon
+   * @throws IOException if io error
+   */
+  public static ClusterLexicon map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      int[] header = new int[HEADER_INTS];
+      if (buffer.capacity() < HEADER_INTS * 4) {
+        throw new InvalidFormatException(file + " is not a binary lexicon!");
+      }
+      buffer.asIntBuffer().get(header);
+      checkHeader(header);
+      if (buffer.capacity() < length(header)) {
+        throw new InvalidFormatException(file + " is truncated!");
+      }
+      return new ClusterLexicon(buffer);
+    }
+  }
+
+  /**
+   * Write the lexicon in its binary format.
+   * @param out the stream
+   * @throws IOException if io error
+   */
+  public void write(OutputStream out) throws IOException {
+    ByteBuffer data = buffer.duplicate();
+    data.clear();
+    byte[] chunk = new byte[8192];
+    while (data.hasRemaining()) {
+      int length = Math.min(chunk.length, data.remaining());
+      data.get(chunk, 0, length);
+      out.write(chunk, 0, length);
+    }
+    out.flush();
+  }
+
+  /**
+   * Write the lexicon in the text format, one token and its class per line
+   * in token order.
+   * @param out the stream
+   * @param separator the separator of the token and the class
+   * @throws IOException if io error
+   */
+  public void writeText(OutputStream out, char separator) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+    for (Map.Entry<String, String> entry : asMap().entrySet()) {
+      writer.write(entry.getKey() + separator + entry.getValue() + "\n");
+    }
+    writer.flush();
+  }
+
+  /**
+   * Get the class of a token.
+   * @param token the token
+   * @return the class or null if the token is not in the lexicon
+   */
+  public String lookup(String token) {
+    int index = indexOf(token);
+    return index < 0 ? null : clusters[clusterIds.get(index)];
+  }
+
+  /**
+   * Get the number of tokens in the lexicon.
+   * @return the number of tokens
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get a read-only map view of the lexicon, iterated in token order.
+   * @return the map view
+   */
+  public Map<String, String> asMap() {
+    return new AbstractMap<String, String>() {
+
+      @Override
+      public String get(Object key) {
+        return key instanceof String ? lookup((String) key) : null;
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+          @Override
+          public int size() {
+            return size;
+          }
+
+          @Override
+          public Iterator<Map.Entry<String, String>> iterator() {
+            return new Iterator<Map.Entry<String, String>>() {
+              private int next = 0;
+
+              public boolean hasNext() {
+                return next < size;
+              }
+
+              public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                  throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>(
+                    decode(tokenBytes, tokenOffsets.get(next), tokenOffsets.get(next + 1)),
+                    clusters[clusterIds.get(next)]);
+                next++;
+                return entry;
+              }
+
+              public void remove() {
+                throw new UnsupportedOperationException();
+              }
+            };
+          }
+        };
+      }
+    };
+  }
+
+  private int indexOf(String token) {
+    int hash = token.hashCode();
+    int slot = mix(hash) & mask;
+    int entry;
+    while ((entry = table.get(slot)) != 0) {
+      int index = entry - 1;
+      if (tokenHashes.get(index) == hash && equalsToken(index, token)) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Compare a string with the UTF-8 bytes of a token without decoding them.
+   */
+  private boolean equalsToken(int index, String token) {
+    int pos = tokenOffsets.get(index);
+    int end = tokenOffsets.get(index + 1);
+    int length = token.length();
+    for (int i = 0; i < length; i++) {
+      int c = token.charAt(i);
+      if (Character.isHighSurrogate((char) c) && i + 1 < length
+          && Character.isLowSurrogate(token.charAt(i + 1))) {
+        c = Character.toCodePoint((char) c, token.charAt(++i));
+      } else if (Character.isSurrogate((char) c)) {
+        // unpaired surrogates are encoded as '?'
+        c = '?';
+      }
+      if (c < 0x80) {
+        if (pos >= end || tokenBytes.get(pos++) != (byte) c) {
+          return false;
+        }
+      } else if (c < 0x800) {
+        if (pos + 2 > end
+            || tokenBytes.get(pos++) != (byte) (0xc0 | (c >> 6))
+            || tokenBytes.get(pos++) != (byte) (0x80 | (c & 0x3f))) {
+          return false;
+        }
+      } else if (c < 0x10000) {
+        if (pos + 3 > end
+            || tokenBytes.get(pos++) != (byte) (0xe0 | (c >> 12))
+            || tokenBytes.get(pos++) != (byte) (0x80 | ((c >> 6) & 0x3f))
+            || tokenBytes.get(pos++) != (byte) (0x80 | (c & 0x3f))) {
+          return false;
+        }
+      } else {
+        if (pos + 4 > end
+            || tokenBytes.get(pos++) != (byte) (0xf0 | (c >> 18))
+            || tokenBytes.get(pos++) != (byte) (0x80 | ((c >> 12) & 0x3f))
+            || tokenBytes.get(pos++) != (byte) (0x80 | ((c >> 6) & 0x3f))
+            || tokenBytes.get(pos++) != (byte) (0x80 | (c & 0x3f))) {
+          return false;
+        }
+      }
+    }
+    return pos == end;
+  }
+
+  /**
+   * Lay out a token to class map in the binary format.
+   */
+  private static ByteBuffer build(Map<String, String> tokenToClusterMap) {
+    int size = tokenToClusterMap.size();
+    String[] tokens = tokenToClusterMap.keySet().toArray(new String[size]);
+    Arrays.sort(tokens);
+
+    byte[][] encodedTokens = new byte[size][];
+    int tokenBytesLength = 0;
+    Map<String, Integer> clusterIndex = new HashMap<String, Integer>();
+    int[] clusterIds = new int[size];
+    for (int i = 0; i < size; i++) {
+      encodedTokens[i] = tokens[i].getBytes(UTF_8);
+      tokenBytesLength += encodedTokens[i].length;
+      String cluster = tokenToClusterMap.get(tokens[i]);
+      Integer clusterId = clusterIndex.get(cluster);
+      if (clusterId == null) {
+        clusterId = clusterIndex.size();
+        clusterIndex.put(cluster, clusterId);
+      }
+      clusterIds[i] = clusterId;
+    }
+    byte[][] encodedClusters = new byte[clusterIndex.size()][];
+    int clusterBytesLength = 0;
+    for (Map.Entry<String, Integer> entry : clusterIndex.entrySet()) {
+      encodedClusters[entry.getValue()] = entry.getKey().getBytes(UTF_8);
+      clusterBytesLength += encodedClusters[entry.getValue()].length;
+    }
+
+    int capacity = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+    int[] table = new int[capacity];
+    for (int i = 0; i < size; i++) {
+      int slot = mix(tokens[i].hashCode()) & (capacity - 1);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      table[slot] = i + 1;
+    }
+
+    int[] header = new int[] { MAGIC, size, encodedClusters.length, capacity,
+        tokenBytesLength, clusterBytesLength, VERSION };
+    ByteBuffer buffer = ByteBuffer.allocate(length(header));
+    for (int value : header) {
+      buffer.putInt(value);
+    }
+    int offset = 0;
+    for (byte[] token : encodedTokens) {
+      buffer.putInt(offset);
+      offset += token.length;
+    }
+    buffer.putInt(offset);
+    for (String token : tokens) {
+      buffer.putInt(token.hashCode());
+    }
+    for (int clusterId : clusterIds) {
+      buffer.putInt(clusterId);
+    }
+    for (int slot : table) {
+      buffer.putInt(slot);
+    }
+    offset = 0;
+    for (byte[] cluster : encodedClusters) {
+      buffer.putInt(offset);
+      offset += cluster.length;
+    }
+    buffer.putInt(offset);
+    for (byte[] token : encodedTokens) {
+      buffer.put(token);
+    }
+    for (byte[] cluster : encodedClusters) {
+      buffer.put(cluster);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private static void checkHeader(int[] header) throws InvalidFormatException {
+    if (header[0] != MAGIC) {
+      throw new InvalidFormatException("Not a binary lexicon!");
+    }
+    if (header[6] != VERSION) {
+      throw new InvalidFormatException("Unsupported binary lexicon version: " + header[6]);
+    }
+  }
+
+  /**
+   * The length in bytes of a binary lexicon.
+   */
+  private static int length(int[] header) {
+    int size = header[1];
+    int clusterCount = header[2];
+    int capacity = header[3];
+    return 4 * (HEADER_INTS + (size + 1) + size + size + capacity + (clusterCount + 1))
+        + header[4] + header[5];
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(position);
+    slice.limit(position + length);
+    return slice.slice();
+  }
+
+  private static String decode(ByteBuffer bytes, int start, int end) {
+    byte[] data = new byte[end - start];
+    ByteBuffer source = bytes.duplicate();
+    source.position(start);
+    source.get(data);
+    return new String(data, UTF_8);
+  }
+
+  private static int mix(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
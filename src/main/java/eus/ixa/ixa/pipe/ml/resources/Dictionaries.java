@@ -57,6 +57,14 @@ public class Dictionaries {
    * The list of lowercase dictionaries as HashMap<String, String>.
    */
   private static List<Map<String, String>> dictionariesIgnoreCase;
+  /**
+   * The token tries of the dictionaries.
+   */
+  private static List<TokenTrie> dictionaryTries;
+  /**
+   * The token tries of the lowercase dictionaries.
+   */
+  private static List<TokenTrie> dictionaryTriesIgnoreCase;
 
   /**
    * Construct the dictionaries from the input directory path.
@@ -94,6 +102,26 @@ public class Dictionaries {
     return dictionariesIgnoreCase;
   }
 
+  /**
+   * Get the token tries of the dictionaries, in the same order as the
+   * dictionaries.
+   * 
+   * @return a list of the dictionaries as token tries
+   */
+  public final List<TokenTrie> getDictionaryTries() {
+    return dictionaryTries;
+  }
+
+  /**
+   * Get the token tries of the lower case dictionaries, in the same order as
+   * the dictionaries.
+   * 
+   * @return a list of the lower case dictionaries as token tries
+   */
+  public final List<TokenTrie> getIgnoreCaseDictionaryTries() {
+    return dictionaryTriesIgnoreCase;
+  }
+
   /**
    * Get the dictionary names.
    * 
@@ -116,6 +144,8 @@ public class Dictionaries {
     dictNames = new ArrayList<String>(fileList.size());
     dictionaries = new ArrayList<Map<String, String>>(fileList.size());
     dictionariesIgnoreCase = new ArrayList<Map<String, String>>(fileList.size());
+    dictionaryTries = new ArrayList<TokenTrie>(fileList.size());
+    dictionaryTriesIgnoreCase = new ArrayList<TokenTrie>(fileList.size());
     System.err.println("\tloading dictionaries in " + inputDir + " directory");
     for (int i = 0; i < fileList.size(); ++i) {
       if (DEBUG) {
@@ -140,6 +170,8 @@ public class Dictionaries {
           }
         }
       }
+      dictionaryTries.add(new TokenTrie(dictionaries.get(i)));
+      dictionaryTriesIgnoreCase.add(new TokenTrie(dictionariesIgnoreCase.get(i)));
     }
     System.err.println("found " + dictionaries.size() + " dictionaries");
   }
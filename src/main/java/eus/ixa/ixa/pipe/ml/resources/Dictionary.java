@@ -15,31 +15,36 @@
  */
 package eus.ixa.ixa.pipe.ml.resources;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
 import opennlp.tools.namefind.BilouCodec;
 import opennlp.tools.namefind.BioCodec;
 import opennlp.tools.util.InvalidFormatException;
-import opennlp.tools.util.model.ArtifactSerializer;
 import opennlp.tools.util.model.SerializableArtifact;
 
 /**
- * Dictionary class which creates a HashMap String, String from 
+ * Dictionary class which creates a lexicon String, String from 
  * a tab separated file name\tclass\t.
+ *
+ * The entries are kept in a {@link ClusterLexicon}, which may be memory
+ * mapped, and only the multiword entries are also kept in a
+ * {@link TokenTrie} for longest match. For a binary lexicon, the trie is
+ * built the first time a sentence is matched.
  * 
  * @author ragerri
  * @version 2015-03-30
@@ -49,23 +54,84 @@ public class Dictionary implements SerializableArtifact {
   
   private static final Pattern tabPattern = Pattern.compile("\t");
 
-  public static class DictionarySerializer implements ArtifactSerializer<Dictionary> {
+  public static class DictionarySerializer implements LexiconSerializer<Dictionary> {
 
     public Dictionary create(InputStream in) throws IOException,
         InvalidFormatException {
-      return new Dictionary(in);
+      BufferedInputStream bufferedIn = new BufferedInputStream(in);
+      if (ClusterLexicon.isBinary(bufferedIn)) {
+        return new Dictionary(ClusterLexicon.read(bufferedIn));
+      }
+      return new Dictionary(bufferedIn);
+    }
+
+    public Dictionary create(File file) throws IOException {
+      if (ClusterLexicon.isBinary(file)) {
+        return new Dictionary(ClusterLexicon.map(file));
+      }
+      try (InputStream in = new FileInputStream(file)) {
+        return create(in);
+      }
     }
 
     public void serialize(Dictionary artifact, OutputStream out)
         throws IOException {
-      artifact.serialize(out);
+      artifact.dictionary.writeText(out, '\t');
+    }
+  }
+
+  /**
+   * Serializes the dictionary in the binary format of {@link ClusterLexicon}.
+   */
+  public static class BinaryDictionarySerializer extends DictionarySerializer {
+
+    @Override
+    public Dictionary create(InputStream in) throws IOException,
+        InvalidFormatException {
+      return new Dictionary(super.create(in).dictionary, true);
+    }
+
+    @Override
+    public Dictionary create(File file) throws IOException {
+      return new Dictionary(super.create(file).dictionary, true);
+    }
+
+    @Override
+    public void serialize(Dictionary artifact, OutputStream out)
+        throws IOException {
+      artifact.dictionary.write(out);
     }
   }
   
-  private Map<String, String> dictionary = new HashMap<String, String>();
+  private final ClusterLexicon dictionary;
+  /**
+   * Whether the dictionary is serialized in the binary format.
+   */
+  private final boolean binary;
+  /**
+   * The entries of the dictionary with spaces as a token trie, for longest
+   * match; the single token entries are looked up in the lexicon.
+   */
+  private volatile TokenTrie multiwordTrie;
+
+  /**
+   * Creates the dictionary from a binary lexicon, which may be memory mapped
+   * with {@link ClusterLexicon#map(java.io.File)}.
+   * It is serialized in the text format.
+   * @param lexicon the lexicon
+   */
+  public Dictionary(ClusterLexicon lexicon) {
+    this(lexicon, false);
+  }
+
+  private Dictionary(ClusterLexicon lexicon, boolean binary) {
+    this.dictionary = lexicon;
+    this.binary = binary;
+  }
 
   public Dictionary(InputStream in) throws IOException {
 
+    Map<String, String> dictionary = new HashMap<String, String>();
     BufferedReader breader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
     String line;
     while ((line = breader.readLine()) != null) {
@@ -76,6 +142,59 @@ public class Dictionary implements SerializableArtifact {
         System.err.println(lineArray[0] + " is not well formed!");
       }
     }
+    this.dictionary = new ClusterLexicon(dictionary);
+    this.binary = false;
+    this.multiwordTrie = new TokenTrie(getMultiwords(dictionary));
+  }
+
+  /**
+   * Get the entries with spaces.
+   * @param entries the entries and their classes
+   * @return the multiword entries and their classes
+   */
+  private static Map<String, String> getMultiwords(Map<String, String> entries) {
+    Map<String, String> multiwords = new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      if (entry.getKey().indexOf(' ') >= 0) {
+        multiwords.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return multiwords;
+  }
+
+  private TokenTrie getMultiwordTrie() {
+    TokenTrie trie = multiwordTrie;
+    if (trie == null) {
+      synchronized (this) {
+        trie = multiwordTrie;
+        if (trie == null) {
+          trie = new TokenTrie(getMultiwords(dictionary.asMap()));
+          multiwordTrie = trie;
+        }
+      }
+    }
+    return trie;
+  }
+
+  /**
+   * Find the longest entry starting at a token, preferring multiword
+   * entries to single token ones.
+   * @param trie the trie of the multiword entries
+   * @param lowercaseTokens the lowercased sentence
+   * @param start the position of the token
+   * @return the span of the entry or null if no entry starts at the token
+   */
+  private Span longestMatch(TokenTrie trie, String[] lowercaseTokens, int start) {
+    Span match = trie.longestMatch(lowercaseTokens, start);
+    if (match != null && match.length() > 1) {
+      return match;
+    }
+    String gazClass = dictionary.lookup(lowercaseTokens[start]);
+    if (gazClass != null) {
+      return new Span(start, start + 1, gazClass);
+    }
+    // an entry ending with a space matches a single token
+    return match;
   }
 
   /**
@@ -84,7 +203,7 @@ public class Dictionary implements SerializableArtifact {
    * @return the string found
    */
   public String lookup(String string) {
-    return dictionary.get(string);
+    return dictionary.lookup(string);
   }
   
   /**
@@ -96,133 +215,101 @@ public class Dictionary implements SerializableArtifact {
   }
   
   /**
-   * Get the Map String, String dictionary.
+   * Get a read-only Map String, String view of the dictionary.
    * @return the dictionary map
    */
   public final Map<String, String> getDict() {
-    return dictionary;
+    return dictionary.asMap();
   }
   
   /**
-   * Performs gazetteer match in a bio encoding.
+   * Performs gazetteer match in a bio encoding. The longest entry starting
+   * at each token is found with the token trie of the multiword entries and
+   * the lexicon.
    * @param tokens the sentence
    * @return the list of named entities in the current sentence
    */
   public List<String> getBioDictionaryMatch(String[] tokens) {
 
-    List<String> entitiesList = new ArrayList<String>();
-
-    String prefix = "-" + BioCodec.START;
-    String gazEntry = null;
-    String searchSpan = null;
-    // iterative over tokens from the beginning
+    String[] lowercaseTokens = toLowerCase(tokens);
+    TokenTrie trie = getMultiwordTrie();
+    List<String> entitiesList = new ArrayList<String>(tokens.length);
     for (int i = 0; i < tokens.length; i++) {
-      gazEntry = null;
-      int j;
-      // iterate over tokens from the end
-      for (j = tokens.length - 1; j >= i; j--) {
-        // create span for search in dictionary Map; the first search takes as span
-        // the whole sentence
-        searchSpan = createSpan(tokens, i, j);
-        gazEntry = lookup(searchSpan.toLowerCase());
-        if (gazEntry != null) {
-          break;
-        }
-      }
-      prefix = "-" + BioCodec.START;
-      // multi-token case
-      if (gazEntry != null) {
-        while (i < j) {
-          entitiesList.add((gazEntry + prefix).intern());
-          prefix = "-" + BioCodec.CONTINUE;
-          i++;
-        }
-      }
-      // one word case or last member of span
-      if (gazEntry != null) {
-        entitiesList.add((gazEntry + prefix).intern());
-      } else {
+      Span gazEntry = longestMatch(trie, lowercaseTokens, i);
+      if (gazEntry == null) {
         entitiesList.add(BioCodec.OTHER);
+      } else {
+        String gazClass = gazEntry.getType();
+        entitiesList.add((gazClass + "-" + BioCodec.START).intern());
+        for (i++; i < gazEntry.getEnd(); i++) {
+          entitiesList.add((gazClass + "-" + BioCodec.CONTINUE).intern());
+        }
+        i--;
       }
     }
     return entitiesList;
   }
   
   /**
-   * Performs gazetteer match in a bilou encoding.
+   * Performs gazetteer match in a bilou encoding. The longest entry starting
+   * at each token is found with the token trie of the multiword entries and
+   * the lexicon.
    * @param tokens the sentence
    * @return the list of named entities in the current sentence
    */
   public List<String> getBilouDictionaryMatch(String[] tokens) {
 
-    List<String> entitiesList = new ArrayList<String>();
-
-    String prefix = "-" + BilouCodec.START;
-    String gazClass = null;
-    String searchSpan = null;
-    // iterative over tokens from the beginning
+    String[] lowercaseTokens = toLowerCase(tokens);
+    TokenTrie trie = getMultiwordTrie();
+    List<String> entitiesList = new ArrayList<String>(tokens.length);
     for (int i = 0; i < tokens.length; i++) {
-      gazClass = null;
-      int j;
-      // iterate over tokens from the end
-      for (j = tokens.length - 1; j >= i; j--) {
-        // create span for search in dictionary Map; the first search takes as span
-        // the whole sentence
-        searchSpan = createSpan(tokens, i, j);
-        gazClass = lookup(searchSpan.toLowerCase());
-        if (gazClass != null) {
-          break;
-        }
-      }
-      prefix = "-" + BilouCodec.START;
-      // multi-token case
-      if (gazClass != null) {
-        while (i < j) {
-          entitiesList.add((gazClass + prefix).intern());
-          prefix = "-" + BilouCodec.CONTINUE;
-          i++;
-        }
-      }
-      // one word case or last member of span
-      if (gazClass != null) {
-        if (prefix.equals("-" + BilouCodec.START)) {
-          entitiesList.add((gazClass + "-" + BilouCodec.UNIT).intern());
-        } else if (prefix.equals("-" + BilouCodec.CONTINUE)) {
-          entitiesList.add((gazClass + "-" + BilouCodec.LAST).intern());
-        }       
-      } else {
+      Span gazEntry = longestMatch(trie, lowercaseTokens, i);
+      if (gazEntry == null) {
         entitiesList.add(BilouCodec.OTHER);
+      } else if (gazEntry.length() == 1) {
+        entitiesList.add((gazEntry.getType() + "-" + BilouCodec.UNIT).intern());
+      } else {
+        String gazClass = gazEntry.getType();
+        entitiesList.add((gazClass + "-" + BilouCodec.START).intern());
+        for (i++; i < gazEntry.getEnd() - 1; i++) {
+          entitiesList.add((gazClass + "-" + BilouCodec.CONTINUE).intern());
+        }
+        entitiesList.add((gazClass + "-" + BilouCodec.LAST).intern());
       }
     }
     return entitiesList;
   }
   
   /**
-   * Create a multi token entry search in the dictionary Map.
+   * Lowercase the tokens of a sentence, as the entries of the dictionary.
    * @param tokens the sentence
-   * @param from the start index
-   * @param to the end index
-   * @return the string representing the possibly multi token entity
+   * @return the lowercased tokens
    */
-  private String createSpan(String[] tokens, int from, int to) {
-    String tokenSpan = "";
-    for (int i = from; i < to; i++) {
-      tokenSpan += tokens[i] + " ";
+  private static String[] toLowerCase(String[] tokens) {
+    String[] lowercaseTokens = new String[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      lowercaseTokens[i] = tokens[i].toLowerCase();
     }
-    tokenSpan += tokens[to];
-    return tokenSpan;
+    return lowercaseTokens;
   }
 
+  /**
+   * Serializes the dictionary in the text format, or in the binary format of
+   * {@link ClusterLexicon} if it was loaded by the
+   * {@link BinaryDictionarySerializer}.
+   * @param out the output stream
+   * @throws IOException if io error
+   */
   public void serialize(OutputStream out) throws IOException {
-    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
-    for (Entry<String, String> entry : dictionary.entrySet()) {
-        writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+    if (binary) {
+      dictionary.write(out);
+    } else {
+      dictionary.writeText(out, '\t');
     }
-    writer.flush();
   }
 
   public Class<?> getArtifactSerializerClass() {
-    return DictionarySerializer.class;
+    return binary ? BinaryDictionarySerializer.class : DictionarySerializer.class;
   }
 
 }
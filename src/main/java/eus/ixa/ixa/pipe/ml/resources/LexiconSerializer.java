@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.ml.resources;
+
+import java.io.File;
+import java.io.IOException;
+
+import opennlp.tools.util.model.ArtifactSerializer;
+
+/**
+ * Serializer of a resource kept in a {@link ClusterLexicon}. Every resource
+ * has a serializer writing the text format, the default, and a binary one
+ * writing the format of {@link ClusterLexicon}; the models written with the
+ * binary serializers can not be loaded by the releases without it. Both read
+ * either format.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public interface LexiconSerializer<T> extends ArtifactSerializer<T> {
+
+  /**
+   * Load the resource from a file, memory mapping it if it contains a binary
+   * lexicon.
+   * @param file the file
+   * @return the resource
+   * @throws IOException if io error
+   */
+  T create(File file) throws IOException;
+}
@@ -25,8 +25,11 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.regex.Pattern;
 
@@ -46,7 +49,9 @@ import eus.ixa.ixa.pipe.ml.utils.Span;
 
 /**
  * Reads wordnet lexicons formated as house#n\t1092#noun.artifact
- * to search for most frequent senses.
+ * to search for most frequent senses. The most frequent sense of every
+ * entry is computed when the lexicon is loaded, and the search of multiword
+ * entries in a sentence is bounded by the longest entry of the lexicon.
  * @author ragerri
  * @version 2015-03-30
  * 
@@ -72,6 +77,19 @@ public class MFSResource implements SerializableArtifact {
    * The dictionary for finding the MFS.
    */
   private ListMultimap<String, String> multiMap = ArrayListMultimap.create();
+  /**
+   * The most frequent sense of each lemma#pos entry.
+   */
+  private final Map<String, String> firstSenses = new HashMap<String, String>();
+  /**
+   * The entries whose senses can not be parsed, which are looked up as
+   * before loading to fail in the same way.
+   */
+  private final Set<String> malformedEntries = new HashSet<String>();
+  /**
+   * The maximum number of lemmas in a multiword entry.
+   */
+  private int maxEntryLength = 1;
   
   /**
    * Build the MFS Dictionary.
@@ -90,6 +108,105 @@ public class MFSResource implements SerializableArtifact {
     } catch (IOException e) {
       e.printStackTrace();
     }
+    indexFirstSenses();
+  }
+
+  /**
+   * Compute the most frequent sense of every entry, the one with the highest
+   * frequency and, among those, the first in alphabetical order, as
+   * {@link #getMFS(TreeMultimap)} does.
+   */
+  private void indexFirstSenses() {
+    for (String lemmaPOSClass : multiMap.keySet()) {
+      String firstSense = null;
+      int maxFrequency = 0;
+      try {
+        for (String mfsResult : multiMap.get(lemmaPOSClass)) {
+          String[] mfsEntry = mfsResult.split("#");
+          int frequency = Integer.parseInt(mfsEntry[0]);
+          String sense = mfsEntry[1].intern();
+          if (firstSense == null || frequency > maxFrequency
+              || frequency == maxFrequency && sense.compareTo(firstSense) < 0) {
+            firstSense = sense;
+            maxFrequency = frequency;
+          }
+        }
+      } catch (RuntimeException e) {
+        malformedEntries.add(lemmaPOSClass);
+        continue;
+      }
+      firstSenses.put(lemmaPOSClass, firstSense);
+    }
+    // every lemma of a span adds at least one separator to the entry
+    for (String lemmaPOSClass : multiMap.keySet()) {
+      int entryLength = 1;
+      for (int i = 0; i < lemmaPOSClass.length(); i++) {
+        if (lemmaPOSClass.charAt(i) == '_') {
+          entryLength++;
+        }
+      }
+      maxEntryLength = Math.max(maxEntryLength, entryLength);
+    }
+  }
+
+  /**
+   * Get the most frequent sense of a lemma#pos entry.
+   * @param lemmaPOSClass the lemma#pos entry
+   * @return the most frequent sense or null if the entry is not in the lexicon
+   */
+  public String getFirstSense(String lemmaPOSClass) {
+    String firstSense = firstSenses.get(lemmaPOSClass);
+    if (firstSense == null && malformedEntries.contains(lemmaPOSClass)) {
+      return getMFS(getOrderedMap(lemmaPOSClass));
+    }
+    return firstSense;
+  }
+
+  /**
+   * Search the longest span starting at a lemma which is an entry of the
+   * lexicon, with the postag of its first or last lemma.
+   * @param lemmas the lemmas of the sentence
+   * @param posTags the postags of the sentence
+   * @param from the first lemma of the span
+   * @param span the buffer to build the span
+   * @param spanEnd receives the last lemma of the span found, or from - 1
+   * @return the most frequent sense of the span or null if there is none
+   */
+  private String findFirstSense(List<String> lemmas, Span[] posTags, int from,
+      StringBuilder span, int[] spanEnd) {
+    String pos = posTags[from].getType();
+    int last = Math.min(lemmas.size() - 1, from + maxEntryLength - 1);
+    span.setLength(0);
+    int[] ends = new int[last - from + 1];
+    for (int i = from; i <= last; i++) {
+      if (i > from) {
+        span.append('_');
+      }
+      span.append(lemmas.get(i));
+      ends[i - from] = span.length();
+    }
+    // iterate over lemmas from the end
+    for (int j = last; j >= from; j--) {
+      String endPos = posTags[j].getType();
+      span.setLength(ends[j - from]);
+      String firstSpan = span.append('#').append(pos.substring(0, 1))
+          .toString().toLowerCase();
+      String mostFrequentSense = getFirstSense(firstSpan);
+      if (mostFrequentSense != null) {
+        spanEnd[0] = j;
+        return mostFrequentSense;
+      }
+      span.setLength(ends[j - from]);
+      String lastSpan = span.append('#').append(endPos.substring(0, 1))
+          .toString().toLowerCase();
+      mostFrequentSense = getFirstSense(lastSpan);
+      if (mostFrequentSense != null) {
+        spanEnd[0] = j;
+        return mostFrequentSense;
+      }
+    }
+    spanEnd[0] = from - 1;
+    return null;
   }
   
   /**
@@ -107,33 +224,13 @@ public class MFSResource implements SerializableArtifact {
 
     String prefix = "-" + BioCodec.START;
     String mostFrequentSense = null;
-    String searchSpan = null;
+    StringBuilder searchSpan = new StringBuilder();
+    int[] spanEnd = new int[1];
     // iterative over lemmas from the beginning
     for (int i = 0; i < lemmas.size(); i++) {
-      mostFrequentSense = null;
-      String pos = posTags[i].getType();
-      int j;
-      // iterate over lemmas from the end
-      for (j = lemmas.size() - 1; j >= i; j--) {
-        // create span for search in multimap; the first search takes as span
-        // the whole sentence
-        String endPos = posTags[j].getType();
-        searchSpan = createSpan(lemmas, i, j);
-        String firstSpan = (searchSpan + "#" + pos.substring(0, 1))
-            .toLowerCase();
-        TreeMultimap<Integer, String> mfsMap = getOrderedMap(firstSpan);
-        if (!mfsMap.isEmpty()) {
-          mostFrequentSense = getMFS(mfsMap);
-          break;
-        }
-        String lastSpan = (searchSpan + "#" + endPos.substring(0, 1))
-            .toLowerCase();
-        TreeMultimap<Integer, String> mfsMapEnd = getOrderedMap(lastSpan);
-        if (!mfsMapEnd.isEmpty()) {
-          mostFrequentSense = getMFS(mfsMapEnd);
-          break;
-        }
-      }
+      // search the longest span starting at i, up to the longest entry
+      mostFrequentSense = findFirstSense(lemmas, posTags, i, searchSpan, spanEnd);
+      int j = spanEnd[0];
       prefix = "-" + BioCodec.START;
       // multi-token case
       if (mostFrequentSense != null) {
@@ -168,33 +265,13 @@ public class MFSResource implements SerializableArtifact {
 
     String prefix = "-" + BioCodec.START;
     String mostFrequentSense = null;
-    String searchSpan = null;
+    StringBuilder searchSpan = new StringBuilder();
+    int[] spanEnd = new int[1];
     // iterative over lemmas from the beginning
     for (int i = 0; i < lemmas.size(); i++) {
-      mostFrequentSense = null;
-      String pos = posTags[i].getType();
-      int j;
-      // iterate over lemmas from the end
-      for (j = lemmas.size() - 1; j >= i; j--) {
-        // create span for search in multimap; the first search takes as span
-        // the whole sentence
-        String endPos = posTags[j].getType();
-        searchSpan = createSpan(lemmas, i, j);
-        String firstSpan = (searchSpan + "#" + pos.substring(0, 1))
-            .toLowerCase();
-        TreeMultimap<Integer, String> mfsMap = getOrderedMap(firstSpan);
-        if (!mfsMap.isEmpty()) {
-          mostFrequentSense = getMFS(mfsMap);
-          break;
-        }
-        String lastSpan = (searchSpan + "#" + endPos.substring(0, 1))
-            .toLowerCase();
-        TreeMultimap<Integer, String> mfsMapEnd = getOrderedMap(lastSpan);
-        if (!mfsMapEnd.isEmpty()) {
-          mostFrequentSense = getMFS(mfsMapEnd);
-          break;
-        }
-      }
+      // search the longest span starting at i, up to the longest entry
+      mostFrequentSense = findFirstSense(lemmas, posTags, i, searchSpan, spanEnd);
+      int j = spanEnd[0];
       prefix = "-" + BilouCodec.START;
       // multi-token case
       if (mostFrequentSense != null) {
@@ -218,26 +295,6 @@ public class MFSResource implements SerializableArtifact {
     return mostFrequentSenseList;
   }
   
-  /**
-   * Create lemma span for search of multiwords in MFS dictionary.
-   * 
-   * @param lemmas
-   *          the lemmas of the sentence
-   * @param from
-   *          the starting index
-   * @param to
-   *          the end index
-   * @return the string representing a perhaps multi word entry
-   */
-  private String createSpan(List<String> lemmas, int from, int to) {
-    String lemmaSpan = "";
-    for (int i = from; i < to; i++) {
-      lemmaSpan += lemmas.get(i) + "_";
-    }
-    lemmaSpan += lemmas.get(to);
-    return lemmaSpan;
-  }
-  
   /**
    * Get the ordered Map of most frequent senses for a lemma#pos entry.
    * @param lemmaPOSClass the lemma#pos entry
@@ -0,0 +1,164 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.resources;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.IStemmer;
+import morfologik.stemming.WordData;
+
+/**
+ * Thread safe lookup of the analyses of the words in a FSA Morfologik
+ * dictionary. The dictionary is read once and shared, while every thread
+ * uses its own {@link IStemmer}, as these are not thread safe. The analyses
+ * of the most recently used words are kept in a bounded cache.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public final class MorfologikLookup {
+
+  /**
+   * The default maximum number of words cached.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 50000;
+
+  private static final Analyses EMPTY = new Analyses(new String[0],
+      new String[0]);
+
+  private final Dictionary dictionary;
+  private final ThreadLocal<IStemmer> stemmers = new ThreadLocal<IStemmer>() {
+    @Override
+    protected IStemmer initialValue() {
+      return new DictionaryLookup(dictionary);
+    }
+  };
+  /**
+   * The analyses of the words in least recently used order.
+   */
+  private final LinkedHashMap<String, Analyses> cache;
+
+  /**
+   * Reads a dictionary in morfologik FSA format.
+   * @param dictURL the URL containing the dictionary
+   * @param cacheSize the maximum number of words cached
+   * @throws IOException if the dictionary can not be read
+   */
+  public MorfologikLookup(final URL dictURL, final int cacheSize)
+      throws IOException {
+    if (cacheSize < 0) {
+      throw new IllegalArgumentException("The cache size can not be negative: "
+          + cacheSize);
+    }
+    this.dictionary = Dictionary.read(dictURL);
+    this.cache = new LinkedHashMap<String, Analyses>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Analyses> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Get the analyses of a word, as listed in the dictionary.
+   * @param word the word, which is not lowercased
+   * @return the analyses
+   */
+  public Analyses lookup(final String word) {
+    synchronized (cache) {
+      final Analyses analyses = cache.get(word);
+      if (analyses != null) {
+        return analyses;
+      }
+    }
+    // the stemmer reuses the word data of the previous lookup
+    final List<WordData> wdList = stemmers.get().lookup(word);
+    Analyses analyses = EMPTY;
+    if (!wdList.isEmpty()) {
+      final String[] tags = new String[wdList.size()];
+      final String[] lemmas = new String[wdList.size()];
+      for (int i = 0; i < tags.length; i++) {
+        final WordData wd = wdList.get(i);
+        tags[i] = wd.getTag().toString().intern();
+        lemmas[i] = wd.getStem().toString();
+      }
+      analyses = new Analyses(tags, lemmas);
+    }
+    synchronized (cache) {
+      cache.put(word, analyses);
+    }
+    return analyses;
+  }
+
+  /**
+   * Get the number of words cached.
+   * @return the number of words
+   */
+  public int getCacheSize() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * The postags and lemmas of a word, in dictionary order.
+   */
+  public static final class Analyses {
+
+    private final String[] tags;
+    private final String[] lemmas;
+
+    private Analyses(final String[] tags, final String[] lemmas) {
+      this.tags = tags;
+      this.lemmas = lemmas;
+    }
+
+    public int size() {
+      return tags.length;
+    }
+
+    public String getTag(final int index) {
+      return tags[index];
+    }
+
+    public String getLemma(final int index) {
+      return lemmas[index];
+    }
+
+    /**
+     * Get the lemma of the last analysis with a postag.
+     * @param postag the postag
+     * @return the lemma or null if no analysis has the postag
+     */
+    public String getLemma(final String postag) {
+      for (int i = tags.length - 1; i >= 0; i--) {
+        if (tags[i].equals(postag)) {
+          return lemmas[i];
+        }
+      }
+      return null;
+    }
+  }
+}
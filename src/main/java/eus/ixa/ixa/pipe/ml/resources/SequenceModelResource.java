@@ -1,12 +1,23 @@
 package eus.ixa.ixa.pipe.ml.resources;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
+import eus.ixa.ixa.pipe.ml.sequence.ModelRegistry;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerME;
 import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerModel;
 import eus.ixa.ixa.pipe.ml.utils.Span;
@@ -22,7 +33,17 @@ import opennlp.tools.util.model.SerializableArtifact;
  * This class loads a SequenceLabeler model required for
  * the Feature Generation. It also provides the serializer
  * required to add it as a resource to the final target model
- * model.
+ * model. Resources with the same model are shared by the feature
+ * generators and stored only once in the target model.
+ *
+ * The opennlp model serialization gives an artifact no context but the
+ * output stream, so the models already written are tracked per output
+ * stream: the first resource with a model writes it and the next ones write
+ * a reference to its digest. A model file is written to a single stream, so
+ * its references always point to a model stored in the same file. When
+ * loading, a reference is resolved to the resource of its model the first
+ * time it is used rather than when it is read, so it does not depend on the
+ * order in which the entries of the model file are loaded.
  * @author ragerri
  * @version 2016-04-07
  * 
@@ -33,7 +54,7 @@ public class SequenceModelResource implements SerializableArtifact {
 
     public SequenceModelResource create(InputStream in) throws IOException,
         InvalidFormatException {
-      return new SequenceModelResource(in);
+      return SequenceModelResource.getInstance(in);
     }
 
     public void serialize(SequenceModelResource artifact, OutputStream out)
@@ -41,33 +62,248 @@ public class SequenceModelResource implements SerializableArtifact {
       artifact.serialize(out);
     }
   }
-  
+
+  /**
+   * The header of an artifact referencing a model with the same content
+   * serialized before in the same model file.
+   */
+  private static final String REFERENCE_HEADER = "SequenceModelResource reference ";
+  /**
+   * The resources loaded, keyed by the digest of their serialized model, so
+   * that feature generators using the same embedded model share one
+   * resource, and one {@link SequenceLabelerME}.
+   */
+  private static final Map<String, WeakReference<SequenceModelResource>> sharedResources = new HashMap<String, WeakReference<SequenceModelResource>>();
   /**
-   * The Sequence Labeler model.
+   * For every output stream, the digests of the resources already written
+   * in it and the digests of the bytes written for them, used to write
+   * references the next times.
    */
-  private SequenceLabelerModel seqModel;
+  private static final Map<OutputStream, Map<String, String>> serializedDigests = new WeakHashMap<OutputStream, Map<String, String>>();
   /**
-   * The SequenceLabeler.
+   * The references to the resources loaded, holding their models in the
+   * {@link ModelRegistry} until the resources are collected.
    */
-  private SequenceLabelerME sequenceLabeler;
+  private static final Set<ResourceReference> resourceReferences = new HashSet<ResourceReference>();
+  private static final ReferenceQueue<SequenceModelResource> collectedResources = new ReferenceQueue<SequenceModelResource>();
+
+  /**
+   * The digest of the serialized model.
+   */
+  private final String digest;
+  /**
+   * The Sequence Labeler model, null until a reference is resolved.
+   */
+  private volatile SequenceLabelerModel seqModel;
+  /**
+   * The SequenceLabeler, null until a reference is resolved.
+   */
+  private volatile SequenceLabelerME sequenceLabeler;
+  /**
+   * The resource a reference resolves to, kept reachable with the reference.
+   */
+  private SequenceModelResource referenced;
   
   /**
-   * Construct the SequenceModelResource from the inputstream.
+   * Construct the SequenceModelResource from the inputstream. The model is
+   * obtained from the default {@link ModelRegistry}, keyed by the digest of
+   * its serialized bytes, so that the same model embedded in several models
+   * is loaded only once while it is kept in the registry. The model is in
+   * use in the registry while this resource is reachable, like the model
+   * containing it, and it is released the next time a resource is loaded
+   * after this one has been garbage collected.
    * @param in the input stream
    * @throws IOException io exception
    */
   public SequenceModelResource(InputStream in) throws IOException {
-    seqModel = new SequenceLabelerModel(in);
+    this(readBytes(in));
+  }
+
+  private SequenceModelResource(final byte[] bytes) throws IOException {
+    this(digest(bytes), bytes);
+  }
+
+  /**
+   * Construct an unresolved reference to the resource of a model.
+   */
+  private SequenceModelResource(final String digest) {
+    this.digest = digest;
+  }
+
+  private SequenceModelResource(final String digest, final byte[] bytes)
+      throws IOException {
+    this.digest = digest;
+    releaseCollectedResources();
+    final ModelRegistry.Handle handle = ModelRegistry.getDefault().acquire(
+        "sha1:" + digest, bytes.length, new ModelRegistry.ModelLoader() {
+          public SequenceLabelerModel load() throws IOException {
+            return new SequenceLabelerModel(new ByteArrayInputStream(bytes));
+          }
+        });
+    seqModel = handle.getModel();
     sequenceLabeler = new SequenceLabelerME(seqModel);
+    synchronized (resourceReferences) {
+      resourceReferences.add(new ResourceReference(this, handle));
+    }
+  }
+
+  /**
+   * Release in the registry the models of the resources collected, and
+   * remove the shared resources collected.
+   */
+  private static void releaseCollectedResources() {
+    Reference<? extends SequenceModelResource> reference;
+    while ((reference = collectedResources.poll()) != null) {
+      final ResourceReference resourceReference = (ResourceReference) reference;
+      resourceReference.handle.close();
+      synchronized (resourceReferences) {
+        resourceReferences.remove(resourceReference);
+      }
+      synchronized (sharedResources) {
+        final WeakReference<SequenceModelResource> shared = sharedResources
+            .get(resourceReference.digest);
+        if (shared != null && shared.get() == null) {
+          sharedResources.remove(resourceReference.digest);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check whether a model has a shared resource, which may have been
+   * collected but not removed yet.
+   * @param digest the digest of the model
+   * @return true if the model has a shared resource
+   */
+  static boolean isShared(final String digest) {
+    synchronized (sharedResources) {
+      return sharedResources.containsKey(digest);
+    }
+  }
+
+  /**
+   * Get the SequenceModelResource of a serialized model, sharing the
+   * resource already loaded for the same model if any. The input can also
+   * be a reference to a model with the same content stored in the same model
+   * file; if that model is not loaded yet, the reference is resolved when it
+   * is first used.
+   * @param in the input stream
+   * @return the resource
+   * @throws IOException io exception
+   */
+  public static SequenceModelResource getInstance(final InputStream in)
+      throws IOException {
+    releaseCollectedResources();
+    final byte[] bytes = readBytes(in);
+    final String reference = getReference(bytes);
+    final String digest = reference == null ? digest(bytes) : reference;
+    synchronized (sharedResources) {
+      final WeakReference<SequenceModelResource> shared = sharedResources.get(digest);
+      if (shared != null && shared.get() != null) {
+        return shared.get();
+      }
+    }
+    if (reference != null) {
+      return new SequenceModelResource(reference);
+    }
+    final SequenceModelResource resource = new SequenceModelResource(digest, bytes);
+    synchronized (sharedResources) {
+      final WeakReference<SequenceModelResource> shared = sharedResources.get(digest);
+      if (shared != null && shared.get() != null) {
+        return shared.get();
+      }
+      sharedResources.put(digest, new WeakReference<SequenceModelResource>(resource));
+    }
+    return resource;
+  }
+
+  /**
+   * Get the sequence labeler, resolving a reference to the resource of its
+   * model, which has been loaded with the rest of the model file.
+   */
+  private SequenceLabelerME getSequenceLabeler() {
+    SequenceLabelerME labeler = sequenceLabeler;
+    if (labeler == null) {
+      synchronized (this) {
+        labeler = sequenceLabeler;
+        if (labeler == null) {
+          final SequenceModelResource resource;
+          synchronized (sharedResources) {
+            final WeakReference<SequenceModelResource> shared = sharedResources.get(digest);
+            resource = shared == null ? null : shared.get();
+          }
+          if (resource == null) {
+            throw new IllegalStateException(
+                new InvalidFormatException("Missing referenced sequence model " + digest));
+          }
+          referenced = resource;
+          seqModel = resource.seqModel;
+          labeler = resource.sequenceLabeler;
+          sequenceLabeler = labeler;
+        }
+      }
+    }
+    return labeler;
+  }
+
+  /**
+   * Get the digest referenced by an artifact.
+   * @return the digest or null if the artifact is a model
+   */
+  private static String getReference(final byte[] bytes) {
+    final byte[] header = REFERENCE_HEADER.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= header.length) {
+      return null;
+    }
+    for (int i = 0; i < header.length; i++) {
+      if (bytes[i] != header[i]) {
+        return null;
+      }
+    }
+    return new String(bytes, header.length, bytes.length - header.length,
+        StandardCharsets.UTF_8).trim();
+  }
+
+  private static byte[] readBytes(final InputStream in) throws IOException {
+    final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      bytesOut.write(buffer, 0, read);
+    }
+    return bytesOut.toByteArray();
+  }
+
+  private static String digest(final byte[] bytes) {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (final byte b : digest.digest(bytes)) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+          Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
   }
   
+  /**
+   * Get the digest identifying the content of the model.
+   * @return the SHA-1 of the serialized model this resource was loaded from
+   */
+  public String getDigest() {
+    return digest;
+  }
+
   /**
    * Tag the current sentence.
    * @param tokens the current sentence
    * @return the array of span sequences
    */
   public Span[] seqToSpans(String[] tokens) {
-    Span[] origSpans = sequenceLabeler.tag(tokens);
+    Span[] origSpans = getSequenceLabeler().tag(tokens);
     Span[] seqSpans = SequenceLabelerME.dropOverlappingSpans(origSpans);
     return seqSpans;
   }
@@ -78,7 +314,7 @@ public class SequenceModelResource implements SerializableArtifact {
    * @return the array of span sequences
    */
   public String[] lemmatize(String[] tokens) {
-    Span[] origSpans = sequenceLabeler.tag(tokens);
+    Span[] origSpans = getSequenceLabeler().tag(tokens);
     Span[] seqSpans = SequenceLabelerME.dropOverlappingSpans(origSpans);
     //TODO work with Spans only
     String[] decodedLemmas = StringUtils.decodeLemmas(tokens, seqSpans);
@@ -91,15 +327,50 @@ public class SequenceModelResource implements SerializableArtifact {
    * @throws IOException io exception
    */
   public void serialize(OutputStream out) throws IOException {
-    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
-    seqModel.serialize(out);
-    writer.flush();
+    // a model with the same content is stored only once in a model file,
+    // and referenced by the digest of the bytes written
+    synchronized (serializedDigests) {
+      Map<String, String> digests = serializedDigests.get(out);
+      if (digests == null) {
+        digests = new HashMap<String, String>();
+        serializedDigests.put(out, digests);
+      }
+      final String written = digests.get(digest);
+      if (written != null) {
+        out.write((REFERENCE_HEADER + written).getBytes(StandardCharsets.UTF_8));
+      } else {
+        final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        getSequenceLabeler();
+        seqModel.serialize(bytesOut);
+        final byte[] bytes = bytesOut.toByteArray();
+        out.write(bytes);
+        digests.put(digest, digest(bytes));
+      }
+    }
+    out.flush();
   }
 
   public Class<?> getArtifactSerializerClass() {
     return SequenceModelResourceSerializer.class;
   }
 
+  /**
+   * A weak reference to a resource with the handle of its model, which is
+   * closed once the resource is collected.
+   */
+  private static final class ResourceReference extends WeakReference<SequenceModelResource> {
+
+    private final String digest;
+    private final ModelRegistry.Handle handle;
+
+    private ResourceReference(final SequenceModelResource resource,
+        final ModelRegistry.Handle handle) {
+      super(resource, collectedResources);
+      this.digest = resource.digest;
+      this.handle = handle;
+    }
+  }
+
 }
 
 
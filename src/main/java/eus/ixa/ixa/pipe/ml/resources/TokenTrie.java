@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package eus.ixa.ixa.pipe.ml.resources;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+/**
+ * Prefix tree over token sequences to match multi token dictionary entries,
+ * such as "Barack Obama\tperson", in tokenized sentences. Every entry is split
+ * in tokens by single spaces and each node of the tree corresponds to a token
+ * sequence. Matching at a sentence position only follows the tokens while
+ * they are in the tree, so finding the entries of a sentence costs at most
+ * the sentence length times the length of the longest entry, independently
+ * of the size of the dictionary, and does not create any string.
+ *
+ * The tokens are compared as given; for case insensitive matching both the
+ * entries and the sentence tokens have to be lowercased by the caller.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class TokenTrie {
+
+  private static final class Node {
+    /**
+     * The only child, most nodes of a dictionary have a single child.
+     */
+    private String childToken;
+    private Node child;
+    /**
+     * The children when there are more than one.
+     */
+    private Map<String, Node> children;
+    private String type;
+
+    private Node getChild(String token) {
+      if (children != null) {
+        return children.get(token);
+      }
+      return token.equals(childToken) ? child : null;
+    }
+
+    private Node addChild(String token) {
+      Node node = getChild(token);
+      if (node == null) {
+        node = new Node();
+        if (children == null && childToken == null) {
+          childToken = token;
+          child = node;
+        } else {
+          if (children == null) {
+            children = new HashMap<String, Node>(4);
+            children.put(childToken, child);
+            childToken = null;
+            child = null;
+          }
+          children.put(token, node);
+        }
+      }
+      return node;
+    }
+  }
+
+  private final Node root = new Node();
+  private final int maxLength;
+  private final int size;
+
+  /**
+   * Build the trie from a dictionary of space separated entries and their
+   * types. Entries appearing more than once keep the last type.
+   * @param entries the entries and their types
+   */
+  public TokenTrie(Map<String, String> entries) {
+    int longest = 0;
+    int count = 0;
+    Map<String, String> tokenPool = new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : entries.entrySet()) {
+      String[] entryTokens = entry.getKey().split(" ");
+      Node node = root;
+      for (String token : entryTokens) {
+        String pooled = tokenPool.get(token);
+        if (pooled == null) {
+          tokenPool.put(token, token);
+          pooled = token;
+        }
+        node = node.addChild(pooled);
+      }
+      if (node.type == null) {
+        count++;
+      }
+      node.type = entry.getValue();
+      longest = Math.max(longest, entryTokens.length);
+    }
+    this.maxLength = longest;
+    this.size = count;
+  }
+
+  /**
+   * Get the number of tokens of the longest entry.
+   * @return the maximum entry length
+   */
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Get the number of entries.
+   * @return the number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Find the longest entry starting at a position of the sentence.
+   * @param tokens the sentence
+   * @param start the start position
+   * @return the span of the entry, with its type, or null if no entry
+   * starts at the position
+   */
+  public Span longestMatch(String[] tokens, int start) {
+    Node node = root;
+    Span match = null;
+    for (int end = start; end < tokens.length; end++) {
+      node = node.getChild(tokens[end]);
+      if (node == null) {
+        break;
+      }
+      if (node.type != null) {
+        match = new Span(start, end + 1, node.type);
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Find every occurrence of every entry in the sentence, including the
+   * entries nested or overlapping with others. The spans are added ordered
+   * by start position and length.
+   * @param tokens the sentence
+   * @param spans the list to which the spans of the entries are added
+   */
+  public void findAll(String[] tokens, List<Span> spans) {
+    for (int start = 0; start < tokens.length; start++) {
+      Node node = root;
+      for (int end = start; end < tokens.length; end++) {
+        node = node.getChild(tokens[end]);
+        if (node == null) {
+          break;
+        }
+        if (node.type != null) {
+          spans.add(new Span(start, end + 1, node.type));
+        }
+      }
+    }
+  }
+}
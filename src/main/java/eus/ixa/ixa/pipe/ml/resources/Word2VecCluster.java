@@ -16,21 +16,20 @@
 
 package eus.ixa.ixa.pipe.ml.resources;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import opennlp.tools.util.InvalidFormatException;
-import opennlp.tools.util.model.ArtifactSerializer;
 import opennlp.tools.util.model.SerializableArtifact;
 
 
@@ -51,23 +50,79 @@ public class Word2VecCluster implements SerializableArtifact {
 
   private static final Pattern spacePattern = Pattern.compile(" ");
   
-  public static class Word2VecClusterSerializer implements ArtifactSerializer<Word2VecCluster> {
+  public static class Word2VecClusterSerializer implements LexiconSerializer<Word2VecCluster> {
 
     public Word2VecCluster create(InputStream in) throws IOException,
         InvalidFormatException {
-      return new Word2VecCluster(in);
+      BufferedInputStream bufferedIn = new BufferedInputStream(in);
+      if (ClusterLexicon.isBinary(bufferedIn)) {
+        return new Word2VecCluster(ClusterLexicon.read(bufferedIn));
+      }
+      return new Word2VecCluster(bufferedIn);
+    }
+
+    public Word2VecCluster create(File file) throws IOException {
+      if (ClusterLexicon.isBinary(file)) {
+        return new Word2VecCluster(ClusterLexicon.map(file));
+      }
+      try (InputStream in = new FileInputStream(file)) {
+        return create(in);
+      }
     }
 
     public void serialize(Word2VecCluster artifact, OutputStream out)
         throws IOException {
-      artifact.serialize(out);
+      artifact.tokenToClusterMap.writeText(out, ' ');
+    }
+  }
+
+  /**
+   * Serializes the lexicon in the binary format of {@link ClusterLexicon}.
+   */
+  public static class BinaryWord2VecClusterSerializer extends Word2VecClusterSerializer {
+
+    @Override
+    public Word2VecCluster create(InputStream in) throws IOException,
+        InvalidFormatException {
+      return new Word2VecCluster(super.create(in).tokenToClusterMap, true);
+    }
+
+    @Override
+    public Word2VecCluster create(File file) throws IOException {
+      return new Word2VecCluster(super.create(file).tokenToClusterMap, true);
+    }
+
+    @Override
+    public void serialize(Word2VecCluster artifact, OutputStream out)
+        throws IOException {
+      artifact.tokenToClusterMap.write(out);
     }
   }
   
-  private Map<String, String> tokenToClusterMap = new HashMap<String, String>();
+  private final ClusterLexicon tokenToClusterMap;
+  /**
+   * Whether the lexicon is serialized in the binary format.
+   */
+  private final boolean binary;
   
+  /**
+   * Creates the Word2Vec clustering lexicon from a binary lexicon, which may be
+   * memory mapped with {@link ClusterLexicon#map(java.io.File)}.
+   * It is serialized in the text format.
+   * @param lexicon the lexicon
+   */
+  public Word2VecCluster(ClusterLexicon lexicon) {
+    this(lexicon, false);
+  }
+
+  private Word2VecCluster(ClusterLexicon lexicon, boolean binary) {
+    this.tokenToClusterMap = lexicon;
+    this.binary = binary;
+  }
+
   public Word2VecCluster(InputStream in) throws IOException {
 
+    Map<String, String> tokenToClusterMap = new HashMap<String, String>();
     BufferedReader breader = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
     String line;
     while ((line = breader.readLine()) != null) {
@@ -77,28 +132,39 @@ public class Word2VecCluster implements SerializableArtifact {
         tokenToClusterMap.put(normalizedToken.toLowerCase(), lineArray[1].intern());
       }
     }
+    this.tokenToClusterMap = new ClusterLexicon(tokenToClusterMap);
+    this.binary = false;
   }
   
   public String lookupToken(String string) {
-    return tokenToClusterMap.get(string);
+    return tokenToClusterMap.lookup(string);
   }
   
+  /**
+   * Get a read-only map view of the clustering lexicon.
+   * @return the map view
+   */
   public Map<String, String> getMap() {
-    return tokenToClusterMap;
+    return tokenToClusterMap.asMap();
   }
 
+  /**
+   * Serializes the lexicon in the text format, or in the binary format of
+   * {@link ClusterLexicon} if it was loaded by the
+   * {@link BinaryWord2VecClusterSerializer}.
+   * @param out the output stream
+   * @throws IOException if io error
+   */
   public void serialize(OutputStream out) throws IOException {
-    Writer writer = new BufferedWriter(new OutputStreamWriter(out));
-
-    for (Map.Entry<String, String> entry : tokenToClusterMap.entrySet()) {
-      writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+    if (binary) {
+      tokenToClusterMap.write(out);
+    } else {
+      tokenToClusterMap.writeText(out, ' ');
     }
-
-    writer.flush();
   }
 
   public Class<?> getArtifactSerializerClass() {
-    return Word2VecClusterSerializer.class;
+    return binary ? BinaryWord2VecClusterSerializer.class : Word2VecClusterSerializer.class;
   }
 
 }
@@ -1,8 +1,12 @@
 package eus.ixa.ixa.pipe.ml.sequence;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import eus.ixa.ixa.pipe.ml.features.FeatureHasher;
 import opennlp.tools.util.featuregen.AdaptiveFeatureGenerator;
 import opennlp.tools.util.featuregen.BigramNameFeatureGenerator;
 import opennlp.tools.util.featuregen.CachedFeatureGenerator;
@@ -16,10 +20,83 @@ import opennlp.tools.util.featuregen.WindowFeatureGenerator;
 /**
  * Class for determining contextual features for a tag/chunk style
  * named-entity recognizer.
+ *
+ * The feature generators are of two kinds. The features of the feature
+ * generators, which must not use the previous outcomes, are computed once per
+ * token of the current sentence and combined in each call to
+ * {@link #getContext(int, String[], String[], Object[])} with the previous
+ * outcome features. This avoids computing them again for every hypothesis of
+ * the beam. The cache is invalidated when a new sentence (a different tokens
+ * array) is seen and when the adaptive data changes. The features of the
+ * outcome feature generators, which may use the previous outcomes, are
+ * computed again in every call.
+ *
+ * If a {@link FeatureHasher} is given, every feature is replaced by its
+ * hashed feature; the token features are hashed once, when they are cached.
+ *
+ * The feature buffers are reused across calls, so instances of this class
+ * must not be shared between threads.
  */
 public class DefaultSequenceContextGenerator implements SequenceContextGenerator {
 
+  private static final String PO_PREFIX = "po=";
+  private static final String POW_PREFIX = "pow=";
+  private static final String POWF_PREFIX = "powf=";
+  private static final String PPO_PREFIX = "ppo=";
+
+  private static final String[] NO_FEATURES = new String[0];
+
   private AdaptiveFeatureGenerator[] featureGenerators;
+  /**
+   * The feature generators which use the previous outcomes.
+   */
+  private final AdaptiveFeatureGenerator[] outcomeFeatureGenerators;
+  /**
+   * The hasher of the features, or null if the features are not hashed.
+   */
+  private final FeatureHasher featureHasher;
+
+  /**
+   * The feature buffer, reused for every token and beam hypothesis.
+   */
+  private final List<String> features = new ArrayList<String>();
+  /**
+   * The buffer to build the token dependent outcome features.
+   */
+  private final StringBuilder featureBuilder = new StringBuilder();
+  /**
+   * The po features of each outcome; the outcomes are a small closed set.
+   */
+  private final Map<String, String> poFeatures = new HashMap<String, String>();
+  /**
+   * The ppo features of each outcome.
+   */
+  private final Map<String, String> ppoFeatures = new HashMap<String, String>();
+  /**
+   * The powf features of each outcome and token class.
+   */
+  private final Map<String, Map<String, String>> powfFeatures = new HashMap<String, Map<String, String>>();
+  /**
+   * The sentence whose features are cached.
+   */
+  private String[] cachedTokens;
+  /**
+   * The additional context of the sentence whose features are cached.
+   */
+  private Object[] cachedAdditionalContext;
+  /**
+   * Whether the cached features are still valid for the cached sentence.
+   */
+  private boolean cacheValid;
+  /**
+   * The tokens of the cached sentence given to the feature generators.
+   */
+  private String[] generatorTokens;
+  /**
+   * The features of the feature generators for each token of the cached
+   * sentence.
+   */
+  private String[][] cachedFeatures = new String[0][];
   
   @Deprecated
   private static AdaptiveFeatureGenerator windowFeatures = new CachedFeatureGenerator(
@@ -37,7 +114,36 @@ public class DefaultSequenceContextGenerator implements SequenceContextGenerator
  * @param featureGenerators the array of feature generators
  */
 public DefaultSequenceContextGenerator(AdaptiveFeatureGenerator... featureGenerators) {
+    this(null, featureGenerators);
+  }
+
+  /**
+   * Creates a name context generator which hashes the features.
+   *
+   * @param featureHasher the feature hasher, or null to not hash the features
+   * @param featureGenerators the array of feature generators
+   */
+  public DefaultSequenceContextGenerator(FeatureHasher featureHasher,
+      AdaptiveFeatureGenerator... featureGenerators) {
+    this(featureHasher, featureGenerators, new AdaptiveFeatureGenerator[0]);
+  }
+
+  /**
+   * Creates a name context generator with feature generators which use the
+   * previous outcomes.
+   *
+   * @param featureHasher the feature hasher, or null to not hash the features
+   * @param featureGenerators the feature generators which do not use the
+   * previous outcomes, whose features are cached
+   * @param outcomeFeatureGenerators the feature generators which use the
+   * previous outcomes
+   */
+  public DefaultSequenceContextGenerator(FeatureHasher featureHasher,
+      AdaptiveFeatureGenerator[] featureGenerators,
+      AdaptiveFeatureGenerator[] outcomeFeatureGenerators) {
 
+    this.featureHasher = featureHasher;
+    this.outcomeFeatureGenerators = outcomeFeatureGenerators;
     if (featureGenerators != null) {
       this.featureGenerators = featureGenerators;
     }
@@ -57,6 +163,7 @@ public DefaultSequenceContextGenerator(AdaptiveFeatureGenerator... featureGenera
       System.arraycopy(generators, 0, featureGenerators, 0, generators.length);
 
       featureGenerators[featureGenerators.length - 1] = generator;
+      cacheValid = false;
   }
 
   public void updateAdaptiveData(String[] tokens, String[] outcomes) {
@@ -69,12 +176,20 @@ public DefaultSequenceContextGenerator(AdaptiveFeatureGenerator... featureGenera
     for (AdaptiveFeatureGenerator featureGenerator : featureGenerators) {
       featureGenerator.updateAdaptiveData(tokens, outcomes);
     }
+    for (AdaptiveFeatureGenerator featureGenerator : outcomeFeatureGenerators) {
+      featureGenerator.updateAdaptiveData(tokens, outcomes);
+    }
+    cacheValid = false;
   }
 
   public void clearAdaptiveData() {
     for (AdaptiveFeatureGenerator featureGenerator : featureGenerators) {
       featureGenerator.clearAdaptiveData();
     }
+    for (AdaptiveFeatureGenerator featureGenerator : outcomeFeatureGenerators) {
+      featureGenerator.clearAdaptiveData();
+    }
+    cacheValid = false;
   }
 
   /**
@@ -87,11 +202,9 @@ public DefaultSequenceContextGenerator(AdaptiveFeatureGenerator... featureGenera
    * @return the context for finding names at the specified index.
    */
   public String[] getContext(int index, String[] tokens, String[] preds, Object[] additionalContext) {
-    List<String> features = new ArrayList<String>();
 
-    for (AdaptiveFeatureGenerator featureGenerator : featureGenerators) {
-      featureGenerator.createFeatures(features, tokens, index, preds);
-    }
+    String[] tokenFeatures = getTokenFeatures(index, tokens, preds, additionalContext);
+    String[] outcomeFeatures = getOutcomeFeatures(index, preds);
 
     //previous outcome features
     String po = BilouCodec.OTHER;
@@ -106,12 +219,127 @@ public DefaultSequenceContextGenerator(AdaptiveFeatureGenerator... featureGenera
       if (index > 0) {
         po = preds[index-1];
       }
-      features.add("po=" + po);
-      features.add("pow=" + po + "," + tokens[index]);
-      features.add("powf=" + po + "," + FeatureGeneratorUtil.tokenFeature(tokens[index]));
-      features.add("ppo=" + ppo);
+      String[] context = new String[tokenFeatures.length + outcomeFeatures.length + 4];
+      System.arraycopy(tokenFeatures, 0, context, 0, tokenFeatures.length);
+      System.arraycopy(outcomeFeatures, 0, context, tokenFeatures.length, outcomeFeatures.length);
+      int next = tokenFeatures.length + outcomeFeatures.length;
+      context[next++] = getOutcomeFeature(poFeatures, PO_PREFIX, po);
+      featureBuilder.setLength(0);
+      context[next++] = hashFeature(featureBuilder.append(POW_PREFIX).append(po).append(',').append(tokens[index]).toString());
+      context[next++] = getPowfFeature(po, FeatureGeneratorUtil.tokenFeature(tokens[index]));
+      context[next] = getOutcomeFeature(ppoFeatures, PPO_PREFIX, ppo);
+      return context;
+    }
+    String[] context = new String[tokenFeatures.length + outcomeFeatures.length];
+    System.arraycopy(tokenFeatures, 0, context, 0, tokenFeatures.length);
+    System.arraycopy(outcomeFeatures, 0, context, tokenFeatures.length, outcomeFeatures.length);
+    return context;
+  }
+
+  /**
+   * Get the features of the feature generators for a token, computing them
+   * only the first time they are requested for the current sentence.
+   * @param index the index of the token
+   * @param tokens the tokens of the sentence
+   * @param preds the previous decisions
+   * @param additionalContext the additional context of the sentence
+   * @return the cached features of the token, not to be modified
+   */
+  private String[] getTokenFeatures(int index, String[] tokens, String[] preds, Object[] additionalContext) {
+    if (!cacheValid || tokens != cachedTokens || additionalContext != cachedAdditionalContext) {
+      // a sentence seen again is given to the feature generators in a new
+      // array, as the caches of some of them, such as the cache element of
+      // the descriptors, are keyed on its identity and ignore the adaptive data
+      generatorTokens = tokens == cachedTokens ? tokens.clone() : tokens;
+      cachedTokens = tokens;
+      cachedAdditionalContext = additionalContext;
+      cacheValid = true;
+      if (cachedFeatures.length < tokens.length) {
+        cachedFeatures = new String[tokens.length][];
+      } else {
+        Arrays.fill(cachedFeatures, 0, tokens.length, null);
+      }
+    }
+    String[] tokenFeatures = cachedFeatures[index];
+    if (tokenFeatures == null) {
+      features.clear();
+      for (AdaptiveFeatureGenerator featureGenerator : featureGenerators) {
+        featureGenerator.createFeatures(features, generatorTokens, index, preds);
+      }
+      tokenFeatures = features.toArray(new String[features.size()]);
+      if (featureHasher != null) {
+        featureHasher.hashFeatures(tokenFeatures);
+      }
+      cachedFeatures[index] = tokenFeatures;
+    }
+    return tokenFeatures;
+  }
+
+  /**
+   * Get the features of the outcome feature generators for a token of the
+   * current sentence, computing them in every call.
+   * @param index the index of the token
+   * @param preds the previous decisions
+   * @return the features of the token
+   */
+  private String[] getOutcomeFeatures(int index, String[] preds) {
+    if (outcomeFeatureGenerators.length == 0) {
+      return NO_FEATURES;
+    }
+    features.clear();
+    for (AdaptiveFeatureGenerator featureGenerator : outcomeFeatureGenerators) {
+      featureGenerator.createFeatures(features, generatorTokens, index, preds);
+    }
+    String[] outcomeFeatures = features.toArray(new String[features.size()]);
+    if (featureHasher != null) {
+      featureHasher.hashFeatures(outcomeFeatures);
+    }
+    return outcomeFeatures;
+  }
+
+  /**
+   * Get the feature for an outcome, creating it only the first time the
+   * outcome is seen.
+   * @param cache the features already created
+   * @param prefix the feature prefix
+   * @param outcome the outcome
+   * @return the feature
+   */
+  private String getOutcomeFeature(Map<String, String> cache, String prefix, String outcome) {
+    String feature = cache.get(outcome);
+    if (feature == null) {
+      feature = hashFeature(prefix + outcome);
+      cache.put(outcome, feature);
     }
+    return feature;
+  }
 
-    return features.toArray(new String[features.size()]);
+  /**
+   * Get the powf feature of an outcome and a token class.
+   * @param po the previous outcome
+   * @param tokenClass the class of the current token
+   * @return the feature
+   */
+  private String getPowfFeature(String po, String tokenClass) {
+    Map<String, String> classFeatures = powfFeatures.get(po);
+    if (classFeatures == null) {
+      classFeatures = new HashMap<String, String>();
+      powfFeatures.put(po, classFeatures);
+    }
+    String feature = classFeatures.get(tokenClass);
+    if (feature == null) {
+      feature = hashFeature(POWF_PREFIX + po + "," + tokenClass);
+      classFeatures.put(tokenClass, feature);
+    }
+    return feature;
+  }
+
+  /**
+   * Hash a feature if the features are hashed.
+   * @param feature the feature
+   * @return the hashed feature or the feature itself
+   */
+  private String hashFeature(String feature) {
+    return featureHasher == null ? feature : featureHasher.hashFeature(feature);
   }
 }
@@ -0,0 +1,403 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Registry of the {@link SequenceLabelerModel}s in use, shared by all the
+ * components loading models. Each model is loaded once per key, by the
+ * first thread asking for it; other threads asking for the same key wait
+ * for that load, while models with different keys are loaded concurrently.
+ *
+ * Every {@link #acquire} returns a {@link Handle} which has to be closed
+ * when the model is no longer needed. Models which are not referenced by
+ * any handle are kept for reuse until the memory used by the registry
+ * exceeds the memory budget; then the least recently used of them are
+ * evicted. The memory of a model is estimated by its serialized size.
+ * Models in use are never evicted, so the budget can be exceeded while they
+ * are referenced.
+ *
+ * The budget of the registry shared by the library, used by the CLI, is
+ * given in megabytes by the {@value #MEMORY_BUDGET_PROPERTY} system property,
+ * e.g. {@code java -Dixa.pipe.ml.modelMemoryBudget=512 -jar ...}; if it is not
+ * set, it is a quarter of the maximum heap.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public final class ModelRegistry {
+
+  /**
+   * The system property with the memory budget of the default registry in
+   * megabytes.
+   */
+  public static final String MEMORY_BUDGET_PROPERTY = "ixa.pipe.ml.modelMemoryBudget";
+
+  private static final ModelRegistry DEFAULT = new ModelRegistry(parseMemoryBudget(
+      System.getProperty(MEMORY_BUDGET_PROPERTY), Runtime.getRuntime().maxMemory()));
+
+  /**
+   * Loads a model when it is not in the registry.
+   */
+  public interface ModelLoader {
+
+    /**
+     * Load the model.
+     * @return the model
+     * @throws IOException if the model can not be read
+     */
+    SequenceLabelerModel load() throws IOException;
+  }
+
+  /**
+   * The entries in least recently used order.
+   */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private long memoryBudget;
+  private long memoryUsed = 0;
+  private long loads = 0;
+  private long hits = 0;
+  private long evictions = 0;
+
+  /**
+   * Construct a model registry.
+   * @param memoryBudget the maximum serialized size of the models kept
+   * when they are not in use
+   */
+  public ModelRegistry(final long memoryBudget) {
+    setMemoryBudget(memoryBudget);
+  }
+
+  /**
+   * Get the registry shared by the library, with the memory budget of the
+   * {@value #MEMORY_BUDGET_PROPERTY} system property.
+   * @return the default registry
+   */
+  public static ModelRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Get the memory budget of the default registry.
+   * @param megabytes the value of the system property or null if not set
+   * @param maxMemory the maximum heap
+   * @return the budget in bytes
+   */
+  static long parseMemoryBudget(final String megabytes, final long maxMemory) {
+    if (megabytes == null) {
+      return maxMemory / 4;
+    }
+    final long budget;
+    try {
+      budget = Long.parseLong(megabytes.trim());
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid " + MEMORY_BUDGET_PROPERTY
+          + ": " + megabytes, e);
+    }
+    if (budget < 0) {
+      throw new IllegalArgumentException("The memory budget can not be negative: "
+          + budget);
+    }
+    return budget > Long.MAX_VALUE >> 20 ? Long.MAX_VALUE : budget << 20;
+  }
+
+  /**
+   * Set the memory budget, evicting unused models if it is exceeded.
+   * @param memoryBudget the maximum serialized size of the models kept
+   * when they are not in use
+   */
+  public synchronized void setMemoryBudget(final long memoryBudget) {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("The memory budget can not be negative: "
+          + memoryBudget);
+    }
+    this.memoryBudget = memoryBudget;
+    evict();
+  }
+
+  public synchronized long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Get a model from a file, loading it if it is not in the registry. The
+   * key of the model is the canonical path of the file.
+   * @param modelFile the model file
+   * @return the handle of the model
+   * @throws IOException if the model can not be loaded
+   */
+  public Handle acquire(final File modelFile) throws IOException {
+    final File file = modelFile.getCanonicalFile();
+    return acquire(file.getPath(), file.length(), new ModelLoader() {
+      public SequenceLabelerModel load() throws IOException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+          return new SequenceLabelerModel(in);
+        } finally {
+          in.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * Get a model, loading it if it is not in the registry.
+   * @param key the key of the model
+   * @param size the estimated memory of the model, usually its serialized
+   * size
+   * @param loader the loader used if the model is not in the registry
+   * @return the handle of the model
+   * @throws IOException if the model can not be loaded
+   */
+  public Handle acquire(final String key, final long size, final ModelLoader loader)
+      throws IOException {
+    final Entry entry;
+    final boolean load;
+    synchronized (this) {
+      Entry current = entries.get(key);
+      load = current == null;
+      if (load) {
+        current = new Entry(size, loader);
+        entries.put(key, current);
+        loads++;
+      } else {
+        hits++;
+      }
+      current.references++;
+      entry = current;
+    }
+    if (load) {
+      final long start = System.nanoTime();
+      entry.task.run();
+      entry.loadNanos = System.nanoTime() - start;
+    }
+    final SequenceLabelerModel model;
+    try {
+      model = entry.task.get();
+    } catch (final InterruptedException e) {
+      release(key, entry, true);
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading model " + key, e);
+    } catch (final ExecutionException e) {
+      release(key, entry, true);
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+    if (load) {
+      synchronized (this) {
+        entry.loaded = true;
+        memoryUsed += entry.size;
+        evict();
+      }
+    }
+    return new Handle(key, entry, model);
+  }
+
+  /**
+   * Drop a reference to a model, removing the model if its load failed and
+   * evicting unused models if the budget is exceeded.
+   */
+  private synchronized void release(final String key, final Entry entry,
+      final boolean failed) {
+    entry.references--;
+    if (failed && entries.get(key) == entry) {
+      entries.remove(key);
+    }
+    evict();
+  }
+
+  /**
+   * Evict the least recently used models not in use until the memory used
+   * is within the budget.
+   */
+  private void evict() {
+    final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (memoryUsed > memoryBudget && iterator.hasNext()) {
+      final Entry entry = iterator.next().getValue();
+      if (entry.loaded && entry.references == 0) {
+        iterator.remove();
+        memoryUsed -= entry.size;
+        evictions++;
+      }
+    }
+  }
+
+  /**
+   * Check whether a model is in the registry.
+   * @param key the key of the model
+   * @return true if the model is loaded or being loaded
+   */
+  public synchronized boolean contains(final String key) {
+    // the iteration order of the entries is not changed by containsKey
+    return entries.containsKey(key);
+  }
+
+  /**
+   * Get the number of models in the registry.
+   * @return the number of models loaded or being loaded
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Get the estimated memory of the models loaded.
+   * @return the added serialized size of the models
+   */
+  public synchronized long getMemoryUsed() {
+    return memoryUsed;
+  }
+
+  /**
+   * Get the number of models loaded since the registry was created.
+   * @return the number of loads
+   */
+  public synchronized long getLoads() {
+    return loads;
+  }
+
+  /**
+   * Get the number of requests served with a model already in the registry.
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of models evicted.
+   * @return the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Get the time it took to load a model.
+   * @param key the key of the model
+   * @return the load time in milliseconds or -1 if the model is not loaded
+   */
+  public synchronized long getLoadTime(final String key) {
+    final Entry entry = peek(key);
+    return entry == null || !entry.loaded ? -1 : entry.loadNanos / 1000000;
+  }
+
+  /**
+   * Get the estimated memory of a model.
+   * @param key the key of the model
+   * @return the serialized size of the model or -1 if it is not loaded
+   */
+  public synchronized long getModelSize(final String key) {
+    final Entry entry = peek(key);
+    return entry == null || !entry.loaded ? -1 : entry.size;
+  }
+
+  /**
+   * Get an entry without changing the least recently used order.
+   */
+  private Entry peek(final String key) {
+    for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (entry.getKey().equals(key)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ModelRegistry [models=" + entries.size() + ", memoryUsed="
+        + memoryUsed + ", memoryBudget=" + memoryBudget + ", loads=" + loads
+        + ", hits=" + hits + ", evictions=" + evictions + "]";
+  }
+
+  private static final class Entry {
+
+    private final long size;
+    private final FutureTask<SequenceLabelerModel> task;
+    private int references = 0;
+    private boolean loaded = false;
+    private volatile long loadNanos;
+
+    private Entry(final long size, final ModelLoader loader) {
+      this.size = size;
+      this.task = new FutureTask<SequenceLabelerModel>(
+          new Callable<SequenceLabelerModel>() {
+            public SequenceLabelerModel call() throws IOException {
+              return loader.load();
+            }
+          });
+    }
+  }
+
+  /**
+   * A reference to a model of the registry. The model is not evicted until
+   * the handle is closed.
+   */
+  public final class Handle {
+
+    private final String key;
+    private final Entry entry;
+    private final SequenceLabelerModel model;
+    private boolean closed = false;
+
+    private Handle(final String key, final Entry entry,
+        final SequenceLabelerModel model) {
+      this.key = key;
+      this.entry = entry;
+      this.model = model;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public SequenceLabelerModel getModel() {
+      return model;
+    }
+
+    /**
+     * Release the model. Closing a handle more than once has no effect.
+     */
+    public void close() {
+      synchronized (ModelRegistry.this) {
+        if (!closed) {
+          closed = true;
+          release(key, entry, false);
+        }
+      }
+    }
+  }
+}
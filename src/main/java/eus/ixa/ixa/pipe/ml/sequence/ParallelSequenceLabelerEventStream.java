@@ -0,0 +1,359 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.featuregen.AdditionalContextFeatureGenerator;
+import opennlp.tools.util.featuregen.WindowFeatureGenerator;
+
+/**
+ * Event stream generating the training events of the samples in parallel.
+ * The samples are split into documents, every document starting with a
+ * sample where {@link SequenceSample#isClearAdaptiveDataSet()} is true, and
+ * every document is processed by one of the worker threads with its own
+ * {@link SequenceContextGenerator}, so that the adaptive data of the feature
+ * generators flows through the sentences of the document as in the
+ * {@link SequenceLabelerEventStream}. The events are returned in the order
+ * of the samples, and a bounded number of documents is processed ahead of
+ * the trainer. A document longer than the maximum document size, such as
+ * the whole corpus when the adaptive data is never cleared, is not held in
+ * memory: its events are generated one sample at a time by the thread
+ * reading the stream, once the documents before it have been returned.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public class ParallelSequenceLabelerEventStream implements ObjectStream<Event> {
+
+  /**
+   * The training parameter with the number of threads generating the
+   * events, distinct from the threads of the trainer.
+   */
+  public static final String THREADS_PARAMETER = "EventThreads";
+  /**
+   * The training parameter with the maximum number of samples of a document
+   * processed by the worker threads.
+   */
+  public static final String DOCUMENT_SIZE_PARAMETER = "EventDocumentSize";
+  /**
+   * The default maximum number of samples of a document processed by the
+   * worker threads.
+   */
+  public static final int DEFAULT_DOCUMENT_SIZE = 1000;
+
+  private final ObjectStream<SequenceSample> samples;
+  private final SequenceLabelerFactory factory;
+  private final int threads;
+  private final int queueSize;
+  private final int maxDocumentSize;
+  private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+    @Override
+    protected Worker initialValue() {
+      return new Worker();
+    }
+  };
+  private ExecutorService executor;
+  private final Deque<Future<List<Event>>> pending = new ArrayDeque<Future<List<Event>>>();
+  private Iterator<Event> events = Collections.<Event> emptyList().iterator();
+  /**
+   * The first sample of the next document, already read.
+   */
+  private SequenceSample nextSample;
+  private boolean endOfSamples = false;
+  /**
+   * The samples read of a document longer than the maximum document size,
+   * waiting for the documents before it to be returned.
+   */
+  private List<SequenceSample> longDocument;
+  /**
+   * Whether the events of a long document are being generated by the
+   * thread reading the stream.
+   */
+  private boolean streamingDocument = false;
+
+  /**
+   * Creates a parallel event stream processing up to four documents per
+   * thread ahead of the trainer.
+   * @param samples the training samples
+   * @param factory the factory of the context generators
+   * @param threads the number of worker threads
+   */
+  public ParallelSequenceLabelerEventStream(
+      final ObjectStream<SequenceSample> samples,
+      final SequenceLabelerFactory factory, final int threads) {
+    this(samples, factory, threads, 4 * threads, DEFAULT_DOCUMENT_SIZE);
+  }
+
+  /**
+   * Creates a parallel event stream.
+   * @param samples the training samples
+   * @param factory the factory of the context generators
+   * @param threads the number of worker threads
+   * @param queueSize the maximum number of documents processed ahead of the
+   * trainer
+   * @param maxDocumentSize the maximum number of samples of a document
+   * processed by the worker threads
+   */
+  public ParallelSequenceLabelerEventStream(
+      final ObjectStream<SequenceSample> samples,
+      final SequenceLabelerFactory factory, final int threads,
+      final int queueSize, final int maxDocumentSize) {
+    if (threads <= 0 || queueSize <= 0 || maxDocumentSize <= 0) {
+      throw new IllegalArgumentException(
+          "The number of threads, the queue size and the document size must be positive!");
+    }
+    this.samples = samples;
+    this.factory = factory;
+    this.threads = threads;
+    this.queueSize = queueSize;
+    this.maxDocumentSize = maxDocumentSize;
+  }
+
+  public Event read() throws IOException {
+    while (!events.hasNext()) {
+      if (streamingDocument) {
+        events = streamDocument().iterator();
+        continue;
+      }
+      submitDocuments();
+      if (!pending.isEmpty()) {
+        events = getResult(pending.poll()).iterator();
+      } else if (longDocument != null) {
+        startStreaming();
+      } else {
+        shutdown();
+        return null;
+      }
+    }
+    return events.next();
+  }
+
+  public void reset() throws IOException, UnsupportedOperationException {
+    for (final Future<List<Event>> future : pending) {
+      future.cancel(true);
+    }
+    pending.clear();
+    events = Collections.<Event> emptyList().iterator();
+    nextSample = null;
+    endOfSamples = false;
+    longDocument = null;
+    streamingDocument = false;
+    samples.reset();
+  }
+
+  public void close() throws IOException {
+    shutdown();
+    samples.close();
+  }
+
+  /**
+   * Submit documents to the workers until the queue is full or there are
+   * no more samples.
+   */
+  private void submitDocuments() throws IOException {
+    while (pending.size() < queueSize && longDocument == null) {
+      final List<SequenceSample> document = readDocument();
+      if (document == null) {
+        return;
+      }
+      if (document.size() > maxDocumentSize) {
+        longDocument = document;
+        return;
+      }
+      pending.add(getExecutor().submit(new Callable<List<Event>>() {
+        public List<Event> call() {
+          return workers.get().createEvents(document);
+        }
+      }));
+    }
+  }
+
+  /**
+   * Read the samples of the next document, or the first samples of a
+   * document longer than the maximum document size.
+   * @return the samples or null if there are no more samples
+   */
+  private List<SequenceSample> readDocument() throws IOException {
+    if (nextSample == null && !endOfSamples) {
+      nextSample = samples.read();
+    }
+    if (nextSample == null) {
+      endOfSamples = true;
+      return null;
+    }
+    final List<SequenceSample> document = new ArrayList<SequenceSample>();
+    document.add(nextSample);
+    nextSample = null;
+    SequenceSample sample;
+    while (document.size() <= maxDocumentSize
+        && (sample = samples.read()) != null) {
+      if (sample.isClearAdaptiveDataSet()) {
+        nextSample = sample;
+        return document;
+      }
+      document.add(sample);
+    }
+    if (document.size() <= maxDocumentSize) {
+      endOfSamples = true;
+    }
+    return document;
+  }
+
+  /**
+   * Start generating the events of the long document in this thread, once
+   * the documents before it have been returned.
+   */
+  private void startStreaming() {
+    final Worker worker = workers.get();
+    worker.clearAdaptiveData();
+    final List<Event> documentEvents = new ArrayList<Event>();
+    for (final SequenceSample sample : longDocument) {
+      documentEvents.addAll(worker.createEvents(sample));
+    }
+    longDocument = null;
+    streamingDocument = true;
+    events = documentEvents.iterator();
+  }
+
+  /**
+   * Generate the events of the next sample of the long document.
+   * @return the events, empty at the end of the document
+   */
+  private List<Event> streamDocument() throws IOException {
+    final SequenceSample sample = samples.read();
+    if (sample == null || sample.isClearAdaptiveDataSet()) {
+      nextSample = sample;
+      endOfSamples = sample == null;
+      streamingDocument = false;
+      return Collections.emptyList();
+    }
+    return workers.get().createEvents(sample);
+  }
+
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+        public Thread newThread(final Runnable runnable) {
+          // do not keep the JVM alive if the trainer does not close the stream
+          final Thread thread = threadFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  private void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Waits for the events of a document.
+   * @param future the task
+   * @return the events
+   * @throws IOException if interrupted
+   */
+  private static List<Event> getResult(final Future<List<Event>> future)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while generating events");
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * The context generator of a worker thread.
+   */
+  private final class Worker {
+
+    private final SequenceContextGenerator contextGenerator;
+    private final AdditionalContextFeatureGenerator additionalContextFeatureGenerator = new AdditionalContextFeatureGenerator();
+    private final SequenceCodec<String> codec;
+
+    private Worker() {
+      contextGenerator = factory.createContextGenerator();
+      contextGenerator.addFeatureGenerator(new WindowFeatureGenerator(
+          additionalContextFeatureGenerator, 8, 8));
+      final SequenceCodec<String> sequenceCodec = factory.createSequenceCodec();
+      codec = sequenceCodec == null ? new BioCodec() : sequenceCodec;
+    }
+
+    /**
+     * Create the events of a document as the
+     * {@link SequenceLabelerEventStream} does.
+     * @param document the samples of the document
+     * @return the events
+     */
+    private List<Event> createEvents(final List<SequenceSample> document) {
+      // the worker may have processed other documents before
+      clearAdaptiveData();
+      final List<Event> documentEvents = new ArrayList<Event>();
+      for (final SequenceSample sample : document) {
+        documentEvents.addAll(createEvents(sample));
+      }
+      return documentEvents;
+    }
+
+    private void clearAdaptiveData() {
+      contextGenerator.clearAdaptiveData();
+    }
+
+    /**
+     * Create the events of the next sample of a document.
+     * @param sample the sample
+     * @return the events
+     */
+    private List<Event> createEvents(final SequenceSample sample) {
+      final String[] outcomes = codec.encode(sample.getSequences(),
+          sample.getTokens().length);
+      additionalContextFeatureGenerator.setCurrentContext(sample
+          .getAdditionalContext());
+      final String[] tokens = sample.getTokens().clone();
+      return SequenceLabelerEventStream.generateEvents(tokens, outcomes,
+          contextGenerator);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import opennlp.tools.ml.model.SequenceClassificationModel;
+import opennlp.tools.util.Sequence;
+import opennlp.tools.util.featuregen.AdditionalContextFeatureGenerator;
+
+/**
+ * The decoding state of a {@link SequenceLabelerME} for one document. It
+ * holds the feature generator instances, which keep the adaptive data and the
+ * features of the current sentence, the beam search decoder and the last
+ * decoded sequence, so that a single {@link SequenceLabelerME} can be shared
+ * by several threads as long as each thread uses its own context. The model,
+ * the feature generator descriptor and the heavy resources (clustering
+ * lexicons, dictionaries, embedded models, etc.) are held by the labeler and
+ * shared among all its contexts.
+ *
+ * A context is not thread-safe and is obtained from
+ * {@link SequenceLabelerME#createContext()}.
+ */
+public class SequenceLabelerContext {
+
+  /**
+   * The feature generators of this context.
+   */
+  private final SequenceContextGenerator contextGenerator;
+  /**
+   * The feature generator providing the additional context of each call.
+   */
+  private final AdditionalContextFeatureGenerator additionalContextFeatureGenerator;
+  /**
+   * The decoder, which keeps per call buffers.
+   */
+  private final SequenceClassificationModel<String> sequenceModel;
+  /**
+   * The last decoded sequence.
+   */
+  private Sequence bestSequence;
+  /**
+   * The buffer for the outcome probabilities of each sentence.
+   */
+  private double[] probs = new double[0];
+
+  SequenceLabelerContext(SequenceContextGenerator contextGenerator,
+      AdditionalContextFeatureGenerator additionalContextFeatureGenerator,
+      SequenceClassificationModel<String> sequenceModel) {
+    this.contextGenerator = contextGenerator;
+    this.additionalContextFeatureGenerator = additionalContextFeatureGenerator;
+    this.sequenceModel = sequenceModel;
+  }
+
+  SequenceContextGenerator getContextGenerator() {
+    return contextGenerator;
+  }
+
+  AdditionalContextFeatureGenerator getAdditionalContextFeatureGenerator() {
+    return additionalContextFeatureGenerator;
+  }
+
+  SequenceClassificationModel<String> getSequenceModel() {
+    return sequenceModel;
+  }
+
+  void setBestSequence(Sequence bestSequence) {
+    this.bestSequence = bestSequence;
+  }
+
+  /**
+   * Get the buffer for the outcome probabilities of a sentence.
+   * @param length the number of tokens of the sentence
+   * @return the buffer, at least as long as the sentence
+   */
+  double[] getProbsBuffer(int length) {
+    if (probs.length < length) {
+      probs = new double[length];
+    }
+    return probs;
+  }
+
+  /**
+   * Get the last sequence decoded with this context.
+   * @return the last decoded sequence or null if none
+   */
+  public Sequence getBestSequence() {
+    return bestSequence;
+  }
+
+  /**
+   * Forgets all adaptive data which was collected during previous calls using
+   * this context. This method is typically called at the end of a document.
+   */
+  public void clearAdaptiveData() {
+    contextGenerator.clearAdaptiveData();
+  }
+}
@@ -7,7 +7,13 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import opennlp.tools.util.CollectionObjectStream;
 import opennlp.tools.util.FilterObjectStream;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.TrainingParameters;
@@ -124,6 +130,7 @@ public class SequenceLabelerCrossValidator {
 
 	  private FMeasure fmeasure = new FMeasure();
 	  private SequenceLabelerFactory factory;
+	  private List<Long> foldTimes = new ArrayList<Long>();
 
 	  
 	  /** SequenceLabeler Cross Validator.
@@ -205,8 +212,203 @@ public class SequenceLabelerCrossValidator {
 	    }
 	  }
 
+	  /**
+	   * Starts the evaluation running the folds in parallel. The documents are
+	   * read in memory and every fold is trained and evaluated in its own
+	   * thread. The evaluation results of every fold are merged, and passed
+	   * to the listeners, in the order of the folds, so that they are the same
+	   * as in the sequential evaluation. The threads of the trainer and of the
+	   * event generation set in the training parameters are shared by the
+	   * folds run at the same time, so that each fold trains with at least one
+	   * thread and no more than its share of them.
+	   *
+	   * @param samples
+	   *          the data to train and test
+	   * @param nFolds
+	   *          number of folds
+	   * @param threads
+	   *          maximum number of folds run at the same time
+	   * @param foldMemory
+	   *          estimated memory used by a fold in bytes, 0 if unknown; the
+	   *          folds run at the same time are limited to those fitting in the
+	   *          free memory
+	   * @throws IOException if io errors
+	   */
+	  public void evaluate(ObjectStream<SequenceSample> samples, int nFolds,
+	      int threads, long foldMemory) throws IOException {
+
+	    if (factory == null) {
+	      System.err.println("You need to implement a SequenceLabelerFactory!");
+	      System.exit(1);
+	    }
+	    final List<DocumentSample> documents = new ArrayList<DocumentSample>();
+	    ObjectStream<DocumentSample> documentStream = new NameToDocumentSampleStream(samples);
+	    DocumentSample document;
+	    while ((document = documentStream.read()) != null) {
+	      documents.add(document);
+	    }
+	    int concurrentFolds = Math.max(1, Math.min(threads, nFolds));
+	    if (foldMemory > 0) {
+	      Runtime runtime = Runtime.getRuntime();
+	      long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	      concurrentFolds = (int) Math.max(1, Math.min(concurrentFolds, freeMemory / foldMemory));
+	    }
+	    System.err.println("Running " + nFolds + " folds, " + concurrentFolds + " at a time");
+	    TrainingParameters foldParams = getFoldParameters(concurrentFolds);
+
+	    foldTimes.clear();
+	    ExecutorService executor = Executors.newFixedThreadPool(concurrentFolds);
+	    try {
+	      List<Future<FoldResult>> results = new ArrayList<Future<FoldResult>>();
+	      for (int fold = 0; fold < nFolds; fold++) {
+	        results.add(executor.submit(new Fold(documents, nFolds, fold, foldParams)));
+	      }
+	      for (int fold = 0; fold < nFolds; fold++) {
+	        FoldResult result = getResult(results.get(fold));
+	        for (SequenceLabelerEvaluationMonitor listener : listeners) {
+	          result.replay(listener);
+	        }
+	        fmeasure.mergeInto(result.fmeasure);
+	        foldTimes.add(result.time);
+	        System.err.println("Fold " + (fold + 1) + " trained and evaluated in "
+	            + result.time + " miliseconds: " + result.fmeasure.getFMeasure());
+	      }
+	    } finally {
+	      executor.shutdownNow();
+	    }
+	  }
+
+	  /**
+	   * Get the training parameters of the folds run at the same time, dividing
+	   * among them the threads of the trainer and of the event generation.
+	   * @param concurrentFolds the number of folds run at the same time
+	   * @return the training parameters of every fold
+	   */
+	  private TrainingParameters getFoldParameters(int concurrentFolds) {
+	    TrainingParameters foldParams = new TrainingParameters();
+	    for (Map.Entry<String, String> entry : params.getSettings().entrySet()) {
+	      foldParams.put(entry.getKey(), entry.getValue());
+	    }
+	    for (String threadsParameter : new String[] { "Threads",
+	        ParallelSequenceLabelerEventStream.THREADS_PARAMETER }) {
+	      String threads = params.getSettings().get(threadsParameter);
+	      if (threads != null) {
+	        foldParams.put(threadsParameter, Integer.toString(
+	            Math.max(1, Integer.parseInt(threads) / concurrentFolds)));
+	      }
+	    }
+	    return foldParams;
+	  }
+
+	  /**
+	   * Waits for the result of a fold.
+	   * @param future the fold
+	   * @return the result
+	   * @throws IOException if the fold could not be trained
+	   */
+	  private static FoldResult getResult(Future<FoldResult> future) throws IOException {
+	    try {
+	      return future.get();
+	    } catch (InterruptedException e) {
+	      Thread.currentThread().interrupt();
+	      throw new IllegalStateException("Interrupted while cross validating", e);
+	    } catch (ExecutionException e) {
+	      if (e.getCause() instanceof IOException) {
+	        throw (IOException) e.getCause();
+	      }
+	      if (e.getCause() instanceof RuntimeException) {
+	        throw (RuntimeException) e.getCause();
+	      }
+	      throw new IllegalStateException(e.getCause());
+	    }
+	  }
+
+	  /**
+	   * Trains and evaluates a fold. As in the {@link CrossValidationPartitioner},
+	   * the test documents of the fold are those whose index modulo the number of
+	   * folds is the fold index.
+	   */
+	  private class Fold implements Callable<FoldResult> {
+
+	    private final List<DocumentSample> documents;
+	    private final int nFolds;
+	    private final int fold;
+	    private final TrainingParameters foldParams;
+
+	    Fold(List<DocumentSample> documents, int nFolds, int fold,
+	        TrainingParameters foldParams) {
+	      this.documents = documents;
+	      this.nFolds = nFolds;
+	      this.fold = fold;
+	      this.foldParams = foldParams;
+	    }
+
+	    public FoldResult call() throws IOException {
+	      long start = System.currentTimeMillis();
+	      List<SequenceSample> trainSamples = new ArrayList<SequenceSample>();
+	      List<SequenceSample> testSamples = new ArrayList<SequenceSample>();
+	      for (int i = 0; i < documents.size(); i++) {
+	        List<SequenceSample> target = i % nFolds == fold ? testSamples : trainSamples;
+	        target.addAll(Arrays.asList(documents.get(i).getSamples()));
+	      }
+	      SequenceLabelerModel model = SequenceLabelerME.train(languageCode, type,
+	          new CollectionObjectStream<SequenceSample>(trainSamples), foldParams, factory);
+	      FoldResult result = new FoldResult();
+	      SequenceLabelerEvaluator evaluator = new SequenceLabelerEvaluator(
+	          new SequenceLabelerME(model), result);
+	      evaluator.evaluate(new CollectionObjectStream<SequenceSample>(testSamples));
+	      result.fmeasure = evaluator.getFMeasure();
+	      result.time = System.currentTimeMillis() - start;
+	      return result;
+	    }
+	  }
+
+	  /**
+	   * The results of a fold, recording the calls to the listeners to replay
+	   * them once the fold has finished.
+	   */
+	  private static class FoldResult implements SequenceLabelerEvaluationMonitor {
+
+	    private final List<SequenceSample> references = new ArrayList<SequenceSample>();
+	    private final List<SequenceSample> predictions = new ArrayList<SequenceSample>();
+	    private final List<Boolean> correct = new ArrayList<Boolean>();
+	    private FMeasure fmeasure;
+	    private long time;
+
+	    public void correctlyClassified(SequenceSample reference, SequenceSample prediction) {
+	      references.add(reference);
+	      predictions.add(prediction);
+	      correct.add(Boolean.TRUE);
+	    }
+
+	    public void missclassified(SequenceSample reference, SequenceSample prediction) {
+	      references.add(reference);
+	      predictions.add(prediction);
+	      correct.add(Boolean.FALSE);
+	    }
+
+	    private void replay(SequenceLabelerEvaluationMonitor listener) {
+	      for (int i = 0; i < references.size(); i++) {
+	        if (correct.get(i)) {
+	          listener.correctlyClassified(references.get(i), predictions.get(i));
+	        } else {
+	          listener.missclassified(references.get(i), predictions.get(i));
+	        }
+	      }
+	    }
+	  }
+
 	  public FMeasure getFMeasure() {
 	    return fmeasure;
 	  }
+
+	  /**
+	   * Get the time it took to train and evaluate every fold in the last
+	   * parallel evaluation.
+	   * @return the times in milliseconds in the order of the folds
+	   */
+	  public List<Long> getFoldTimes() {
+	    return Collections.unmodifiableList(foldTimes);
+	  }
 	}
 
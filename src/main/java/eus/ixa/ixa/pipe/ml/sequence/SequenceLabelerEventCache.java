@@ -0,0 +1,479 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eus.ixa.ixa.pipe.ml.resources.SequenceModelResource;
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.util.InvalidFormatException;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.model.ArtifactSerializer;
+import opennlp.tools.util.model.SerializableArtifact;
+
+/**
+ * Cache of the training events in binary files, so that training again with
+ * the same samples and features, e.g., to tune the iterations or the cutoff,
+ * does not generate the features again. The file of some events is named
+ * after a digest of the samples, the feature descriptor, the resources, the
+ * sequence codec and the feature hashing of the factory.
+ *
+ * The events are written as records of varint encoded numbers. Every string
+ * is encoded as its index in a dictionary which grows as the strings appear:
+ * the index of a new string is the size of the dictionary and is followed
+ * by the length prefixed UTF-8 bytes of the string. The files are memory
+ * mapped when they fit in a single mapping.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public final class SequenceLabelerEventCache {
+
+  /**
+   * The training parameter with the directory of the cached events.
+   */
+  public static final String EVENT_CACHE_PARAMETER = "EventCache";
+
+  private static final int MAGIC = 0x49584145;
+  private static final int VERSION = 1;
+  private static final int END = 0;
+  private static final int EVENT = 1;
+  private static final int EVENT_WITH_VALUES = 2;
+
+  private SequenceLabelerEventCache() {
+  }
+
+  /**
+   * Get the events of some samples from the cache, or cache the generated
+   * events while they are read.
+   * @param directory the cache directory
+   * @param samples the training samples, which are read to compute the
+   * cache key and reset
+   * @param type the type of the sequences or null
+   * @param factory the factory of the feature generators
+   * @param events the events generated from the samples
+   * @return the cached events or the generated events
+   * @throws IOException if the samples can not be read
+   */
+  public static ObjectStream<Event> cache(final File directory,
+      final ObjectStream<SequenceSample> samples, final String type,
+      final SequenceLabelerFactory factory, final ObjectStream<Event> events)
+      throws IOException {
+    final String key = getKey(samples, type, factory);
+    samples.reset();
+    final File file = new File(directory, key + ".events");
+    if (file.isFile()) {
+      System.err.println("Reading cached events from " + file);
+      return new EventFileStream(file);
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      System.err.println("WARNING: Can not create the event cache directory "
+          + directory);
+      return events;
+    }
+    return new CachingEventStream(events, file);
+  }
+
+  /**
+   * Compute the key of the events of some samples.
+   */
+  static String getKey(final ObjectStream<SequenceSample> samples,
+      final String type, final SequenceLabelerFactory factory)
+      throws IOException {
+    final MessageDigest digest = newDigest();
+    final DataOutputStream out = new DataOutputStream(new DigestOutputStream(
+        new OutputStream() {
+          @Override
+          public void write(final int b) {
+          }
+        }, digest));
+    out.writeInt(VERSION);
+    out.writeUTF(String.valueOf(type));
+    out.writeUTF(factory.getClass().getName());
+    final SequenceCodec<String> codec = factory.createSequenceCodec();
+    out.writeUTF(codec == null ? "null" : codec.getClass().getName());
+    out.writeInt(factory.getFeatureHashSize());
+    final byte[] descriptor = factory.getFeatureGenerator();
+    out.writeInt(descriptor == null ? -1 : descriptor.length);
+    if (descriptor != null) {
+      out.write(descriptor);
+    }
+    writeResources(factory.getResources(), out);
+    SequenceSample sample;
+    while ((sample = samples.read()) != null) {
+      out.writeBoolean(sample.isClearAdaptiveDataSet());
+      writeStrings(sample.getTokens(), out);
+      out.writeInt(sample.getSequences().length);
+      for (final Span span : sample.getSequences()) {
+        out.writeInt(span.getStart());
+        out.writeInt(span.getEnd());
+        out.writeUTF(String.valueOf(span.getType()));
+      }
+      final String[][] context = sample.getAdditionalContext();
+      out.writeInt(context == null ? -1 : context.length);
+      if (context != null) {
+        for (final String[] tokenContext : context) {
+          writeStrings(tokenContext, out);
+        }
+      }
+    }
+    out.flush();
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Write the resources, serialized if possible, in the order of their
+   * names.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static void writeResources(final Map<String, Object> resources,
+      final DataOutputStream out) throws IOException {
+    if (resources == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(resources.size());
+    for (final Map.Entry<String, Object> resource : new TreeMap<String, Object>(
+        resources).entrySet()) {
+      out.writeUTF(resource.getKey());
+      final Object artifact = resource.getValue();
+      out.writeUTF(artifact == null ? "null" : artifact.getClass().getName());
+      if (artifact instanceof SequenceModelResource) {
+        // serialized models are zip files with timestamps
+        out.writeUTF(((SequenceModelResource) artifact).getDigest());
+      } else if (artifact instanceof SerializableArtifact) {
+        final ArtifactSerializer serializer;
+        try {
+          serializer = (ArtifactSerializer) ((SerializableArtifact) artifact)
+              .getArtifactSerializerClass().newInstance();
+        } catch (final InstantiationException | IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+        serializer.serialize(artifact, out);
+      } else if (artifact instanceof byte[]) {
+        out.write((byte[]) artifact);
+      }
+    }
+  }
+
+  private static void writeStrings(final String[] strings,
+      final DataOutputStream out) throws IOException {
+    out.writeInt(strings == null ? -1 : strings.length);
+    if (strings != null) {
+      for (final String string : strings) {
+        out.writeUTF(String.valueOf(string));
+      }
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(final byte[] bytes) {
+    final StringBuilder sb = new StringBuilder();
+    for (final byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+          Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  private static void writeVarInt(final OutputStream out, int value)
+      throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(final InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final int b = in.read();
+      if (b == -1) {
+        throw new EOFException("Truncated event file");
+      }
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new InvalidFormatException("Malformed number in event file");
+  }
+
+  /**
+   * Writes events to a file.
+   */
+  static final class EventWriter {
+
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    EventWriter(final OutputStream out) throws IOException {
+      this.out = out;
+      final DataOutputStream header = new DataOutputStream(out);
+      header.writeInt(MAGIC);
+      writeVarInt(out, VERSION);
+    }
+
+    void write(final Event event) throws IOException {
+      final float[] values = event.getValues();
+      writeVarInt(out, values == null ? EVENT : EVENT_WITH_VALUES);
+      writeString(event.getOutcome());
+      final String[] context = event.getContext();
+      writeVarInt(out, context.length);
+      for (final String feature : context) {
+        writeString(feature);
+      }
+      if (values != null) {
+        writeVarInt(out, values.length);
+        for (final float value : values) {
+          writeVarInt(out, Float.floatToIntBits(value));
+        }
+      }
+    }
+
+    void close() throws IOException {
+      writeVarInt(out, END);
+      out.close();
+    }
+
+    private void writeString(final String string) throws IOException {
+      final Integer index = dictionary.get(string);
+      if (index != null) {
+        writeVarInt(out, index);
+      } else {
+        writeVarInt(out, dictionary.size());
+        dictionary.put(string, dictionary.size());
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+
+  /**
+   * Reads the events of a file.
+   */
+  static final class EventFileStream implements ObjectStream<Event> {
+
+    private final File file;
+    private InputStream in;
+    private final List<String> dictionary = new ArrayList<String>();
+    private boolean ended;
+
+    EventFileStream(final File file) throws IOException {
+      this.file = file;
+      open();
+    }
+
+    private void open() throws IOException {
+      final long length = file.length();
+      if (length <= Integer.MAX_VALUE) {
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(
+            file, "r")) {
+          in = new ByteBufferInputStream(randomAccessFile.getChannel().map(
+              FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+      } else {
+        in = new BufferedInputStream(new FileInputStream(file), 65536);
+      }
+      if (new DataInputStream(in).readInt() != MAGIC
+          || readVarInt(in) != VERSION) {
+        in.close();
+        throw new InvalidFormatException("Not an event file: " + file);
+      }
+      dictionary.clear();
+      ended = false;
+    }
+
+    public Event read() throws IOException {
+      if (ended) {
+        return null;
+      }
+      final int kind = readVarInt(in);
+      if (kind == END) {
+        ended = true;
+        return null;
+      } else if (kind != EVENT && kind != EVENT_WITH_VALUES) {
+        throw new InvalidFormatException("Unknown record in event file " + file);
+      }
+      final String outcome = readString();
+      final String[] context = new String[readVarInt(in)];
+      for (int i = 0; i < context.length; i++) {
+        context[i] = readString();
+      }
+      float[] values = null;
+      if (kind == EVENT_WITH_VALUES) {
+        values = new float[readVarInt(in)];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = Float.intBitsToFloat(readVarInt(in));
+        }
+      }
+      return new Event(outcome, context, values);
+    }
+
+    private String readString() throws IOException {
+      final int index = readVarInt(in);
+      if (index < dictionary.size()) {
+        return dictionary.get(index);
+      } else if (index > dictionary.size()) {
+        throw new InvalidFormatException("Unknown string in event file " + file);
+      }
+      final byte[] bytes = new byte[readVarInt(in)];
+      new DataInputStream(in).readFully(bytes);
+      final String string = new String(bytes, StandardCharsets.UTF_8);
+      dictionary.add(string);
+      return string;
+    }
+
+    public void reset() throws IOException {
+      in.close();
+      open();
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the events of a stream to the cache while they are read. The
+   * events are written to a temporary file which is renamed when all of
+   * them have been read, so that the cache never has incomplete files.
+   */
+  private static final class CachingEventStream implements ObjectStream<Event> {
+
+    private final ObjectStream<Event> events;
+    private final File file;
+    private File tempFile;
+    private EventWriter writer;
+
+    private CachingEventStream(final ObjectStream<Event> events, final File file)
+        throws IOException {
+      this.events = events;
+      this.file = file;
+      tempFile = File.createTempFile(file.getName(), ".tmp",
+          file.getParentFile());
+      writer = new EventWriter(new BufferedOutputStream(new FileOutputStream(
+          tempFile), 65536));
+    }
+
+    public Event read() throws IOException {
+      final Event event = events.read();
+      if (writer != null) {
+        try {
+          if (event != null) {
+            writer.write(event);
+          } else {
+            writer.close();
+            writer = null;
+            if (tempFile.renameTo(file)) {
+              System.err.println("Cached events in " + file);
+            } else {
+              tempFile.delete();
+            }
+          }
+        } catch (final IOException e) {
+          System.err.println("WARNING: Can not cache the events in " + file
+              + ": " + e.getMessage());
+          abandon();
+        }
+      }
+      return event;
+    }
+
+    public void reset() throws IOException {
+      abandon();
+      events.reset();
+    }
+
+    public void close() throws IOException {
+      abandon();
+      events.close();
+    }
+
+    private void abandon() {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (final IOException e) {
+          // the file is deleted anyway
+        }
+        writer = null;
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * An input stream over a buffer, used to read memory mapped files.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(final ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      final int read = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, read);
+      return read;
+    }
+  }
+}
@@ -4,8 +4,26 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import eus.ixa.ixa.pipe.ml.features.FeatureHasher;
+import eus.ixa.ixa.pipe.ml.features.OutcomeDependentFeatureGenerator;
+
 import opennlp.tools.util.BaseToolFactory;
 import opennlp.tools.util.InvalidFormatException;
 import opennlp.tools.util.ext.ExtensionLoader;
@@ -23,6 +41,13 @@ public class SequenceLabelerFactory extends BaseToolFactory {
   private byte[] featureGeneratorBytes;
   private Map<String, Object> resources;
   private SequenceCodec<String> seqCodec;
+  private int featureHashSize;
+  private FeatureHasher featureHasher;
+  /**
+   * The descriptors of the feature generators which do not use the previous
+   * outcomes and of those which do, the latter null if there are none.
+   */
+  private byte[][] splitFeatureGeneratorBytes;
 
   /**
    * Creates a {@link SequenceLabelerFactory} that provides the default implementation
@@ -37,10 +62,32 @@ public class SequenceLabelerFactory extends BaseToolFactory {
     init(featureGeneratorBytes, resources, seqCodec);
   }
 
+  /**
+   * Creates a {@link SequenceLabelerFactory} which hashes the features into a
+   * feature space of the given size.
+   * @param featureGeneratorBytes the feature generator descriptor
+   * @param resources the resources of the feature generators
+   * @param seqCodec the sequence codec
+   * @param featureHashSize the hashing table size, 0 to not hash the features
+   */
+  public SequenceLabelerFactory(byte[] featureGeneratorBytes, final Map<String, Object> resources,
+      SequenceCodec<String> seqCodec, int featureHashSize) {
+    init(featureGeneratorBytes, resources, seqCodec, featureHashSize);
+  }
+
   void init(byte[] featureGeneratorBytes, final Map<String, Object> resources, SequenceCodec<String> seqCodec) {
+    init(featureGeneratorBytes, resources, seqCodec, 0);
+  }
+
+  void init(byte[] featureGeneratorBytes, final Map<String, Object> resources, SequenceCodec<String> seqCodec,
+      int featureHashSize) {
+    if (featureHashSize < 0) {
+      throw new IllegalArgumentException("The feature hashing table size must not be negative: " + featureHashSize);
+    }
     this.featureGeneratorBytes = featureGeneratorBytes;
     this.resources = resources;
     this.seqCodec = seqCodec;
+    this.featureHashSize = featureHashSize;
   }
 
   private static byte[] loadDefaultFeatureGeneratorBytes() {
@@ -81,6 +128,12 @@ public class SequenceLabelerFactory extends BaseToolFactory {
   public static SequenceLabelerFactory create(String subclassName, byte[] featureGeneratorBytes, final Map<String, Object> resources,
       SequenceCodec<String> seqCodec)
       throws InvalidFormatException {
+    return create(subclassName, featureGeneratorBytes, resources, seqCodec, 0);
+  }
+
+  public static SequenceLabelerFactory create(String subclassName, byte[] featureGeneratorBytes, final Map<String, Object> resources,
+      SequenceCodec<String> seqCodec, int featureHashSize)
+      throws InvalidFormatException {
     SequenceLabelerFactory theFactory;
     if (subclassName == null) {
       // will create the default factory
@@ -97,10 +150,20 @@ public class SequenceLabelerFactory extends BaseToolFactory {
         throw new InvalidFormatException(msg, e);
       }
     }
-    theFactory.init(featureGeneratorBytes, resources, seqCodec);
+    theFactory.init(featureGeneratorBytes, resources, seqCodec, featureHashSize);
     return theFactory;
   }
 
+  @Override
+  public Map<String, String> createManifestEntries() {
+    Map<String, String> manifestEntries = super.createManifestEntries();
+    if (featureHashSize > 0) {
+      manifestEntries.put(SequenceLabelerModel.FEATURE_HASH_SIZE_PARAMETER,
+          Integer.toString(featureHashSize));
+    }
+    return manifestEntries;
+  }
+
   @Override
   public void validateArtifactMap() throws InvalidFormatException {
     // no additional artifacts
@@ -118,15 +181,166 @@ public class SequenceLabelerFactory extends BaseToolFactory {
     }
   }
 
+  /**
+   * Creates the context generator. The feature generators which use the
+   * previous outcomes, marked with {@link OutcomeDependentFeatureGenerator},
+   * are created apart from the others, so that the features of the others
+   * can be cached once per token.
+   *
+   * @return the context generator
+   */
   public SequenceContextGenerator createContextGenerator() {
 
-    AdaptiveFeatureGenerator featureGenerator = createFeatureGenerators();
+    byte[][] descriptors = getSplitFeatureGeneratorBytes();
+    AdaptiveFeatureGenerator featureGenerator = createFeatureGenerators(descriptors[0]);
 
     if (featureGenerator == null) {
       featureGenerator = SequenceLabelerME.createFeatureGenerator();
     }
+    AdaptiveFeatureGenerator[] outcomeFeatureGenerators = new AdaptiveFeatureGenerator[0];
+    if (descriptors[1] != null) {
+      outcomeFeatureGenerators = new AdaptiveFeatureGenerator[] {
+          createFeatureGenerators(descriptors[1])};
+    }
 
-    return new DefaultSequenceContextGenerator(featureGenerator);
+    return new DefaultSequenceContextGenerator(getFeatureHasher(),
+        new AdaptiveFeatureGenerator[] {featureGenerator}, outcomeFeatureGenerators);
+  }
+
+  /**
+   * Get the descriptors of the feature generators which do not use the
+   * previous outcomes and of those which do, split only once.
+   * @return the two descriptors, the second null if no generator uses the
+   * previous outcomes
+   */
+  private synchronized byte[][] getSplitFeatureGeneratorBytes() {
+    if (splitFeatureGeneratorBytes == null) {
+      splitFeatureGeneratorBytes = splitFeatureGeneratorBytes(getFeatureGeneratorBytes());
+    }
+    return splitFeatureGeneratorBytes;
+  }
+
+  /**
+   * Moves the top level generators of a descriptor which use the previous
+   * outcomes, directly or inside a window, to a descriptor of their own.
+   * @param descriptor the feature generator descriptor
+   * @return the descriptor without those generators and the descriptor with
+   * them, or null if there are none
+   */
+  static byte[][] splitFeatureGeneratorBytes(byte[] descriptor) {
+    try {
+      Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .parse(new ByteArrayInputStream(descriptor));
+      List<Element> dependent = new ArrayList<Element>();
+      collectOutcomeDependentGenerators(document.getDocumentElement(), dependent);
+      if (dependent.isEmpty()) {
+        return new byte[][] {descriptor, null};
+      }
+      Document outcomeDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .newDocument();
+      Element outcomeGenerators = outcomeDocument.createElement("generators");
+      outcomeDocument.appendChild(outcomeGenerators);
+      for (Element generator : dependent) {
+        generator.getParentNode().removeChild(generator);
+        outcomeGenerators.appendChild(outcomeDocument.importNode(generator, true));
+      }
+      return new byte[][] {toBytes(document), toBytes(outcomeDocument)};
+    } catch (ParserConfigurationException | SAXException | TransformerException e) {
+      throw new SequenceLabelerModel.FeatureGeneratorCreationError(e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Reading from mem cannot result in an I/O error", e);
+    }
+  }
+
+  /**
+   * Collects the top level generators which use the previous outcomes, looking
+   * into the aggregating <code>generators</code> and <code>cache</code>
+   * elements.
+   * @param element the element containing the generators
+   * @param dependent the list to add the generators to
+   */
+  private static void collectOutcomeDependentGenerators(Element element, List<Element> dependent) {
+    for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element) {
+        Element generator = (Element) child;
+        if (generator.getTagName().equals("generators") || generator.getTagName().equals("cache")) {
+          collectOutcomeDependentGenerators(generator, dependent);
+        } else if (isOutcomeDependent(generator)) {
+          dependent.add(generator);
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether a generator element is, or contains, a custom generator
+   * which uses the previous outcomes.
+   * @param generator the generator element
+   * @return true if the generator uses the previous outcomes
+   */
+  private static boolean isOutcomeDependent(Element generator) {
+    if (isOutcomeDependentCustom(generator)) {
+      return true;
+    }
+    NodeList customs = generator.getElementsByTagName("custom");
+    for (int i = 0; i < customs.getLength(); i++) {
+      if (isOutcomeDependentCustom((Element) customs.item(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isOutcomeDependentCustom(Element generator) {
+    if (!generator.getTagName().equals("custom")) {
+      return false;
+    }
+    try {
+      return OutcomeDependentFeatureGenerator.class.isAssignableFrom(
+          Class.forName(generator.getAttribute("class")));
+    } catch (ClassNotFoundException e) {
+      // reported when the generators are created
+      return false;
+    }
+  }
+
+  private static byte[] toBytes(Document document) throws TransformerException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document),
+        new StreamResult(bytes));
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Get the size of the hashed feature space, read from the model manifest
+   * if the factory belongs to a model.
+   * @return the hashing table size, 0 if the features are not hashed
+   */
+  public int getFeatureHashSize() {
+    if (artifactProvider != null) {
+      String hashSize = artifactProvider.getManifestProperty(
+          SequenceLabelerModel.FEATURE_HASH_SIZE_PARAMETER);
+      return hashSize == null ? 0 : Integer.parseInt(hashSize);
+    }
+    else {
+      return featureHashSize;
+    }
+  }
+
+  /**
+   * Get the feature hasher, shared by all the context generators created
+   * by this factory.
+   * @return the feature hasher or null if the features are not hashed
+   */
+  private synchronized FeatureHasher getFeatureHasher() {
+    int hashSize = getFeatureHashSize();
+    if (hashSize == 0) {
+      return null;
+    }
+    if (featureHasher == null) {
+      featureHasher = new FeatureHasher(hashSize);
+    }
+    return featureHasher;
   }
 
   /**
@@ -139,6 +353,14 @@ public class SequenceLabelerFactory extends BaseToolFactory {
    * @return the feature generator or null if there is no descriptor in the model
    */
   public AdaptiveFeatureGenerator createFeatureGenerators() {
+    return createFeatureGenerators(getFeatureGeneratorBytes());
+  }
+
+  /**
+   * Get the feature generator descriptor of the model, or the default one.
+   * @return the descriptor
+   */
+  private byte[] getFeatureGeneratorBytes() {
 
     if (featureGeneratorBytes == null && artifactProvider != null) {
       featureGeneratorBytes = (byte[]) artifactProvider.getArtifact(
@@ -148,8 +370,17 @@ public class SequenceLabelerFactory extends BaseToolFactory {
     if (featureGeneratorBytes == null) {
       featureGeneratorBytes = loadDefaultFeatureGeneratorBytes();
     }
+    return featureGeneratorBytes;
+  }
+
+  /**
+   * Creates the feature generators of a descriptor.
+   * @param descriptor the descriptor
+   * @return the feature generator
+   */
+  private AdaptiveFeatureGenerator createFeatureGenerators(byte[] descriptor) {
 
-    InputStream descriptorIn = new ByteArrayInputStream(featureGeneratorBytes);
+    InputStream descriptorIn = new ByteArrayInputStream(descriptor);
 
     AdaptiveFeatureGenerator generator = null;
     try {
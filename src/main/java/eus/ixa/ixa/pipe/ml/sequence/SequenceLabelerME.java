@@ -1,5 +1,6 @@
 package eus.ixa.ixa.pipe.ml.sequence;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -7,6 +8,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,27 +58,67 @@ public class SequenceLabelerME implements SequenceLabeler {
 
   private SequenceCodec<String> seqCodec = new BioCodec();
 
-  protected SequenceClassificationModel<String> model;
+  private final SequenceLabelerModel seqModel;
+  private final SequenceLabelerFactory factory;
+  private final SequenceValidator<String> sequenceValidator;
 
-  protected SequenceContextGenerator contextGenerator;
-  private Sequence bestSequence;
-
-  private AdditionalContextFeatureGenerator additionalContextFeatureGenerator
-          = new AdditionalContextFeatureGenerator();
-  private SequenceValidator<String> sequenceValidator;
+  /**
+   * The decoding contexts used by the methods not taking an explicit
+   * {@link SequenceLabelerContext}, one per calling thread. They are owned by
+   * this labeler, so they are released with it, and the context of a thread
+   * is released when the thread dies.
+   */
+  /**
+   * The decoding contexts used to tag whole documents, reused by the
+   * following documents.
+   */
+  private final Queue<SequenceLabelerContext> documentContexts = new ConcurrentLinkedQueue<SequenceLabelerContext>();
+  private final Map<Thread, SequenceLabelerContext> threadContexts = Collections.synchronizedMap(
+      new WeakHashMap<Thread, SequenceLabelerContext>());
 
   public SequenceLabelerME(SequenceLabelerModel model) {
 
-    SequenceLabelerFactory factory = model.getFactory();
+    this.seqModel = model;
+    this.factory = model.getFactory();
 
     seqCodec = factory.createSequenceCodec();
     sequenceValidator = seqCodec.createSequenceValidator();
-    this.model = model.getNameFinderSequenceModel();
-    contextGenerator = factory.createContextGenerator();
+  }
 
+  /**
+   * Creates a new decoding context for this labeler. Every document tagged
+   * concurrently with the same labeler requires its own context; the model,
+   * the feature generator descriptor and the resources used by the feature
+   * generators are shared. This is the preferred way to tag with a shared
+   * labeler: the methods without a context argument use a context per
+   * calling thread, kept as long as both the labeler and the thread live.
+   *
+   * @return the decoding context
+   */
+  public SequenceLabelerContext createContext() {
+    SequenceContextGenerator contextGenerator = factory.createContextGenerator();
+    AdditionalContextFeatureGenerator additionalContextFeatureGenerator = new AdditionalContextFeatureGenerator();
     // TODO: We should deprecate this. And come up with a better solution!
     contextGenerator.addFeatureGenerator(
             new WindowFeatureGenerator(additionalContextFeatureGenerator, 8, 8));
+    return new SequenceLabelerContext(contextGenerator,
+        additionalContextFeatureGenerator, seqModel.getNameFinderSequenceModel());
+  }
+
+  /**
+   * Get the decoding context of the current thread, creating it the first
+   * time the thread uses this labeler.
+   * @return the decoding context
+   */
+  private SequenceLabelerContext getThreadContext() {
+    Thread thread = Thread.currentThread();
+    SequenceLabelerContext context = threadContexts.get(thread);
+    if (context == null) {
+      // only the current thread adds its own context
+      context = createContext();
+      threadContexts.put(thread, context);
+    }
+    return context;
   }
 
   @Deprecated
@@ -93,7 +141,7 @@ public class SequenceLabelerME implements SequenceLabeler {
   public Span[] tag(String[] tokens) {
     return tag(tokens, EMPTY);
   }
-  
+
   /**
    * Generates sequence tags for the given sequence, returning
    * spans for any identified sequences.
@@ -106,22 +154,178 @@ public class SequenceLabelerME implements SequenceLabeler {
    * @return an array of spans for each of the names identified.
    */
   public Span[] tag(String[] tokens, String[][] additionalContext) {
-    additionalContextFeatureGenerator.setCurrentContext(additionalContext);
-    bestSequence = model.bestSequence(tokens, additionalContext, contextGenerator, sequenceValidator);
+    return tag(tokens, additionalContext, getThreadContext());
+  }
+
+  /**
+   * Generates sequence tags for the given sequence using the given decoding
+   * context. This method can be called concurrently as long as each thread
+   * uses its own context.
+   *
+   * @param tokens an array of the tokens or words, typically a sentence.
+   * @param context the decoding context of the current document
+   * @return an array of spans for each of the names identified.
+   */
+  public Span[] tag(String[] tokens, SequenceLabelerContext context) {
+    return tag(tokens, EMPTY, context);
+  }
+
+  /**
+   * Generates sequence tags for the given sequence using the given decoding
+   * context.
+   *
+   * @param tokens an array of the tokens or words, typically a sentence.
+   * @param additionalContext features which are based on context outside of the
+   * sentence but which should also be used.
+   * @param context the decoding context of the current document
+   * @return an array of spans for each of the names identified.
+   */
+  public Span[] tag(String[] tokens, String[][] additionalContext, SequenceLabelerContext context) {
+    context.getAdditionalContextFeatureGenerator().setCurrentContext(additionalContext);
+    return tagSentence(tokens, additionalContext, context);
+  }
+
+  /**
+   * Tags a sentence once the additional context is set.
+   * @param tokens the tokens of the sentence
+   * @param additionalContext the additional context
+   * @param context the decoding context of the current document
+   * @return the spans identified
+   */
+  private Span[] tagSentence(String[] tokens, String[][] additionalContext,
+      SequenceLabelerContext context) {
+    Sequence bestSequence = context.getSequenceModel().bestSequence(tokens,
+        additionalContext, context.getContextGenerator(), sequenceValidator);
+    context.setBestSequence(bestSequence);
     List<String> c = bestSequence.getOutcomes();
-    contextGenerator.updateAdaptiveData(tokens, c.toArray(new String[c.size()]));
+    context.getContextGenerator().updateAdaptiveData(tokens, c.toArray(new String[c.size()]));
     Span[] spans = seqCodec.decode(c);
-    spans = setProbs(spans);
+    spans = setProbs(spans, bestSequence, context.getProbsBuffer(tokens.length));
     return spans;
   }
-  
+
+  /**
+   * Generates sequence tags for every sentence of a document. The sentences
+   * are tagged in document order, so that the adaptive data collected for
+   * one sentence is available for the next ones. As in
+   * {@link #tag(List, ExecutorService)}, the document starts with cleared
+   * adaptive data, so it is tagged as by a new labeler, whatever was tagged
+   * before by the calling thread. The decoding context is taken from a pool
+   * of this labeler and returned to it afterwards.
+   *
+   * @param sentences the sentences of a document
+   * @return the spans identified for each sentence
+   */
+  public List<Span[]> tag(List<String[]> sentences) {
+    SequenceLabelerContext context = borrowDocumentContext();
+    try {
+      return tag(sentences, context);
+    } finally {
+      documentContexts.offer(context);
+    }
+  }
+
+  /**
+   * Generates sequence tags for every sentence of a document using the given
+   * decoding context. The adaptive data of the context is not cleared; the
+   * additional context and the probability buffer are set up once for all
+   * the sentences.
+   *
+   * @param sentences the sentences of a document
+   * @param context the decoding context of the document
+   * @return the spans identified for each sentence
+   */
+  public List<Span[]> tag(List<String[]> sentences, SequenceLabelerContext context) {
+    context.getAdditionalContextFeatureGenerator().setCurrentContext(EMPTY);
+    List<Span[]> spans = new ArrayList<Span[]>(sentences.size());
+    for (String[] tokens : sentences) {
+      spans.add(tagSentence(tokens, EMPTY, context));
+    }
+    return spans;
+  }
+
+  /**
+   * Takes a decoding context of the pool, or creates one, with cleared
+   * adaptive data.
+   * @return the decoding context
+   */
+  private SequenceLabelerContext borrowDocumentContext() {
+    SequenceLabelerContext context = documentContexts.poll();
+    if (context == null) {
+      return createContext();
+    }
+    context.clearAdaptiveData();
+    return context;
+  }
+
+  /**
+   * Generates sequence tags for several documents concurrently. Each document
+   * is tagged by a single task, in sentence order and starting with cleared
+   * adaptive data, as by {@link #tag(List)}, which keeps the adaptive data
+   * semantics of tagging the documents one after the other. The decoding
+   * contexts are taken from a pool of this labeler, not from the executor
+   * threads.
+   * The results are returned in the same order as the documents.
+   *
+   * @param documents the documents, each of them a list of sentences
+   * @param executor the executor running the tagging tasks
+   * @return the spans of each sentence of each document
+   */
+  public List<List<Span[]>> tag(List<List<String[]>> documents, ExecutorService executor) {
+    List<Future<List<Span[]>>> futures = new ArrayList<Future<List<Span[]>>>(documents.size());
+    for (final List<String[]> document : documents) {
+      futures.add(executor.submit(new Callable<List<Span[]>>() {
+        public List<Span[]> call() {
+          return tag(document);
+        }
+      }));
+    }
+    List<List<Span[]>> results = new ArrayList<List<Span[]>>(documents.size());
+    for (Future<List<Span[]>> future : futures) {
+      results.add(getResult(future));
+    }
+    return results;
+  }
+
+  /**
+   * Waits for the result of a tagging task.
+   * @param future the task
+   * @return the result
+   */
+  private static <T> T getResult(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while tagging", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
   public String[] tagToStrings(String[] tokens) {
-    bestSequence = model.bestSequence(tokens, null, contextGenerator, sequenceValidator);
+    return tagToStrings(tokens, getThreadContext());
+  }
+
+  /**
+   * Generates the sequence tags for the given sequence using the given
+   * decoding context.
+   * @param tokens an array of tokens, typically a sentence
+   * @param context the decoding context of the current document
+   * @return the outcome for each token
+   */
+  public String[] tagToStrings(String[] tokens, SequenceLabelerContext context) {
+    Sequence bestSequence = context.getSequenceModel().bestSequence(tokens,
+        null, context.getContextGenerator(), sequenceValidator);
+    context.setBestSequence(bestSequence);
     List<String> c = bestSequence.getOutcomes();
-    contextGenerator.updateAdaptiveData(tokens, c.toArray(new String[c.size()]));
+    context.getContextGenerator().updateAdaptiveData(tokens, c.toArray(new String[c.size()]));
     return c.toArray(new String[c.size()]);
   }
-  
+
   /**
    * Returns at most the specified number of taggings for the specified sentence.
    *
@@ -131,12 +335,25 @@ public class SequenceLabelerME implements SequenceLabeler {
    * @return at most the specified number of labels for the specified sentence.
    */
   public Span[][] tag(int numTaggings, String[] tokens) {
-    Sequence[] bestSequences = model.bestSequences(numTaggings, tokens, null,
-        contextGenerator, sequenceValidator);
+    return tag(numTaggings, tokens, getThreadContext());
+  }
+
+  /**
+   * Returns at most the specified number of taggings for the specified
+   * sentence using the given decoding context.
+   *
+   * @param numTaggings the number of labels to be returned.
+   * @param tokens an array of tokens which make up a sentence.
+   * @param context the decoding context of the current document
+   * @return at most the specified number of labels for the specified sentence.
+   */
+  public Span[][] tag(int numTaggings, String[] tokens, SequenceLabelerContext context) {
+    Sequence[] bestSequences = context.getSequenceModel().bestSequences(numTaggings,
+        tokens, null, context.getContextGenerator(), sequenceValidator);
     Span[][] tags = new Span[bestSequences.length][];
     for (int i = 0; i < tags.length; i++) {
       List<String> c = bestSequences[i].getOutcomes();
-      contextGenerator.updateAdaptiveData(tokens, c.toArray(new String[c.size()]));
+      context.getContextGenerator().updateAdaptiveData(tokens, c.toArray(new String[c.size()]));
       Span[] spans = seqCodec.decode(c);
       tags[i] = spans;
     }
@@ -145,12 +362,12 @@ public class SequenceLabelerME implements SequenceLabeler {
 
   /**
    * Forgets all adaptive data which was collected during previous calls to one
-   * of the find methods.
+   * of the find methods from the current thread.
    *
    * This method is typical called at the end of a document.
    */
   public void clearAdaptiveData() {
-    contextGenerator.clearAdaptiveData();
+    getThreadContext().clearAdaptiveData();
   }
 
   /**
@@ -163,7 +380,7 @@ public class SequenceLabelerME implements SequenceLabeler {
    * sequence.
    */
   public void probs(double[] probs) {
-    bestSequence.getProbs(probs);
+    getThreadContext().getBestSequence().getProbs(probs);
   }
 
   /**
@@ -174,23 +391,25 @@ public class SequenceLabelerME implements SequenceLabeler {
    * to <code>chunk</code> when it was last called.
    */
   public double[] probs() {
-    return bestSequence.getProbs();
+    return getThreadContext().getBestSequence().getProbs();
   }
 
   /**
    * sets the probs for the spans
    *
    * @param spans
+   * @param bestSequence the decoded sequence
+   * @param probs the buffer for the outcome probabilities
    * @return
    */
-  private Span[] setProbs(Span[] spans) {
-     double[] probs = probs(spans);
-     if (probs != null) {
-
-      for (int i = 0; i < probs.length; i++) {
-        double prob = probs[i];
-        spans[i]= new Span(spans[i], prob);
+  private static Span[] setProbs(Span[] spans, Sequence bestSequence, double[] probs) {
+    bestSequence.getProbs(probs);
+    for (int si = 0; si < spans.length; si++) {
+      double p = 0;
+      for (int oi = spans[si].getStart(); oi < spans[si].getEnd(); oi++) {
+        p += probs[oi];
       }
+      spans[si] = new Span(spans[si], p / spans[si].length());
     }
     return spans;
   }
@@ -205,6 +424,10 @@ public class SequenceLabelerME implements SequenceLabeler {
    * @return an array of probabilities for each of the specified spans.
    */
   public double[] probs(Span[] spans) {
+    return probs(spans, getThreadContext().getBestSequence());
+  }
+
+  private static double[] probs(Span[] spans, Sequence bestSequence) {
 
     double[] sprobs = new double[spans.length];
     double[] probs = bestSequence.getProbs();
@@ -240,8 +463,28 @@ public class SequenceLabelerME implements SequenceLabeler {
     TrainerType trainerType = TrainerFactory.getTrainerType(trainParams.getSettings());
 
     if (TrainerType.EVENT_MODEL_TRAINER.equals(trainerType)) {
-      ObjectStream<Event> eventStream = new SequenceLabelerEventStream(samples, type,
+      String threadsString = trainParams.getSettings().get(
+          ParallelSequenceLabelerEventStream.THREADS_PARAMETER);
+      int threads = threadsString == null ? 1 : Integer.parseInt(threadsString);
+      ObjectStream<Event> eventStream;
+      if (threads > 1) {
+        String documentSizeString = trainParams.getSettings().get(
+            ParallelSequenceLabelerEventStream.DOCUMENT_SIZE_PARAMETER);
+        int documentSize = documentSizeString == null
+            ? ParallelSequenceLabelerEventStream.DEFAULT_DOCUMENT_SIZE
+            : Integer.parseInt(documentSizeString);
+        eventStream = new ParallelSequenceLabelerEventStream(samples, factory,
+            threads, 4 * threads, documentSize);
+      } else {
+        eventStream = new SequenceLabelerEventStream(samples, type,
               factory.createContextGenerator(), factory.createSequenceCodec());
+      }
+      String eventCache = trainParams.getSettings().get(
+          SequenceLabelerEventCache.EVENT_CACHE_PARAMETER);
+      if (eventCache != null) {
+        eventStream = SequenceLabelerEventCache.cache(new File(eventCache),
+            samples, type, factory, eventStream);
+      }
 
       EventTrainer trainer = TrainerFactory.getEventTrainer(trainParams.getSettings(), manifestInfoEntries);
       nameFinderModel = trainer.train(eventStream);
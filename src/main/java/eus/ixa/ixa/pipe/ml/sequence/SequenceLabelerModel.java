@@ -52,6 +52,8 @@ public class SequenceLabelerModel extends BaseModel {
 
   static final String SEQUENCE_CODEC_CLASS_NAME_PARAMETER = "sequenceCodecImplName";
 
+  static final String FEATURE_HASH_SIZE_PARAMETER = "featureHashSize";
+
   public SequenceLabelerModel(String languageCode, SequenceClassificationModel<String> nameFinderModel,
       byte[] generatorDescriptor, Map<String, Object> resources, Map<String, String> manifestInfoEntries,
       SequenceCodec<String> seqCodec, SequenceLabelerFactory factory) {
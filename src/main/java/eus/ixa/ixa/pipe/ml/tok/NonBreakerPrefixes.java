@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.tok;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The non breaking prefixes used by the {@link NonPeriodBreaker}. The
+ * prefixes are given as a regular expression, an alternation of words with
+ * optional characters, groups and character classes such as "[Nn]os?", and
+ * they are compiled into the set of words the expression matches, so that
+ * checking a word is a hash lookup instead of matching the expression. If
+ * the expression uses any other construction, or it matches too many words,
+ * the expression itself is used. Instances are immutable and can be shared.
+ */
+final class NonBreakerPrefixes {
+
+  /**
+   * Maximum number of words a regular expression is expanded to.
+   */
+  private static final int MAX_WORDS = 100000;
+
+  private final Set<String> words;
+  private final Pattern pattern;
+
+  /**
+   * Compile the non breaking prefixes.
+   * @param regex the regular expression of the prefixes
+   */
+  NonBreakerPrefixes(final String regex) {
+    Set<String> expanded;
+    try {
+      final Expander expander = new Expander(regex);
+      expanded = expander.expandAll();
+    } catch (final IllegalArgumentException e) {
+      expanded = null;
+    }
+    if (expanded == null) {
+      words = null;
+      pattern = Pattern.compile("(" + regex + ")");
+    } else {
+      words = Collections.unmodifiableSet(expanded);
+      pattern = null;
+    }
+  }
+
+  /**
+   * Check whether a word is a non breaking prefix.
+   * @param word the word
+   * @return true if the regular expression matches the whole word
+   */
+  boolean matches(final String word) {
+    if (words != null) {
+      return words.contains(word);
+    }
+    return pattern.matcher(word).matches();
+  }
+
+  /**
+   * Recursive descent expansion of a regular expression with alternations,
+   * groups, character classes without ranges, escaped characters and the ?
+   * quantifier. Any other construction throws an
+   * {@code IllegalArgumentException}.
+   */
+  private static final class Expander {
+
+    private final String regex;
+    private int pos = 0;
+
+    private Expander(final String regex) {
+      this.regex = regex;
+    }
+
+    private Set<String> expandAll() {
+      final Set<String> result = alternation();
+      if (pos != regex.length()) {
+        throw new IllegalArgumentException("Unbalanced group in " + regex);
+      }
+      return result;
+    }
+
+    private Set<String> alternation() {
+      final Set<String> result = new HashSet<String>(sequence());
+      while (pos < regex.length() && regex.charAt(pos) == '|') {
+        pos++;
+        result.addAll(sequence());
+        checkSize(result.size());
+      }
+      return result;
+    }
+
+    private Set<String> sequence() {
+      Set<String> result = Collections.singleton("");
+      while (pos < regex.length() && regex.charAt(pos) != '|'
+          && regex.charAt(pos) != ')') {
+        Set<String> atom = atom();
+        if (pos < regex.length() && regex.charAt(pos) == '?') {
+          pos++;
+          atom = new HashSet<String>(atom);
+          atom.add("");
+        }
+        checkSize((long) result.size() * atom.size());
+        final Set<String> concatenation = new HashSet<String>();
+        for (final String prefix : result) {
+          for (final String suffix : atom) {
+            concatenation.add(prefix + suffix);
+          }
+        }
+        result = concatenation;
+      }
+      return result;
+    }
+
+    private Set<String> atom() {
+      final char c = regex.charAt(pos++);
+      switch (c) {
+      case '(':
+        if (pos < regex.length() && regex.charAt(pos) == '?') {
+          throw new IllegalArgumentException("Special group in " + regex);
+        }
+        final Set<String> group = alternation();
+        if (pos >= regex.length() || regex.charAt(pos) != ')') {
+          throw new IllegalArgumentException("Unbalanced group in " + regex);
+        }
+        pos++;
+        return group;
+      case '[':
+        return characterClass();
+      case '\\':
+        if (pos >= regex.length()
+            || Character.isLetterOrDigit(regex.charAt(pos))) {
+          throw new IllegalArgumentException("Escape sequence in " + regex);
+        }
+        return Collections.singleton(String.valueOf(regex.charAt(pos++)));
+      case '.': case '*': case '+': case '{': case '}': case '^': case '$':
+      case ']': case '?':
+        throw new IllegalArgumentException("Unsupported " + c + " in " + regex);
+      default:
+        // a supplementary character is a single atom
+        if (Character.isHighSurrogate(c) && pos < regex.length()
+            && Character.isLowSurrogate(regex.charAt(pos))) {
+          return Collections.singleton(regex.substring(pos - 1, ++pos));
+        }
+        return Collections.singleton(String.valueOf(c));
+      }
+    }
+
+    private Set<String> characterClass() {
+      final Set<String> result = new HashSet<String>();
+      while (pos < regex.length() && regex.charAt(pos) != ']') {
+        final char c = regex.charAt(pos++);
+        if (c == '^' || c == '-' || c == '[' || c == '\\' || c == '&'
+            || Character.isSurrogate(c)) {
+          throw new IllegalArgumentException("Unsupported class in " + regex);
+        }
+        result.add(String.valueOf(c));
+      }
+      if (pos >= regex.length() || result.isEmpty()) {
+        throw new IllegalArgumentException("Unsupported class in " + regex);
+      }
+      pos++;
+      return result;
+    }
+
+    private void checkSize(final long size) {
+      if (size > MAX_WORDS) {
+        throw new IllegalArgumentException("Too many words in " + regex);
+      }
+    }
+  }
+}
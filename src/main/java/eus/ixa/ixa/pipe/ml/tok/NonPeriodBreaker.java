@@ -23,6 +23,8 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +56,11 @@ public class NonPeriodBreaker {
    * Do not split dot after these words if followed by number.
    */
   public static String NON_BREAKER_DIGITS = "(al|[Aa]rt|ca|figs?|[Nn]os?|[Nn]rs?|op|p|pp|[Pp]ág)";
+  /**
+   * The compiled {@link #NON_BREAKER_DIGITS}.
+   */
+  private static final NonBreakerPrefixes nonBreakerDigits = new NonBreakerPrefixes(
+      NON_BREAKER_DIGITS);
   /**
    * General acronyms.
    */
@@ -88,10 +95,15 @@ public class NonPeriodBreaker {
    */
   public static Pattern startDigit = Pattern.compile("^\\p{Digit}+",
       Pattern.UNICODE_CHARACTER_CLASS);
+  /**
+   * The non breaker prefixes of every language loaded so far, shared by all
+   * the instances.
+   */
+  private static final ConcurrentMap<String, NonBreakerPrefixes> nonBreakers = new ConcurrentHashMap<String, NonBreakerPrefixes>();
   /**
    * Non breaker prefix read from the files in resources.
    */
-  private String NON_BREAKER = null;
+  private final NonBreakerPrefixes nonBreaker;
 
   /**
    * 
@@ -102,17 +114,23 @@ public class NonPeriodBreaker {
    *          the options
    */
   public NonPeriodBreaker(final Properties properties) {
-    loadNonBreaker(properties);
+    nonBreaker = loadNonBreaker(properties);
   }
 
-  private void loadNonBreaker(final Properties properties) {
-    final String lang = properties.getProperty("language");
-    if (NON_BREAKER == null) {
-      createNonBreaker(lang);
+  private NonBreakerPrefixes loadNonBreaker(final Properties properties) {
+    final String lang = properties.getProperty("language").toLowerCase();
+    NonBreakerPrefixes prefixes = nonBreakers.get(lang);
+    if (prefixes == null) {
+      prefixes = createNonBreaker(lang);
+      final NonBreakerPrefixes previous = nonBreakers.putIfAbsent(lang, prefixes);
+      if (previous != null) {
+        prefixes = previous;
+      }
     }
+    return prefixes;
   }
 
-  private void createNonBreaker(final String lang) {
+  private NonBreakerPrefixes createNonBreaker(final String lang) {
     final List<String> nonBreakerList = new ArrayList<String>();
 
     final InputStream nonBreakerInputStream = getNonBreakerInputStream(lang);
@@ -134,7 +152,8 @@ public class NonPeriodBreaker {
     } catch (final IOException e) {
       e.printStackTrace();
     }
-    NON_BREAKER = StringUtils.createDisjunctRegexFromList(nonBreakerList);
+    return new NonBreakerPrefixes(
+        StringUtils.createDisjunctRegexFromList(nonBreakerList));
   }
 
   private final InputStream getNonBreakerInputStream(final String lang) {
@@ -208,10 +227,8 @@ public class NonPeriodBreaker {
   private String segmenterNonBreaker(String line) {
 
     // these are fine because they do not affect offsets
-    line = line.trim();
-    line = RuleBasedTokenizer.doubleSpaces.matcher(line).replaceAll(" ");
-    final StringBuilder sb = new StringBuilder();
-    String segmentedText = "";
+    line = TokenizerRules.trimSpaces(line);
+    final StringBuilder sb = new StringBuilder(line.length() + 16);
     int i;
     final String[] words = line.split(" ");
     // iterate over the words
@@ -221,7 +238,7 @@ public class NonPeriodBreaker {
       if (nonSegmentedWordMatcher.find()) {
         String curWord = nonSegmentedWordMatcher.replaceAll("$1");
         String finalPunct = nonSegmentedWordMatcher.replaceAll("$2");
-        if (!curWord.isEmpty() && curWord.matches("(" + NON_BREAKER + ")")
+        if (!curWord.isEmpty() && nonBreaker.matches(curWord)
             && finalPunct.isEmpty()) {
           // if current word is not empty and is a no breaker and there is not
           // final punctuation
@@ -230,7 +247,7 @@ public class NonPeriodBreaker {
         } else if (nextCandidateWord.matcher(words[i + 1]).find()) {
           // if next word contains initial punctuation and then uppercase or
           // digit do:
-          if (!(!curWord.isEmpty() && curWord.matches(NON_BREAKER_DIGITS)
+          if (!(!curWord.isEmpty() && nonBreakerDigits.matches(curWord)
               && (finalPunct.isEmpty()) && (startDigit.matcher(words[i + 1])
               .find()))) {
             // segment unless current word is a non breaker digit and next word
@@ -240,11 +257,10 @@ public class NonPeriodBreaker {
         }
       }
       sb.append(words[i]).append(" ");
-      segmentedText = sb.toString();
     }
     // add last index of words array removed for easy look ahead
-    segmentedText = segmentedText + words[i];
-    return segmentedText;
+    sb.append(words[i]);
+    return sb.toString();
   }
 
   /**
@@ -257,10 +273,8 @@ public class NonPeriodBreaker {
   public String TokenizerNonBreaker(String line) {
 
     // these are fine because they do not affect offsets
-    line = line.trim();
-    line = RuleBasedTokenizer.doubleSpaces.matcher(line).replaceAll(" ");
-    final StringBuilder sb = new StringBuilder();
-    String tokenizedText = "";
+    line = TokenizerRules.trimSpaces(line);
+    final StringBuilder sb = new StringBuilder(line.length() + 16);
     int i;
     final String[] words = line.split(" ");
 
@@ -272,14 +286,14 @@ public class NonPeriodBreaker {
         final String curWord = wordDotMatcher.replaceAll("$1");
 
         if ((curWord.contains(".") && alphabetic.matcher(curWord).find())
-            || curWord.matches("(" + NON_BREAKER + ")")
+            || nonBreaker.matches(curWord)
             || (i < words.length - 1 && (startLower.matcher(words[i + 1])
                 .find() || startPunct.matcher(words[i + 1]).find()))) {
           // do not tokenize if (word contains a period and is alphabetic) OR
           // word is a non breaker OR (word is a non breaker and next is
           // (lowercase or starts with punctuation that is end of sentence
           // marker))
-        } else if (curWord.matches(NON_BREAKER_DIGITS) && i < words.length - 1
+        } else if (nonBreakerDigits.matches(curWord) && i < words.length - 1
             && startDigit.matcher(words[i + 1]).find()) {
           // do not tokenize if word is a nonbreaker digit AND next word starts
           // with a digit
@@ -288,9 +302,8 @@ public class NonPeriodBreaker {
         }
       }
       sb.append(words[i]).append(" ");
-      tokenizedText = sb.toString();
     }
-    return tokenizedText;
+    return sb.toString();
   }
 
 }
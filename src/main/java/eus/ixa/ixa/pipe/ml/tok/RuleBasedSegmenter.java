@@ -166,6 +166,17 @@ public class RuleBasedSegmenter implements SentenceSegmenter {
     text = originalText;
   }
 
+  /**
+   * Construct a RuleBasedSegmenter without text for the
+   * {@link StreamingSegmenter}.
+   * 
+   * @param properties
+   *          the properties
+   */
+  RuleBasedSegmenter(final Properties properties) {
+    this(null, properties);
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -182,11 +193,11 @@ public class RuleBasedSegmenter implements SentenceSegmenter {
   /**
    * Segments sentences and calls the NonPeriodBreaker for exceptions.
    * 
-   * @param text
+   * @param builtText
    *          the text be segmented
    * @return the sentences
    */
-  private String[] segment(final String builtText) {
+  String[] segment(final String builtText) {
 
     // these are fine because they do not affect offsets
     String line = builtText.trim();
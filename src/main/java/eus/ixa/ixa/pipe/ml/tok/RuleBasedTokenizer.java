@@ -258,46 +258,43 @@ public class RuleBasedTokenizer implements Tokenizer {
   private String[] getTokens(String line) {
 
     // these are fine because they do not affect offsets
-    line = line.trim();
-    line = doubleSpaces.matcher(line).replaceAll(" ");
+    line = TokenizerRules.trimSpaces(line);
     //remove non printable stuff
-    line = asciiHex.matcher(line).replaceAll(" ");
-    line = generalBlankPunctuation.matcher(line).replaceAll(" ");
-    
+    line = TokenizerRules.removeNonPrintable(line);
+
     // separate question and exclamation marks
-    line = qexc.matcher(line).replaceAll(" $1 ");
+    line = TokenizerRules.separateQuestionExclamation(line);
     // separate dash if before or after space
-    line = spaceDashSpace.matcher(line).replaceAll(" $1 ");
+    line = TokenizerRules.separateSpaceDashSpace(line);
     // tokenize everything but these characters [^\p{Alnum}s.'`,-?!/]
-    line = specials.matcher(line).replaceAll(" $1 ");
+    line = TokenizerRules.separateSpecials(line);
 
     // do not separate multidots
     line = generateMultidots(line);
 
     // separate "," except if within numbers (1,200)
-    line = noDigitComma.matcher(line).replaceAll("$1 $2");
-    line = commaNoDigit.matcher(line).replaceAll("$1 $2");
-    // separate pre and post digit
-    line = digitCommaNoDigit.matcher(line).replaceAll("$1 $2 $3");
-    line = noDigitCommaDigit.matcher(line).replaceAll("$1 $2 $3");
+    line = TokenizerRules.separateCommas(line);
 
     // contractions it's, l'agila, c'est, don't
-    line = treatContractions(line);
+    line = TokenizerRules.separateContractions(line, lang.equalsIgnoreCase("en"));
     // exceptions for period tokenization
     line = nonBreaker.TokenizerNonBreaker(line);
 
     // restore multidots
-    line = restoreMultidots(line);
+    line = TokenizerRules.restoreMultidots(line);
     // urls
     // TODO normalize URLs after tokenization for offsets
-    line = detokenizeURLs(line);
-    line = beginLink.matcher(line).replaceAll("$1://");
-    line = endLink.matcher(line).replaceAll("$1$2");
+    if (line.contains("http") || line.contains("ftp")) {
+      line = detokenizeURLs(line);
+      line = beginLink.matcher(line).replaceAll("$1://");
+    }
+    if (line.indexOf('/') >= 0) {
+      line = endLink.matcher(line).replaceAll("$1$2");
+    }
 
     // these are fine because they do not affect offsets
-    line = line.trim();
-    line = doubleSpaces.matcher(line).replaceAll(" ");
-    line = detokenParagraphs.matcher(line).replaceAll("$1$2");
+    line = TokenizerRules.trimSpaces(line);
+    line = TokenizerRules.joinParagraphs(line);
 
     if (DEBUG) {
       System.out.println("->Tokens:" + line);
@@ -315,6 +312,9 @@ public class RuleBasedTokenizer implements Tokenizer {
    */
   private String generateMultidots(String line) {
 
+    if (!line.contains("..") && !line.contains("DOTMULTI")) {
+      return line;
+    }
     line = multiDots.matcher(line).replaceAll(" DOTMULTI$1 ");
     final Matcher dotMultiDot = dotmultiDot.matcher(line);
 
@@ -327,47 +327,6 @@ public class RuleBasedTokenizer implements Tokenizer {
     return line;
   }
 
-  /**
-   * Restores the normalized multidots to its original state and it tokenizes
-   * them.
-   * 
-   * @param line
-   *          the line
-   * @return the tokenized multidots
-   */
-  private String restoreMultidots(String line) {
-
-    while (line.contains("DOTDOTMULTI")) {
-      line = line.replaceAll("DOTDOTMULTI", "DOTMULTI.");
-    }
-    line = line.replaceAll("DOTMULTI", ".");
-    return line;
-  }
-
-  /**
-   * Separate apostrophes.
-   * 
-   * @param line
-   *          the sentence
-   * @return the tokenized paragraphs
-   */
-  private String treatContractions(String line) {
-
-    line = noAlphaAposNoAlpha.matcher(line).replaceAll("$1 $2 $3");
-    line = noAlphaDigitAposAlpha.matcher(line).replaceAll("$1 $2 $3");
-    line = alphaAposNonAlpha.matcher(line).replaceAll("$1 $2 $3");
-    if (lang.equalsIgnoreCase("en")) {
-      line = englishNegations.matcher(line).replaceAll("$1 $2$3"); 
-    }
-    line = englishApos.matcher(line).replaceAll("$1 $2$3");
-    line = yearApos.matcher(line).replaceAll("$1 $2$3");
-    // romance tokenization of apostrophes c' l'
-    line = AlphaAposAlpha.matcher(line).replaceAll("$1$2 $3");
-    line = endOfSentenceApos.matcher(line).replaceAll("$1 $2");
-    line = deTokenEnglishNegation.matcher(line).replaceAll("$1$2$3");
-    return line;
-  }
-
   /**
    * De-tokenize wrongly tokenized URLs.
    * 
@@ -410,7 +369,7 @@ public class RuleBasedTokenizer implements Tokenizer {
       if (unTokenizable) {
         tokens.add(curToken);
       } else if (!unTokenizable) {
-        if (!replacement.matcher(curToken.getTokenValue()).matches()) {
+        if (!curToken.getTokenValue().equals("\uFFFD")) {
          tokens.add(curToken);
         }
       }
@@ -0,0 +1,269 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.tok;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+
+import opennlp.tools.util.ObjectStream;
+
+/**
+ * Streaming version of the {@link RuleBasedSegmenter}. The text is read from
+ * a {@code Reader} in chunks of whole lines and the sentences are returned
+ * as soon as they are segmented, so that the memory used does not depend on
+ * the size of the document.
+ *
+ * The lines are joined as in {@link RuleBasedSegmenter#readText}, every
+ * chunk is segmented by the {@link RuleBasedSegmenter} and its last sentence
+ * is not returned but prepended to the next chunk, because it can continue
+ * in the next lines or its end can depend on them (paragraph marks, non
+ * breaking prefixes and so on). The sentences are the same as those
+ * obtained by segmenting the whole text at once, except for sentences
+ * longer than the maximum sentence length: when the text held back reaches
+ * it without a sentence break, it is returned as a sentence, so that the
+ * memory and the time spent segmenting again the held back text are
+ * bounded.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public class StreamingSegmenter implements SentenceSegmenter, ObjectStream<String> {
+
+  /**
+   * Default minimum number of characters read for every chunk.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 65536;
+  /**
+   * Default maximum sentence length, in chunks of at least the default size.
+   */
+  public static final int DEFAULT_MAX_SENTENCE_CHUNKS = 16;
+
+  private final BufferedReader breader;
+  private final RuleBasedSegmenter segmenter;
+  private final int chunkSize;
+  private final int maxSentenceLength;
+  /**
+   * The text read and not yet segmented, starting with the last sentence of
+   * the previous chunk.
+   */
+  private final StringBuilder text = new StringBuilder();
+  /**
+   * The leading spaces of the last sentence of the previous chunk, removed
+   * from the text to be segmented.
+   */
+  private String sentencePrefix = "";
+  /**
+   * Whether the last line read is followed by a line break not yet added to
+   * the text: two consecutive line breaks are a paragraph.
+   */
+  private boolean pendingLineBreak = false;
+  private boolean endOfText = false;
+  /**
+   * Whether the text starts with the last sentence of a previous chunk.
+   */
+  private boolean hasPreviousChunk = false;
+  private final Deque<String> sentences = new ArrayDeque<String>();
+
+  /**
+   * Construct a streaming segmenter with the default chunk size.
+   *
+   * @param reader
+   *          the input text
+   * @param properties
+   *          the properties
+   */
+  public StreamingSegmenter(final Reader reader, final Properties properties) {
+    this(reader, properties, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Construct a streaming segmenter with the default maximum sentence length,
+   * {@value #DEFAULT_MAX_SENTENCE_CHUNKS} times the chunk size or the default
+   * chunk size if it is larger.
+   *
+   * @param reader
+   *          the input text
+   * @param properties
+   *          the properties
+   * @param chunkSize
+   *          the minimum number of characters read for every chunk
+   */
+  public StreamingSegmenter(final Reader reader, final Properties properties,
+      final int chunkSize) {
+    this(reader, properties, chunkSize, DEFAULT_MAX_SENTENCE_CHUNKS
+        * Math.max(chunkSize, DEFAULT_CHUNK_SIZE));
+  }
+
+  /**
+   * Construct a streaming segmenter.
+   *
+   * @param reader
+   *          the input text
+   * @param properties
+   *          the properties
+   * @param chunkSize
+   *          the minimum number of characters read for every chunk
+   * @param maxSentenceLength
+   *          the number of characters held back without a sentence break
+   *          after which they are returned as a sentence
+   */
+  public StreamingSegmenter(final Reader reader, final Properties properties,
+      final int chunkSize, final int maxSentenceLength) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("The chunk size must be positive: "
+          + chunkSize);
+    }
+    if (maxSentenceLength < chunkSize) {
+      throw new IllegalArgumentException(
+          "The maximum sentence length can not be smaller than the chunk size: "
+              + maxSentenceLength);
+    }
+    this.breader = reader instanceof BufferedReader ? (BufferedReader) reader
+        : new BufferedReader(reader);
+    this.segmenter = new RuleBasedSegmenter(properties);
+    this.chunkSize = chunkSize;
+    this.maxSentenceLength = maxSentenceLength;
+  }
+
+  /**
+   * Get the next sentence.
+   *
+   * @return the sentence or null at the end of the text
+   * @throws IOException
+   *           if the text can not be read
+   */
+  public String read() throws IOException {
+    while (sentences.isEmpty() && !endOfText) {
+      readChunk();
+    }
+    return sentences.poll();
+  }
+
+  /**
+   * Segment the rest of the text.
+   *
+   * @return the sentences
+   * @throws IllegalStateException
+   *           if the text can not be read
+   */
+  public String[] segmentSentence() {
+    final List<String> allSentences = new ArrayList<String>();
+    try {
+      String sentence;
+      while ((sentence = read()) != null) {
+        allSentences.add(sentence);
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Failed reading the text to segment", e);
+    }
+    return allSentences.toArray(new String[allSentences.size()]);
+  }
+
+  public void reset() throws IOException, UnsupportedOperationException {
+    throw new UnsupportedOperationException(
+        "A streaming segmenter can not be reset!");
+  }
+
+  public void close() throws IOException {
+    breader.close();
+  }
+
+  /**
+   * Read at least a chunk of lines, or up to the end of the text, and
+   * segment them with the last sentence of the previous chunk.
+   *
+   * @throws IOException
+   *           if the text can not be read
+   */
+  private void readChunk() throws IOException {
+    final int chunkEnd = text.length() + chunkSize;
+    while (text.length() < chunkEnd) {
+      final String line = breader.readLine();
+      if (line == null) {
+        endOfText = true;
+        break;
+      }
+      addLine(line);
+    }
+    final String[] chunkSentences = segmenter.segment(text.toString());
+    // a paragraph mark starting the last sentence of the previous chunk is
+    // split again from it, but it was already its start in the whole text
+    int first = 0;
+    if (hasPreviousChunk && chunkSentences.length > 1
+        && chunkSentences[0].isEmpty()) {
+      first = 1;
+    }
+    // the last sentence is held back unless it is too long
+    final boolean flush = endOfText || text.length() >= maxSentenceLength;
+    final int last = flush ? chunkSentences.length : chunkSentences.length - 1;
+    if (last <= first) {
+      if (flush) {
+        text.setLength(0);
+        sentencePrefix = "";
+        hasPreviousChunk = false;
+      }
+      return;
+    }
+    for (int i = first; i < last; i++) {
+      sentences.add(i == first ? sentencePrefix + chunkSentences[i]
+          : chunkSentences[i]);
+    }
+    sentencePrefix = "";
+    text.setLength(0);
+    hasPreviousChunk = false;
+    if (!flush) {
+      final String lastSentence = chunkSentences[last];
+      int start = 0;
+      while (start < lastSentence.length() && lastSentence.charAt(start) <= ' ') {
+        start++;
+      }
+      sentencePrefix = lastSentence.substring(0, start);
+      text.append(lastSentence, start, lastSentence.length());
+      hasPreviousChunk = true;
+    }
+  }
+
+  /**
+   * Add a line to the text as {@link RuleBasedSegmenter#readText} does: every
+   * two consecutive line breaks are a paragraph mark and any other line break
+   * is a space.
+   *
+   * @param line
+   *          the line
+   */
+  private void addLine(final String line) {
+    if (!line.isEmpty()) {
+      if (pendingLineBreak) {
+        text.append(' ');
+        pendingLineBreak = false;
+      }
+      text.append(line);
+    }
+    if (pendingLineBreak) {
+      text.append(RuleBasedSegmenter.PARAGRAPH);
+      pendingLineBreak = false;
+    } else {
+      pendingLineBreak = true;
+    }
+  }
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.tok;
+
+/**
+ * Hand compiled versions of the rewriting rules of the
+ * {@link RuleBasedTokenizer}. Every rule scans the sentence once, character by
+ * character, and produces exactly the same output as the corresponding
+ * regular expression replacement in {@link RuleBasedTokenizer}, including the
+ * leftmost, non overlapping matching of {@link java.util.regex.Matcher}. The
+ * character classes reproduce those of the patterns compiled with
+ * {@link java.util.regex.Pattern#UNICODE_CHARACTER_CLASS}. If a rule does not
+ * apply, the input string is returned without copying it.
+ */
+final class TokenizerRules {
+
+  /**
+   * A set of code points, the equivalent of a regex character class.
+   */
+  interface CodePointClass {
+    boolean contains(int codePoint);
+  }
+
+  static final CodePointClass DIGIT = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return Character.isDigit(codePoint);
+    }
+  };
+  static final CodePointClass NON_DIGIT = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return !Character.isDigit(codePoint);
+    }
+  };
+  static final CodePointClass ALPHA = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return Character.isAlphabetic(codePoint);
+    }
+  };
+  static final CodePointClass NON_ALPHA = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return !Character.isAlphabetic(codePoint);
+    }
+  };
+  static final CodePointClass NON_ALPHA_DIGIT = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return !Character.isAlphabetic(codePoint) && !Character.isDigit(codePoint);
+    }
+  };
+  static final CodePointClass COMMA_COLON = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return codePoint == ',' || codePoint == ':';
+    }
+  };
+  /**
+   * {@link Normalizer#TO_ASCII_SINGLE_QUOTE}.
+   */
+  static final CodePointClass APOSTROPHE = new CodePointClass() {
+    public boolean contains(int codePoint) {
+      return isApostrophe(codePoint);
+    }
+  };
+  static final CodePointClass LOWER_N = literal('n');
+  static final CodePointClass LOWER_S = literal('s');
+  static final CodePointClass LOWER_T = literal('t');
+
+  private static final CodePointClass[] NO_DIGIT_COMMA = { NON_DIGIT, COMMA_COLON };
+  private static final CodePointClass[] COMMA_NO_DIGIT = { COMMA_COLON, NON_DIGIT };
+  private static final CodePointClass[] DIGIT_COMMA_NO_DIGIT = { DIGIT, COMMA_COLON, NON_DIGIT };
+  private static final CodePointClass[] NO_DIGIT_COMMA_DIGIT = { NON_DIGIT, COMMA_COLON, DIGIT };
+  private static final CodePointClass[] NO_ALPHA_APOS_NO_ALPHA = { NON_ALPHA, APOSTROPHE, NON_ALPHA };
+  private static final CodePointClass[] NO_ALPHA_DIGIT_APOS_ALPHA = { NON_ALPHA_DIGIT, APOSTROPHE, ALPHA };
+  private static final CodePointClass[] ALPHA_APOS_NON_ALPHA = { ALPHA, APOSTROPHE, NON_ALPHA };
+  private static final CodePointClass[] ENGLISH_NEGATIONS = { ALPHA, LOWER_N, APOSTROPHE, LOWER_T };
+  private static final CodePointClass[] YEAR_APOS = { DIGIT, APOSTROPHE, LOWER_S };
+  private static final CodePointClass[] ALPHA_APOS_ALPHA = { ALPHA, APOSTROPHE, ALPHA };
+
+  private static final String[] SPACE_BETWEEN = { " ", " " };
+  private static final String[] SPACE_AFTER_FIRST = { " ", "", "" };
+  private static final String[] SPACE_AFTER_SECOND = { "", " " };
+
+  private TokenizerRules() {
+  }
+
+  private static CodePointClass literal(final char c) {
+    return new CodePointClass() {
+      public boolean contains(int codePoint) {
+        return codePoint == c;
+      }
+    };
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#asciiHex}.
+   */
+  static boolean isAsciiHex(char c) {
+    return c <= ' ' || (c >= '\u007F' && c <= '\u00A0');
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#generalBlankPunctuation}.
+   */
+  static boolean isGeneralBlankPunctuation(char c) {
+    return (c >= '\u2000' && c <= '\u200F') || (c >= '\u2028' && c <= '\u202F')
+        || (c >= '\u205F' && c <= '\u206F');
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#qexc}.
+   */
+  static boolean isQuestionExclamation(char c) {
+    return c == '\u00BF' || c == '?' || c == '\u00A1' || c == '!';
+  }
+
+  /**
+   * The dashes and slashes of {@link RuleBasedTokenizer#spaceDashSpace}.
+   */
+  static boolean isDash(char c) {
+    return c == '\u2014' || c == '\u8212' || c == '\u2013' || c == '-' || c == '/';
+  }
+
+  static boolean isApostrophe(int c) {
+    return c == '\'' || c == '\u0091' || c == '\u0092' || c == '\u2019'
+        || c == '\u201A' || c == '\u201B' || c == '\u203A' || c == '\u2018'
+        || c == '\u2039';
+  }
+
+  /**
+   * The Unicode White_Space property as used by \p{Space} and \s.
+   */
+  static boolean isWhiteSpace(int c) {
+    return ((((1 << Character.SPACE_SEPARATOR) | (1 << Character.LINE_SEPARATOR)
+        | (1 << Character.PARAGRAPH_SEPARATOR)) >> Character.getType(c)) & 1) != 0
+        || (c >= 0x9 && c <= 0xd) || c == 0x85;
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#specials}: the code points to be separated.
+   */
+  static boolean isSpecial(int c) {
+    switch (c) {
+    case '@': case '#': case '.': case '\u2014': case '\u8212': case '\u2013':
+    case '-': case '\u00BF': case '?': case '\u00A1': case '!': case '`':
+    case ',': case ':': case '/': case '\'': case '\u0091': case '\u0092':
+    case '\u2019': case '\u201A': case '\u201B': case '\u203A': case '\u2018':
+    case '\u2039':
+      return false;
+    default:
+      return !(Character.isAlphabetic(c) || Character.isDigit(c) || isWhiteSpace(c));
+    }
+  }
+
+  /**
+   * Trims the line and replaces sequences of spaces by one space, as
+   * {@link String#trim()} followed by {@link RuleBasedTokenizer#doubleSpaces}.
+   */
+  static String trimSpaces(String line) {
+    line = line.trim();
+    if (line.indexOf("  ") < 0) {
+      return line;
+    }
+    final int length = line.length();
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      final char c = line.charAt(i);
+      if (c != ' ' || line.charAt(i - 1) != ' ') {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Replaces by a space the characters of {@link RuleBasedTokenizer#asciiHex}
+   * and {@link RuleBasedTokenizer#generalBlankPunctuation}.
+   */
+  static String removeNonPrintable(String line) {
+    final int length = line.length();
+    int i = 0;
+    while (i < length && !isNonPrintable(line.charAt(i))) {
+      i++;
+    }
+    if (i == length) {
+      return line;
+    }
+    final char[] chars = line.toCharArray();
+    for (; i < length; i++) {
+      if (isNonPrintable(chars[i])) {
+        chars[i] = ' ';
+      }
+    }
+    return new String(chars);
+  }
+
+  private static boolean isNonPrintable(char c) {
+    return (c != ' ' && isAsciiHex(c)) || isGeneralBlankPunctuation(c);
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#qexc}: surround sequences of question and
+   * exclamation marks with spaces.
+   */
+  static String separateQuestionExclamation(String line) {
+    final int length = line.length();
+    StringBuilder sb = null;
+    int copied = 0;
+    for (int i = 0; i < length; i++) {
+      if (isQuestionExclamation(line.charAt(i))) {
+        int end = i + 1;
+        while (end < length && isQuestionExclamation(line.charAt(end))) {
+          end++;
+        }
+        if (sb == null) {
+          sb = new StringBuilder(length + 16);
+        }
+        sb.append(line, copied, i).append(' ').append(line, i, end).append(' ');
+        copied = end;
+        i = end - 1;
+      }
+    }
+    return finish(line, sb, copied);
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#spaceDashSpace}: surround with spaces the
+   * dashes and slashes preceded or followed by spaces, together with those
+   * spaces.
+   */
+  static String separateSpaceDashSpace(String line) {
+    final int length = line.length();
+    StringBuilder sb = null;
+    int copied = 0;
+    int i = 0;
+    while (i < length) {
+      int end = -1;
+      final char c = line.charAt(i);
+      if (c == ' ') {
+        int j = i + 1;
+        while (j < length && line.charAt(j) == ' ') {
+          j++;
+        }
+        if (j < length && isDash(line.charAt(j))) {
+          end = j + 1;
+          while (end < length && isDash(line.charAt(end))) {
+            end++;
+          }
+        }
+      } else if (isDash(c)) {
+        int j = i + 1;
+        while (j < length && isDash(line.charAt(j))) {
+          j++;
+        }
+        if (j < length && line.charAt(j) == ' ') {
+          end = j + 1;
+          while (end < length && line.charAt(end) == ' ') {
+            end++;
+          }
+        }
+      }
+      if (end < 0) {
+        i = nextCodePoint(line, i);
+      } else {
+        if (sb == null) {
+          sb = new StringBuilder(length + 16);
+        }
+        sb.append(line, copied, i).append(' ').append(line, i, end).append(' ');
+        copied = end;
+        i = end;
+      }
+    }
+    return finish(line, sb, copied);
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#specials}: surround with spaces every code point
+   * which is not alphanumeric, a space or a punctuation handled by other
+   * rules.
+   */
+  static String separateSpecials(String line) {
+    final int length = line.length();
+    StringBuilder sb = null;
+    int copied = 0;
+    int i = 0;
+    while (i < length) {
+      final int codePoint = line.codePointAt(i);
+      final int next = i + Character.charCount(codePoint);
+      if (isSpecial(codePoint)) {
+        if (sb == null) {
+          sb = new StringBuilder(length + 16);
+        }
+        sb.append(line, copied, i).append(' ').append(line, i, next).append(' ');
+        copied = next;
+      }
+      i = next;
+    }
+    return finish(line, sb, copied);
+  }
+
+  /**
+   * Separate the commas and colons, except within numbers, as
+   * {@link RuleBasedTokenizer#noDigitComma},
+   * {@link RuleBasedTokenizer#commaNoDigit},
+   * {@link RuleBasedTokenizer#digitCommaNoDigit} and
+   * {@link RuleBasedTokenizer#noDigitCommaDigit} applied in sequence.
+   */
+  static String separateCommas(String line) {
+    if (line.indexOf(',') < 0 && line.indexOf(':') < 0) {
+      return line;
+    }
+    line = separate(line, NO_DIGIT_COMMA, SPACE_BETWEEN);
+    line = separate(line, COMMA_NO_DIGIT, SPACE_BETWEEN);
+    line = separate(line, DIGIT_COMMA_NO_DIGIT, SPACE_BETWEEN);
+    return separate(line, NO_DIGIT_COMMA_DIGIT, SPACE_BETWEEN);
+  }
+
+  /**
+   * Separate apostrophes as the contraction patterns of
+   * {@link RuleBasedTokenizer} applied in sequence.
+   * @param line the sentence
+   * @param english whether to split English negations
+   * @return the sentence with the contractions separated
+   */
+  static String separateContractions(String line, boolean english) {
+    if (!containsApostrophe(line)) {
+      return line;
+    }
+    line = separate(line, NO_ALPHA_APOS_NO_ALPHA, SPACE_BETWEEN);
+    line = separate(line, NO_ALPHA_DIGIT_APOS_ALPHA, SPACE_BETWEEN);
+    line = separate(line, ALPHA_APOS_NON_ALPHA, SPACE_BETWEEN);
+    if (english) {
+      line = separate(line, ENGLISH_NEGATIONS, SPACE_AFTER_FIRST);
+    }
+    line = separateEnglishApostrophes(line);
+    line = separate(line, YEAR_APOS, SPACE_AFTER_FIRST);
+    line = separate(line, ALPHA_APOS_ALPHA, SPACE_AFTER_SECOND);
+    line = separateEndOfSentenceApostrophe(line);
+    return joinEnglishNegations(line);
+  }
+
+  private static boolean containsApostrophe(String line) {
+    for (int i = 0; i < line.length(); i++) {
+      if (isApostrophe(line.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Apply a pattern made of a sequence of single code point groups, inserting
+   * separators between the groups of every match.
+   * @param line the text
+   * @param groups the classes of the code points of the pattern
+   * @param separators the separator after each group but the last
+   * @return the text with the separators
+   */
+  static String separate(String line, CodePointClass[] groups, String[] separators) {
+    final int length = line.length();
+    final int[] ends = new int[groups.length];
+    StringBuilder sb = null;
+    int copied = 0;
+    int i = 0;
+    while (i < length) {
+      int end = match(line, i, groups, ends);
+      if (end < 0) {
+        i = nextCodePoint(line, i);
+      } else {
+        if (sb == null) {
+          sb = new StringBuilder(length + 16);
+        }
+        sb.append(line, copied, i);
+        int start = i;
+        for (int g = 0; g < groups.length; g++) {
+          sb.append(line, start, ends[g]);
+          if (g < groups.length - 1) {
+            sb.append(separators[g]);
+          }
+          start = ends[g];
+        }
+        copied = end;
+        i = end;
+      }
+    }
+    return finish(line, sb, copied);
+  }
+
+  /**
+   * Match the groups at a position.
+   * @return the end of the match or -1, the end of every group in ends
+   */
+  private static int match(String line, int start, CodePointClass[] groups, int[] ends) {
+    int pos = start;
+    for (int g = 0; g < groups.length; g++) {
+      if (pos >= line.length()) {
+        return -1;
+      }
+      final int codePoint = line.codePointAt(pos);
+      if (!groups[g].contains(codePoint)) {
+        return -1;
+      }
+      pos += Character.charCount(codePoint);
+      ends[g] = pos;
+    }
+    return pos;
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#englishApos}.
+   */
+  private static String separateEnglishApostrophes(String line) {
+    final int length = line.length();
+    StringBuilder sb = null;
+    int copied = 0;
+    int i = 0;
+    while (i < length) {
+      int end = -1;
+      final int codePoint = line.codePointAt(i);
+      final int apos = i + Character.charCount(codePoint);
+      if (Character.isAlphabetic(codePoint) && apos < length && isApostrophe(line.charAt(apos))) {
+        final int suffix = apos + 1;
+        if (suffix < length) {
+          final char c = line.charAt(suffix);
+          if (c == 'm' || c == 's' || c == 'd' || c == 'M' || c == 'S' || c == 'D') {
+            end = suffix + 1;
+          } else if (line.startsWith("re", suffix) || line.startsWith("ve", suffix)
+              || line.startsWith("ll", suffix)) {
+            end = suffix + 2;
+          }
+        }
+      }
+      if (end < 0) {
+        i = nextCodePoint(line, i);
+      } else {
+        if (sb == null) {
+          sb = new StringBuilder(length + 16);
+        }
+        sb.append(line, copied, apos).append(' ').append(line, apos, end);
+        copied = end;
+        i = end;
+      }
+    }
+    return finish(line, sb, copied);
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#endOfSentenceApos}, whose \p{Alpha} is ASCII
+   * only.
+   */
+  private static String separateEndOfSentenceApostrophe(String line) {
+    final int length = line.length();
+    if (length < 2 || !isApostrophe(line.charAt(length - 1))) {
+      return line;
+    }
+    final char previous = line.charAt(length - 2);
+    if ((previous >= 'a' && previous <= 'z') || (previous >= 'A' && previous <= 'Z')) {
+      return line;
+    }
+    return line.substring(0, length - 1) + " " + line.charAt(length - 1);
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#deTokenEnglishNegation}.
+   */
+  private static String joinEnglishNegations(String line) {
+    final int length = line.length();
+    StringBuilder sb = null;
+    int copied = 0;
+    int i = 0;
+    while (i < length) {
+      int end = -1;
+      if (line.charAt(i) == 'n' && i + 1 < length && isApostrophe(line.charAt(i + 1))) {
+        int j = i + 2;
+        while (j < length && isWhiteSpace(line.codePointAt(j))) {
+          j += Character.charCount(line.codePointAt(j));
+        }
+        if (j > i + 2 && j < length && line.charAt(j) == 't') {
+          end = j + 1;
+        }
+      }
+      if (end < 0) {
+        i = nextCodePoint(line, i);
+      } else {
+        if (sb == null) {
+          sb = new StringBuilder(length);
+        }
+        sb.append(line, copied, i + 2).append('t');
+        copied = end;
+        i = end;
+      }
+    }
+    return finish(line, sb, copied);
+  }
+
+  /**
+   * Restores the multidots protected by the DOTMULTI placeholders, as
+   * the restoreMultidots step of {@link RuleBasedTokenizer}.
+   */
+  static String restoreMultidots(String line) {
+    if (!line.contains("DOTMULTI")) {
+      return line;
+    }
+    while (line.contains("DOTDOTMULTI")) {
+      line = line.replace("DOTDOTMULTI", "DOTMULTI.");
+    }
+    return line.replace("DOTMULTI", ".");
+  }
+
+  /**
+   * {@link RuleBasedTokenizer#detokenParagraphs}.
+   */
+  static String joinParagraphs(String line) {
+    if (line.indexOf('\u00B6') < 0) {
+      return line;
+    }
+    return RuleBasedTokenizer.detokenParagraphs.matcher(line).replaceAll("$1$2");
+  }
+
+  /**
+   * Like {@link java.util.regex.Matcher}, never start a match in the middle
+   * of a surrogate pair.
+   */
+  private static int nextCodePoint(String line, int i) {
+    return i + Character.charCount(line.codePointAt(i));
+  }
+
+  private static String finish(String line, StringBuilder sb, int copied) {
+    if (sb == null) {
+      return line;
+    }
+    sb.append(line, copied, line.length());
+    return sb.toString();
+  }
+}
@@ -33,6 +33,7 @@ import eus.ixa.ixa.pipe.ml.lemma.DictionaryLemmatizer;
 import eus.ixa.ixa.pipe.ml.resources.BrownCluster;
 import eus.ixa.ixa.pipe.ml.resources.ClarkCluster;
 import eus.ixa.ixa.pipe.ml.resources.Dictionary;
+import eus.ixa.ixa.pipe.ml.resources.LexiconSerializer;
 import eus.ixa.ixa.pipe.ml.resources.MFSResource;
 import eus.ixa.ixa.pipe.ml.resources.SequenceModelResource;
 import eus.ixa.ixa.pipe.ml.resources.Word2VecCluster;
@@ -109,7 +110,7 @@ public class DefaultTrainer extends AbstractTrainer {
     Map<String, Object> resources = loadResources(params, featureGeneratorBytes);
     setSequenceLabelerFactory(SequenceLabelerFactory.create(
         SequenceLabelerFactory.class.getName(), featureGeneratorBytes,
-        resources, sequenceCodec));
+        resources, sequenceCodec, Flags.getFeatureHashSize(params)));
   }
 
   /**
@@ -124,6 +125,7 @@ public class DefaultTrainer extends AbstractTrainer {
     Map<String, Object> resources = new HashMap<String, Object>();
     @SuppressWarnings("rawtypes")
     Map<String, ArtifactSerializer> artifactSerializers = SequenceLabelerModel.createArtifactSerializers();
+    boolean binaryLexicons = Flags.isBinaryLexicons(params);
     
     if (Flags.isBrownFeatures(params)) {
       String brownClusterPath = Flags.getBrownFeatures(params);
@@ -131,7 +133,8 @@ public class DefaultTrainer extends AbstractTrainer {
       List<File> brownClusterFiles = Flags.getClusterLexiconFiles(brownClusterPath);
       for (File brownClusterFile : brownClusterFiles) {
         String brownFilePath = brownClusterFile.getCanonicalPath();
-        artifactSerializers.put(serializerId, new BrownCluster.BrownClusterSerializer());
+        artifactSerializers.put(serializerId, binaryLexicons
+            ? new BrownCluster.BinaryBrownClusterSerializer() : new BrownCluster.BrownClusterSerializer());
         loadResource(serializerId, artifactSerializers, brownFilePath, featureGenDescriptor, resources);
       }
     }
@@ -141,7 +144,8 @@ public class DefaultTrainer extends AbstractTrainer {
       List<File> clarkClusterFiles = Flags.getClusterLexiconFiles(clarkClusterPath);
       for (File clarkClusterFile: clarkClusterFiles) {
         String clarkFilePath = clarkClusterFile.getCanonicalPath();
-        artifactSerializers.put(serializerId, new ClarkCluster.ClarkClusterSerializer());
+        artifactSerializers.put(serializerId, binaryLexicons
+            ? new ClarkCluster.BinaryClarkClusterSerializer() : new ClarkCluster.ClarkClusterSerializer());
         loadResource(serializerId, artifactSerializers, clarkFilePath, featureGenDescriptor, resources);
       }
     }
@@ -151,7 +155,8 @@ public class DefaultTrainer extends AbstractTrainer {
       List<File> word2vecClusterFiles = Flags.getClusterLexiconFiles(word2vecClusterPath);
       for (File word2vecClusterFile : word2vecClusterFiles) {
         String word2vecFilePath = word2vecClusterFile.getCanonicalPath();
-        artifactSerializers.put(serializerId, new Word2VecCluster.Word2VecClusterSerializer());
+        artifactSerializers.put(serializerId, binaryLexicons
+            ? new Word2VecCluster.BinaryWord2VecClusterSerializer() : new Word2VecCluster.Word2VecClusterSerializer());
         loadResource(serializerId, artifactSerializers, word2vecFilePath, featureGenDescriptor, resources);
       }
     }
@@ -161,7 +166,8 @@ public class DefaultTrainer extends AbstractTrainer {
       List<File> fileList = StringUtils.getFilesInDir(new File(dictDir));
       for (File dictFile : fileList) {
         String dictionaryPath = dictFile.getCanonicalPath();
-        artifactSerializers.put(serializerId, new Dictionary.DictionarySerializer());
+        artifactSerializers.put(serializerId, binaryLexicons
+            ? new Dictionary.BinaryDictionarySerializer() : new Dictionary.DictionarySerializer());
         loadResource(serializerId, artifactSerializers, dictionaryPath, featureGenDescriptor, resources);
       }
     }
@@ -217,7 +223,8 @@ public class DefaultTrainer extends AbstractTrainer {
   }
 
   /**
-   * Load a resource by resourceId.
+   * Load a resource by resourceId. The binary clustering lexicons and
+   * dictionaries are memory mapped.
    * @param serializerId the serializer id
    * @param artifactSerializers the serializers in which to put the resource
    * @param resourcePath the canonical path of the resource
@@ -231,6 +238,14 @@ public class DefaultTrainer extends AbstractTrainer {
     if (resourceFile != null) {
       String resourceId = IOUtils.normalizeLexiconName(resourceFile.getName());
       ArtifactSerializer<?> serializer = artifactSerializers.get(serializerId);
+      if (serializer instanceof LexiconSerializer) {
+        try {
+          resources.put(resourceId, ((LexiconSerializer<?>) serializer).create(resourceFile));
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
       InputStream resourceIn = CmdLineUtil.openInFile(resourceFile);
       try {
         resources.put(resourceId, serializer.create(resourceIn));
@@ -0,0 +1,325 @@
+/*
+ *Copyright 2016 Rodrigo Agerri
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package eus.ixa.ixa.pipe.ml.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decodes the lemmas from the Shortest Edit Scripts (SES) predicted by the
+ * lemmatizer models. The lemma classes of a model are a small closed set, so
+ * every script is parsed once into an array of operations, kept in a
+ * concurrent map. The lemmas of the most frequent word forms are kept in a
+ * bounded direct mapped cache, where each slot holds the last word form and
+ * script hashed to it. The slots are immutable entries read and replaced
+ * without locking, so the decoding threads never wait for each other and a
+ * cached lemma is found without creating any object. The lemmas are the same
+ * as those obtained by applying the script as described in
+ * {@link StringUtils#decodeShortestEditScript(String, String)}.
+ *
+ * @author ragerri
+ * @version 2016-06-20
+ */
+public final class EditScriptDecoder {
+
+  private static final EditScriptDecoder DEFAULT = new EditScriptDecoder(
+      65536);
+  /**
+   * The maximum number of compiled scripts, to guard against decoding
+   * arbitrary strings; scripts beyond it are compiled on every use.
+   */
+  private static final int MAX_SCRIPTS = 10000;
+
+  private static final byte REPLACE = 0;
+  private static final byte INSERT = 1;
+  private static final byte DELETE = 2;
+
+  private final ConcurrentMap<String, Script> scripts = new ConcurrentHashMap<String, Script>();
+  /**
+   * The cached lemmas; the entries have only final fields, so they are safely
+   * read by other threads without synchronization.
+   */
+  private final Entry[] lemmas;
+  private final int mask;
+
+  /**
+   * Construct a decoder.
+   * @param cacheSize the maximum number of lemmas cached, rounded down to a
+   * power of two; 0 disables the cache
+   */
+  public EditScriptDecoder(final int cacheSize) {
+    if (cacheSize < 0) {
+      throw new IllegalArgumentException("The cache size can not be negative: "
+          + cacheSize);
+    }
+    lemmas = new Entry[Integer.highestOneBit(cacheSize)];
+    mask = lemmas.length - 1;
+  }
+
+  /**
+   * Get the decoder shared by the library.
+   * @return the default decoder
+   */
+  public static EditScriptDecoder getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Apply a Shortest Edit Script to a word form.
+   * @param wordForm the word form
+   * @param permutations the script predicted by the lemmatizer model
+   * @return the lemma
+   */
+  public String decode(final String wordForm, final String permutations) {
+    final Script script = getScript(permutations);
+    if (script.malformed) {
+      return StringUtils.applyShortestEditScript(wordForm, permutations);
+    }
+    if (script.operations.length == 0 && !hasSurrogates(wordForm)) {
+      // reversing twice only changes unpaired surrogates
+      return wordForm;
+    }
+    if (lemmas.length == 0) {
+      return script.apply(wordForm);
+    }
+    final int hash = 31 * wordForm.hashCode() + permutations.hashCode();
+    final int slot = (hash ^ (hash >>> 16)) & mask;
+    final Entry entry = lemmas[slot];
+    if (entry != null && entry.wordForm.equals(wordForm)
+        && entry.script.equals(permutations)) {
+      return entry.lemma;
+    }
+    final String lemma = script.apply(wordForm);
+    lemmas[slot] = new Entry(wordForm, permutations, lemma);
+    return lemma;
+  }
+
+  /**
+   * Get the number of lemmas cached.
+   * @return the number of lemmas
+   */
+  public int size() {
+    int size = 0;
+    for (final Entry entry : lemmas) {
+      if (entry != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Remove the cached lemmas and compiled scripts.
+   */
+  public void clear() {
+    Arrays.fill(lemmas, null);
+    scripts.clear();
+  }
+
+  private static boolean hasSurrogates(final String wordForm) {
+    for (int i = 0; i < wordForm.length(); i++) {
+      if (Character.isSurrogate(wordForm.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Script getScript(final String permutations) {
+    Script script = scripts.get(permutations);
+    if (script == null) {
+      script = new Script(permutations);
+      if (scripts.size() < MAX_SCRIPTS) {
+        final Script previous = scripts.putIfAbsent(permutations, script);
+        if (previous != null) {
+          script = previous;
+        }
+      }
+    }
+    return script;
+  }
+
+  /**
+   * A script parsed into its operations over the reversed word form.
+   */
+  private static final class Script {
+
+    private final byte[] operations;
+    private final int[] indexes;
+    private final char[] targets;
+    private final char[] characters;
+    /**
+     * The number of insertions.
+     */
+    private final int inserts;
+    /**
+     * Whether the script can not be parsed; these are applied as strings so
+     * that they fail in the same way.
+     */
+    private final boolean malformed;
+
+    private Script(final String permutations) {
+      final int length = permutations.length();
+      final byte[] ops = new byte[length];
+      final int[] idx = new int[length];
+      final char[] tgt = new char[length];
+      final char[] chars = new char[length];
+      int size = 0;
+      boolean failed = false;
+      int i = 0;
+      while (i < length) {
+        final char operation = permutations.charAt(i++);
+        final int required;
+        if (operation == 'R') {
+          required = 3;
+        } else if (operation == 'I') {
+          required = 2;
+        } else if (operation == 'D') {
+          required = 1;
+        } else {
+          // anything else, like the "O" of unchanged words, is skipped
+          continue;
+        }
+        if (i + required > length
+            || Character.digit(permutations.charAt(i), 10) < 0) {
+          failed = true;
+          break;
+        }
+        idx[size] = Character.digit(permutations.charAt(i), 10);
+        if (operation == 'R') {
+          ops[size] = REPLACE;
+          tgt[size] = permutations.charAt(i + 1);
+          chars[size] = permutations.charAt(i + 2);
+          i += 3;
+        } else if (operation == 'I') {
+          ops[size] = INSERT;
+          chars[size] = permutations.charAt(i + 1);
+          i += 2;
+        } else {
+          // the deleted character is not checked
+          ops[size] = DELETE;
+          i += 2;
+        }
+        size++;
+      }
+      this.malformed = failed;
+      this.operations = failed ? new byte[0] : Arrays.copyOf(ops, size);
+      this.indexes = Arrays.copyOf(idx, this.operations.length);
+      this.targets = Arrays.copyOf(tgt, this.operations.length);
+      this.characters = Arrays.copyOf(chars, this.operations.length);
+      int insertCount = 0;
+      for (final byte op : this.operations) {
+        if (op == INSERT) {
+          insertCount++;
+        }
+      }
+      this.inserts = insertCount;
+    }
+
+    /**
+     * Apply the operations to the reversed word form in a single char array.
+     */
+    private String apply(final String wordForm) {
+      if (hasSurrogates(wordForm)) {
+        return applyReversingCodePoints(wordForm);
+      }
+      final int length = wordForm.length();
+      final char[] lemma = new char[length + inserts];
+      for (int i = 0; i < length; i++) {
+        lemma[i] = wordForm.charAt(length - 1 - i);
+      }
+      int size = length;
+      for (int i = 0; i < operations.length; i++) {
+        final int index = indexes[i];
+        if (operations[i] == REPLACE) {
+          if (size <= index) {
+            return wordForm;
+          }
+          if (lemma[index] == targets[i]) {
+            lemma[index] = characters[i];
+          }
+        } else if (operations[i] == INSERT) {
+          if (size < index) {
+            return wordForm;
+          }
+          System.arraycopy(lemma, index, lemma, index + 1, size - index);
+          lemma[index] = characters[i];
+          size++;
+        } else {
+          if (size <= index) {
+            return wordForm;
+          }
+          System.arraycopy(lemma, index + 1, lemma, index, size - index - 1);
+          size--;
+        }
+      }
+      for (int i = 0, j = size - 1; i < j; i++, j--) {
+        final char c = lemma[i];
+        lemma[i] = lemma[j];
+        lemma[j] = c;
+      }
+      return new String(lemma, 0, size);
+    }
+
+    /**
+     * Apply the operations as the string scripts do, reversing the word form
+     * with its surrogate pairs kept in order.
+     */
+    private String applyReversingCodePoints(final String wordForm) {
+      final StringBuilder lemma = new StringBuilder(wordForm).reverse();
+      for (int i = 0; i < operations.length; i++) {
+        final int index = indexes[i];
+        if (operations[i] == REPLACE) {
+          if (lemma.length() <= index) {
+            return wordForm;
+          }
+          if (lemma.charAt(index) == targets[i]) {
+            lemma.setCharAt(index, characters[i]);
+          }
+        } else if (operations[i] == INSERT) {
+          if (lemma.length() < index) {
+            return wordForm;
+          }
+          lemma.insert(index, characters[i]);
+        } else {
+          if (lemma.length() <= index) {
+            return wordForm;
+          }
+          lemma.deleteCharAt(index);
+        }
+      }
+      return lemma.reverse().toString();
+    }
+  }
+
+  /**
+   * A word form, a script and the lemma they decode to.
+   */
+  private static final class Entry {
+
+    private final String wordForm;
+    private final String script;
+    private final String lemma;
+
+    private Entry(final String wordForm, final String script, final String lemma) {
+      this.wordForm = wordForm;
+      this.script = script;
+      this.lemma = lemma;
+    }
+  }
+}
@@ -49,6 +49,10 @@ public class Flags {
    */
   public static final int DEFAULT_BEAM_SIZE = 3;
   public static final int DEFAULT_FOLDS_VALUE = 10;
+  public static final int DEFAULT_FOLD_THREADS = 1;
+  public static final int DEFAULT_FOLD_MEMORY = 0;
+  public static final int DEFAULT_FEATURE_HASH_SIZE = 0;
+  public static final String DEFAULT_LEXICON_FORMAT = "text";
   public static final String DEFAULT_EVALUATE_MODEL = "off";
   public static final String DEFAULT_SEQUENCE_TYPES = "off";
   public static final String DEFAULT_LEXER = "off";
@@ -148,6 +152,41 @@ public class Flags {
     return beamsize;
   }
 
+  public static Integer getFoldThreads(TrainingParameters params) {
+    Integer foldThreads = null;
+    if (params.getSettings().get("FoldThreads") == null) {
+      foldThreads = Flags.DEFAULT_FOLD_THREADS;
+    } else {
+      foldThreads = Integer.parseInt(params.getSettings().get("FoldThreads"));
+    }
+    return foldThreads;
+  }
+
+  /**
+   * Get the estimated memory used by a cross validation fold.
+   * @param params the training parameters
+   * @return the memory in megabytes, 0 if not set
+   */
+  public static Integer getFoldMemory(TrainingParameters params) {
+    Integer foldMemory = null;
+    if (params.getSettings().get("FoldMemory") == null) {
+      foldMemory = Flags.DEFAULT_FOLD_MEMORY;
+    } else {
+      foldMemory = Integer.parseInt(params.getSettings().get("FoldMemory"));
+    }
+    return foldMemory;
+  }
+
+  public static Integer getFeatureHashSize(TrainingParameters params) {
+    Integer hashSize = null;
+    if (params.getSettings().get("FeatureHashSize") == null) {
+      hashSize = Flags.DEFAULT_FEATURE_HASH_SIZE;
+    } else {
+      hashSize = Integer.parseInt(params.getSettings().get("FeatureHashSize"));
+    }
+    return hashSize;
+  }
+
   public static String getSequenceCodec(TrainingParameters params) {
     String seqCodec = null;
     if (params.getSettings().get("SequenceCodec") == null) {
@@ -677,6 +716,26 @@ public class Flags {
     return !clarkFeatures.equalsIgnoreCase(Flags.DEFAULT_FEATURE_FLAG);
   }
 
+  /**
+   * Get the format in which the clustering lexicons and dictionaries are
+   * serialized in the model.
+   * @param params the training parameters
+   * @return 'text' or 'binary'
+   */
+  public static String getLexiconFormat(TrainingParameters params) {
+    String lexiconFormat = null;
+    if (params.getSettings().get("LexiconFormat") == null) {
+      lexiconFormat = Flags.DEFAULT_LEXICON_FORMAT;
+    } else {
+      lexiconFormat = params.getSettings().get("LexiconFormat");
+    }
+    return lexiconFormat;
+  }
+
+  public static boolean isBinaryLexicons(TrainingParameters params) {
+    return getLexiconFormat(params).equalsIgnoreCase("binary");
+  }
+
   public static boolean isBrownFeatures(TrainingParameters params) {
     String brownFeatures = getBrownFeatures(params);
     return !brownFeatures.equalsIgnoreCase(Flags.DEFAULT_FEATURE_FLAG);
@@ -36,6 +36,19 @@ import eus.ixa.ixa.pipe.ml.tok.Token;
  */
 public final class StringUtils {
 
+  /**
+   * The largest distance matrix kept for reuse by each thread.
+   */
+  private static final int MAX_SCRATCH_DISTANCES = 1 << 16;
+  /**
+   * The buffers used by each thread to compute the Shortest Edit Scripts.
+   */
+  private static final ThreadLocal<EditScriptScratch> editScriptScratch = new ThreadLocal<EditScriptScratch>() {
+    @Override
+    protected EditScriptScratch initialValue() {
+      return new EditScriptScratch();
+    }
+  };
   
   /**
    * Pattern to remove double bars from disjunct regex.
@@ -291,6 +304,89 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
         }   
     }
 }
+  /**
+   * Computes the Shortest Edit Script as {@link #levenshteinDistance(String, String)}
+   * and {@link #computeShortestEditScript(String, String, int[][], StringBuffer)}
+   * do, with the distances in a single array reused by the current thread.
+   * @param wordForm the token
+   * @param lemma the target lemma
+   * @return the shortest edit script
+   */
+  private static String computeShortestEditScript(String wordForm, String lemma) {
+    int wordLength = wordForm.length();
+    int lemmaLength = lemma.length();
+    // the matrix is all zeros, so the script is empty
+    if (wordLength == 0 || lemmaLength == 0) {
+      return "";
+    }
+    EditScriptScratch scratch = editScriptScratch.get();
+    int width = lemmaLength + 1;
+    int[] distance = scratch.getDistances((wordLength + 1) * width);
+    for (int i = 0; i <= wordLength; i++) {
+      distance[i * width] = i;
+    }
+    for (int j = 0; j <= lemmaLength; j++) {
+      distance[j] = j;
+    }
+    for (int i = 1; i <= wordLength; i++) {
+      char s_i = wordForm.charAt(i - 1);
+      int row = i * width;
+      int previousRow = row - width;
+      for (int j = 1; j <= lemmaLength; j++) {
+        int cost = s_i == lemma.charAt(j - 1) ? 0 : 1;
+        distance[row + j] = minimum(distance[previousRow + j] + 1, distance[row + j - 1] + 1, distance[previousRow + j - 1] + cost);
+      }
+    }
+    StringBuilder permutations = scratch.permutations;
+    permutations.setLength(0);
+    int i = wordLength;
+    int j = lemmaLength;
+    while (true) {
+      int current = distance[i * width + j];
+      if (current == 0) {
+        break;
+      }
+      if (j > 0 && i > 0 && distance[(i - 1) * width + j - 1] < current) {
+        permutations.append('R').append(i - 1).append(wordForm.charAt(i - 1)).append(lemma.charAt(j - 1));
+        i--;
+        j--;
+      } else if (j > 0 && distance[i * width + j - 1] < current) {
+        permutations.append('I').append(i).append(lemma.charAt(j - 1));
+        j--;
+      } else if (i > 0 && distance[(i - 1) * width + j] < current) {
+        permutations.append('D').append(i - 1).append(wordForm.charAt(i - 1));
+        i--;
+      } else if (i > 0 && j > 0 && distance[(i - 1) * width + j - 1] == current) {
+        i--;
+        j--;
+      } else if (i > 0 && distance[(i - 1) * width + j] == current) {
+        i--;
+      } else if (j > 0 && distance[i * width + j - 1] == current) {
+        j--;
+      }
+    }
+    return permutations.toString();
+  }
+
+  /**
+   * The buffers of a thread computing Shortest Edit Scripts.
+   */
+  private static final class EditScriptScratch {
+
+    private int[] distances = new int[256];
+    private final StringBuilder permutations = new StringBuilder();
+
+    private int[] getDistances(int size) {
+      if (size > MAX_SCRATCH_DISTANCES) {
+        return new int[size];
+      }
+      if (distances.length < size) {
+        distances = new int[Math.max(size, 2 * distances.length)];
+      }
+      return distances;
+    }
+  }
+
   /**
    * Read predicted SES by the lemmatizer model and apply the
    * permutations to obtain the lemma from the wordForm.
@@ -299,6 +395,16 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
    * @return the lemma
    */
   public static String decodeShortestEditScript(String wordForm, String permutations) {
+    return EditScriptDecoder.getDefault().decode(wordForm, permutations);
+  }
+
+  /**
+   * Apply the permutations of a SES to a wordForm, parsing the script.
+   * @param wordForm the wordForm
+   * @param permutations the permutations predicted by the lemmatizer model
+   * @return the lemma
+   */
+  static String applyShortestEditScript(String wordForm, String permutations) {
     
     StringBuffer lemma = new StringBuffer(wordForm).reverse();
     
@@ -370,14 +476,11 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
    * @return the shortest edit script
    */
   public static String getShortestEditScript(String wordForm, String lemma) {
-    String reversedWF = new StringBuffer(wordForm.toLowerCase()).reverse().toString();
-    String reversedLemma = new StringBuffer(lemma.toLowerCase()).reverse().toString();
-    StringBuffer permutations = new StringBuffer();
+    String reversedWF = new StringBuilder(wordForm.toLowerCase()).reverse().toString();
+    String reversedLemma = new StringBuilder(lemma.toLowerCase()).reverse().toString();
     String ses;
     if (!reversedWF.equals(reversedLemma)) {
-      int[][]levenDistance = StringUtils.levenshteinDistance(reversedWF, reversedLemma);
-      StringUtils.computeShortestEditScript(reversedWF, reversedLemma, levenDistance, permutations);
-      ses = permutations.toString();
+      ses = computeShortestEditScript(reversedWF, reversedLemma);
     } else {
       ses = "O";
     }
@@ -393,7 +496,7 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
   public static String[] decodeLemmas(String[] tokens, Span[] preds) {
     List<String> lemmas = new ArrayList<>();
     for (Span span : preds) {
-      String lemma = decodeShortestEditScript(span.getCoveredText(tokens).toLowerCase(), span.getType());
+      String lemma = decodeShortestEditScript(getCoveredWordForm(tokens, span), span.getType());
       //System.err.println("-> DEBUG: " + toks[i].toLowerCase() + " " + preds[i] + " " + lemma);
       if (lemma.length() == 0) {
         lemma = "_";
@@ -411,7 +514,7 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
    */
   public static void decodeLemmasToSpans(String[] tokens, Span[] preds) {
     for (Span span : preds) {
-      String lemma = decodeShortestEditScript(span.getCoveredText(tokens).toLowerCase(), span.getType());
+      String lemma = decodeShortestEditScript(getCoveredWordForm(tokens, span), span.getType());
       //System.err.println("-> DEBUG: " + toks[i].toLowerCase() + " " + preds[i] + " " + lemma);
       if (lemma.length() == 0) {
         lemma = "_";
@@ -420,6 +523,23 @@ public static void computeShortestEditScript(String wordForm, String lemma, int[
     }
   }
   
+  /**
+   * Get the lowercased text of a span, without building it when the span
+   * covers a single token.
+   * @param tokens the tokens in the sentence
+   * @param span the span
+   * @return the word form to be lemmatized
+   */
+  private static String getCoveredWordForm(String[] tokens, Span span) {
+    String coveredText;
+    if (span.getEnd() - span.getStart() == 1) {
+      coveredText = tokens[span.getStart()].trim();
+    } else {
+      coveredText = span.getCoveredText(tokens);
+    }
+    return coveredText.toLowerCase();
+  }
+
   public static String createDisjunctRegexFromList(final List<String> words) {
     final StringBuilder sb = new StringBuilder();
     for (final String word : words) {
@@ -0,0 +1,54 @@
+package eus.ixa.ixa.pipe.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.tok.Token;
+
+public class PipelineRunnerTest {
+
+    @Test
+    public void keepsInputOrder() {
+        Properties properties = new Properties();
+        properties.setProperty("language", "en");
+        List<String> texts = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j <= i % 7; j++) {
+                sb.append("Document ").append(i).append(" has sentence ").append(j)
+                        .append(". ");
+            }
+            texts.add(sb.toString());
+        }
+        List<PipelineRunner.Document> sequential = new PipelineRunner(properties, 1)
+                .process(texts);
+        PipelineRunner runner = new PipelineRunner(properties, 4, 3);
+        List<PipelineRunner.Document> parallel = runner.process(texts);
+
+        assertEquals(texts.size(), parallel.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i), parallel.get(i).getText());
+            assertEquals(i % 7 + 1, parallel.get(i).getTokens().size());
+            assertEquals(toString(sequential.get(i).getTokens()),
+                    toString(parallel.get(i).getTokens()));
+        }
+        assertEquals(texts.size(), runner.getStatistics().get(1).getDocuments());
+    }
+
+    private static String toString(List<List<Token>> sentences) {
+        StringBuilder sb = new StringBuilder();
+        for (List<Token> tokens : sentences) {
+            for (Token token : tokens) {
+                sb.append(token.getTokenValue()).append('|').append(token.startOffset())
+                        .append(' ');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
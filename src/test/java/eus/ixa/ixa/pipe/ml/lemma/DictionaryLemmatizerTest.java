@@ -0,0 +1,51 @@
+package eus.ixa.ixa.pipe.ml.lemma;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class DictionaryLemmatizerTest {
+
+    private static final String DICTIONARY = "houses\thouse\tNNS\n"
+            + "house\thouse\tNN\n" + "house\thouse\tVB\n" + "went\tgo\tVBD\n"
+            + "went\twend\tVBD\n" + "bB\tsecond\tNN\n" + "aa\tfirst\tNN\n";
+
+    private static DictionaryLemmatizer fromText() {
+        return new DictionaryLemmatizer(new ByteArrayInputStream(
+                DICTIONARY.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    private static void assertLemmas(DictionaryLemmatizer dictionary) {
+        assertEquals("house", dictionary.apply("Houses", "NNS"));
+        assertEquals("house", dictionary.apply("house", "VB"));
+        assertEquals("O", dictionary.apply("houses", "NN"));
+        assertEquals("O", dictionary.apply("houses", "JJ"));
+        // the last entry wins
+        assertEquals("wend", dictionary.apply("went", "VBD"));
+        // "aa" and "bB" have the same hash code, and words are lowercased
+        assertEquals("first", dictionary.apply("AA", "NN"));
+        assertEquals("O", dictionary.apply("bB", "NN"));
+        assertEquals(6, dictionary.getDictMap().size());
+    }
+
+    @Test
+    public void looksUpWordAndPostag() {
+        assertLemmas(fromText());
+    }
+
+    @Test
+    public void readsSerializedDictionary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DictionaryLemmatizer.DictionaryLemmatizerSerializer().serialize(
+                fromText(), out);
+        DictionaryLemmatizer dictionary = new DictionaryLemmatizer.DictionaryLemmatizerSerializer()
+                .create(new ByteArrayInputStream(out.toByteArray()));
+        assertLemmas(dictionary);
+        assertEquals(fromText().getDictMap(), dictionary.getDictMap());
+    }
+}
@@ -0,0 +1,315 @@
+package eus.ixa.ixa.pipe.ml.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.util.InvalidFormatException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClusterLexiconTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, String> entries() {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("house", "c1");
+        entries.put("ñandú", "c2");
+        entries.put("日本", "c3");
+        // supplementary plane characters, encoded in four UTF-8 bytes
+        entries.put("𝔘nicode", "c2");
+        entries.put("😀", "c4");
+        entries.put("", "c5");
+        return entries;
+    }
+
+    private static ByteArrayInputStream text(String text) {
+        return new ByteArrayInputStream(text.getBytes(UTF_8));
+    }
+
+    private static byte[] write(ClusterLexicon lexicon) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lexicon.write(out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameEntries(Map<String, String> expected,
+            ClusterLexicon lexicon) {
+        assertEquals(expected.size(), lexicon.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), lexicon.lookup(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void looksUpTokens() {
+        ClusterLexicon lexicon = new ClusterLexicon(entries());
+        assertSameEntries(entries(), lexicon);
+        assertNull(lexicon.lookup("House"));
+        assertNull(lexicon.lookup("hous"));
+        assertNull(lexicon.lookup("houses"));
+        assertNull(lexicon.lookup(" "));
+        ClusterLexicon empty = new ClusterLexicon(new HashMap<String, String>());
+        assertEquals(0, empty.size());
+        assertNull(empty.lookup("house"));
+    }
+
+    @Test
+    public void keepsLastClusterOfDuplicatedTokens() throws IOException {
+        ClarkCluster clark = new ClarkCluster(text("House 12 0.5\nhome 3 0.1\nhouse 7 0.2\n"));
+        assertEquals("7", clark.lookupToken("house"));
+        assertEquals(2, clark.getMap().size());
+        Word2VecCluster word2vec = new Word2VecCluster(text("house 1\nHOUSE 2\n"));
+        assertEquals("2", word2vec.lookupToken("house"));
+        assertEquals(1, word2vec.getMap().size());
+    }
+
+    @Test
+    public void mapViewIteratesInTokenOrder() throws IOException {
+        ClarkCluster clark = new ClarkCluster(text("zorro 1\nbanco 2\nárbol 3\nabeja 2\n"));
+        Map<String, String> map = clark.getMap();
+        assertEquals(4, map.size());
+        assertEquals(4, map.entrySet().size());
+        List<String> tokens = new ArrayList<String>(map.keySet());
+        assertEquals(Arrays.asList("abeja", "banco", "zorro", "árbol"), tokens);
+        List<String> clusters = new ArrayList<String>(map.values());
+        assertEquals(Arrays.asList("2", "2", "1", "3"), clusters);
+        assertEquals("2", map.get("banco"));
+        assertTrue(map.containsKey("árbol"));
+        assertFalse(map.containsKey("arbol"));
+        assertNull(map.get(1));
+        try {
+            map.put("casa", "4");
+            fail("the map view was modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void readsWrittenLexicon() throws IOException {
+        ClusterLexicon read = ClusterLexicon.read(new ByteArrayInputStream(
+                write(new ClusterLexicon(entries()))));
+        assertSameEntries(entries(), read);
+        assertEquals(new HashMap<String, String>(entries()),
+                new HashMap<String, String>(read.asMap()));
+    }
+
+    @Test
+    public void mapsLexiconFile() throws IOException {
+        File file = folder.newFile("lexicon.bin");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            new ClusterLexicon(entries()).write(out);
+        } finally {
+            out.close();
+        }
+        ClusterLexicon mapped = ClusterLexicon.map(file);
+        assertSameEntries(entries(), mapped);
+        assertNull(mapped.lookup("houses"));
+        assertEquals("c1", new BrownCluster(mapped).lookupToken("house"));
+    }
+
+    @Test
+    public void rejectsTruncatedAndTextFiles() throws IOException {
+        byte[] bytes = write(new ClusterLexicon(entries()));
+        File truncated = folder.newFile("truncated.bin");
+        OutputStream out = new FileOutputStream(truncated);
+        try {
+            out.write(bytes, 0, bytes.length - 1);
+        } finally {
+            out.close();
+        }
+        try {
+            ClusterLexicon.map(truncated);
+            fail("a truncated lexicon was mapped");
+        } catch (InvalidFormatException e) {
+            // expected
+        }
+        File textFile = folder.newFile("lexicon.txt");
+        out = new FileOutputStream(textFile);
+        try {
+            out.write("house c1 10\nhome c1 5\n".getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        try {
+            ClusterLexicon.map(textFile);
+            fail("a text lexicon was mapped");
+        } catch (InvalidFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void detectsBinaryWithoutConsumingTheStream() throws IOException {
+        BufferedInputStream binary = new BufferedInputStream(new ByteArrayInputStream(
+                write(new ClusterLexicon(entries()))));
+        assertTrue(ClusterLexicon.isBinary(binary));
+        assertSameEntries(entries(), ClusterLexicon.read(binary));
+
+        BufferedInputStream textStream = new BufferedInputStream(text("house c1 10\n"));
+        assertFalse(ClusterLexicon.isBinary(textStream));
+        assertEquals('h', textStream.read());
+        assertFalse(ClusterLexicon.isBinary(new BufferedInputStream(text("ab"))));
+        assertFalse(ClusterLexicon.isBinary(new BufferedInputStream(text(""))));
+    }
+
+    @Test
+    public void comparesNonAsciiTokensWithoutDecoding() throws IOException {
+        ClusterLexicon lexicon = ClusterLexicon.read(new ByteArrayInputStream(
+                write(new ClusterLexicon(entries()))));
+        assertEquals("c2", lexicon.lookup("ñandú"));
+        assertEquals("c3", lexicon.lookup("日本"));
+        assertEquals("c2", lexicon.lookup("𝔘nicode"));
+        assertEquals("c4", lexicon.lookup("😀"));
+        assertEquals("c5", lexicon.lookup(""));
+        assertNull(lexicon.lookup("nandu"));
+        assertNull(lexicon.lookup("ñand"));
+        assertNull(lexicon.lookup("日本語"));
+        assertNull(lexicon.lookup("𝔘nicod"));
+        assertNull(lexicon.lookup("😁"));
+        assertNull(lexicon.lookup("\ud83d"));
+    }
+
+    @Test
+    public void brownClusterRoundTrip() throws IOException {
+        BrownCluster.BrownClusterSerializer serializer = new BrownCluster.BrownClusterSerializer();
+        BrownCluster brown = serializer.create(text(
+                "0110\thouse\t12\n0111\thome\t2\nñandú\t10\n"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(brown, out);
+        // the text format is the default
+        assertEquals("house\t0110\nñandú\t10\n", new String(out.toByteArray(), UTF_8));
+        BrownCluster read = serializer.create(new ByteArrayInputStream(out.toByteArray()));
+        for (String token : Arrays.asList("house", "home", "ñandú", "casa")) {
+            assertEquals(brown.lookupToken(token), read.lookupToken(token));
+        }
+        assertEquals("0110", read.lookupToken("house"));
+        assertNull(read.lookupToken("home"));
+        assertEquals("10", read.lookupToken("ñandú"));
+    }
+
+    @Test
+    public void clarkClusterRoundTrip() throws IOException {
+        ClarkCluster.ClarkClusterSerializer serializer = new ClarkCluster.ClarkClusterSerializer();
+        ClarkCluster clark = serializer.create(text(
+                "House 12 0.5\nñandú 3 0.1\n😀 7\n"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(clark, out);
+        ClarkCluster read = serializer.create(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(clark.getMap(), read.getMap());
+        assertEquals("12", read.lookupToken("house"));
+        assertEquals("3", read.lookupToken("ñandú"));
+        assertEquals("7", read.lookupToken("😀"));
+    }
+
+    @Test
+    public void word2VecClusterRoundTrip() throws IOException {
+        Word2VecCluster.Word2VecClusterSerializer serializer = new Word2VecCluster.Word2VecClusterSerializer();
+        Word2VecCluster word2vec = serializer.create(text(
+                "House 12\n日本 3\nignored 1 2\n"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(word2vec, out);
+        Word2VecCluster read = serializer.create(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(word2vec.getMap(), read.getMap());
+        assertEquals(2, read.getMap().size());
+        assertEquals("3", read.lookupToken("日本"));
+        assertNull(read.lookupToken("ignored"));
+    }
+
+    @Test
+    public void binarySerializersWriteTheBinaryFormat() throws IOException {
+        BrownCluster.BinaryBrownClusterSerializer serializer =
+                new BrownCluster.BinaryBrownClusterSerializer();
+        BrownCluster brown = serializer.create(text("0110\thouse\t12\nñandú\t10\n"));
+        assertEquals(BrownCluster.BinaryBrownClusterSerializer.class,
+                brown.getArtifactSerializerClass());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        brown.serialize(out);
+        assertTrue(ClusterLexicon.isBinary(new BufferedInputStream(
+                new ByteArrayInputStream(out.toByteArray()))));
+        // the text serializer reads the binary format and writes the text one
+        BrownCluster text = new BrownCluster.BrownClusterSerializer().create(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(BrownCluster.BrownClusterSerializer.class, text.getArtifactSerializerClass());
+        assertEquals("0110", text.lookupToken("house"));
+        assertEquals("10", text.lookupToken("ñandú"));
+
+        Dictionary dictionary = new Dictionary.BinaryDictionarySerializer().create(
+                text("New York\tLOC\n"));
+        out = new ByteArrayOutputStream();
+        dictionary.serialize(out);
+        Dictionary read = new Dictionary.BinaryDictionarySerializer().create(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(Dictionary.BinaryDictionarySerializer.class,
+                read.getArtifactSerializerClass());
+        assertEquals(Arrays.asList("LOC-start", "LOC-cont"),
+                read.getBioDictionaryMatch(new String[] {"new", "York"}));
+    }
+
+    @Test
+    public void loadsTextAndBinaryFiles() throws IOException {
+        File textFile = folder.newFile("clark.txt");
+        OutputStream out = new FileOutputStream(textFile);
+        try {
+            out.write("House 12 0.5\nñandú 3 0.1\n".getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        ClarkCluster.ClarkClusterSerializer serializer = new ClarkCluster.ClarkClusterSerializer();
+        ClarkCluster clark = serializer.create(textFile);
+        assertEquals("12", clark.lookupToken("house"));
+
+        File binaryFile = folder.newFile("clark.bin");
+        out = new FileOutputStream(binaryFile);
+        try {
+            new ClarkCluster.BinaryClarkClusterSerializer().serialize(clark, out);
+        } finally {
+            out.close();
+        }
+        ClarkCluster mapped = serializer.create(binaryFile);
+        assertEquals(clark.getMap(), mapped.getMap());
+        assertEquals(ClarkCluster.ClarkClusterSerializer.class, mapped.getArtifactSerializerClass());
+        assertEquals(ClarkCluster.BinaryClarkClusterSerializer.class,
+                new ClarkCluster.BinaryClarkClusterSerializer().create(binaryFile)
+                        .getArtifactSerializerClass());
+    }
+
+    @Test
+    public void dictionaryRoundTrip() throws IOException {
+        Dictionary.DictionarySerializer serializer = new Dictionary.DictionarySerializer();
+        Dictionary dictionary = serializer.create(text(
+                "New York\tLOC\nÑandú\tANIMAL\n"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(dictionary, out);
+        Dictionary read = serializer.create(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(dictionary.getDict(), read.getDict());
+        assertEquals("ANIMAL", read.lookup("ñandú"));
+        assertEquals(Arrays.asList("LOC-start", "LOC-cont", "ANIMAL-start"),
+                read.getBioDictionaryMatch(new String[] {"new", "York", "Ñandú"}));
+    }
+}
@@ -0,0 +1,70 @@
+package eus.ixa.ixa.pipe.ml.resources;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DictionaryTest {
+
+    private static Dictionary dictionary = null;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        String entries = "New York\tLOC\nNew York City\tLOC\nYork\tPER\n"
+                + "Bank of Spain\tORG\n";
+        dictionary = new Dictionary(new ByteArrayInputStream(
+                entries.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void bilouLongestMatch() {
+        List<String> entities = dictionary.getBilouDictionaryMatch(
+                new String[] {"the", "new", "York", "City", "Bank", "of", "Spain", "York"});
+        assertEquals(Arrays.asList("other", "LOC-start", "LOC-cont", "LOC-last",
+                "ORG-start", "ORG-cont", "ORG-last", "PER-unit"), entities);
+    }
+
+    @Test
+    public void bioLongestMatch() {
+        List<String> entities = dictionary.getBioDictionaryMatch(
+                new String[] {"New", "York", "Bank", "of", "York"});
+        assertEquals(Arrays.asList("LOC-start", "LOC-cont", "other", "other", "PER-start"),
+                entities);
+    }
+
+    @Test
+    public void longSentence() {
+        String[] tokens = new String[5000];
+        for (int i = 0; i < tokens.length; i += 2) {
+            tokens[i] = "New";
+            tokens[i + 1] = "York";
+        }
+        List<String> entities = dictionary.getBilouDictionaryMatch(tokens);
+        assertEquals(tokens.length, entities.size());
+        assertEquals("LOC-start", entities.get(tokens.length - 2));
+        assertEquals("LOC-last", entities.get(tokens.length - 1));
+    }
+
+    @Test
+    public void binaryDictionaryMatchesSameEntries() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dictionary.serialize(out);
+        Dictionary binary = new Dictionary.DictionarySerializer().create(
+                new ByteArrayInputStream(out.toByteArray()));
+        String[] tokens = {"the", "new", "York", "City", "Bank", "of", "Spain",
+            "York", "new", "York", "bank"};
+        assertEquals(dictionary.getBilouDictionaryMatch(tokens),
+                binary.getBilouDictionaryMatch(tokens));
+        assertEquals(dictionary.getBioDictionaryMatch(tokens),
+                binary.getBioDictionaryMatch(tokens));
+        assertEquals("PER", binary.lookup("york"));
+    }
+}
@@ -0,0 +1,62 @@
+package eus.ixa.ixa.pipe.ml.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.sequence.BilouCodec;
+import eus.ixa.ixa.pipe.ml.sequence.BioCodec;
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+public class MFSResourceTest {
+
+    private static final String LEXICON = "house#n\t12#noun.artifact\n"
+            + "house#n\t1092#noun.group\n" + "house#n\t1092#noun.artifact\n"
+            + "new_york#n\t40#noun.location\n" + "run#v\t3#verb.motion\n";
+
+    private static MFSResource load() throws IOException {
+        return new MFSResource(new ByteArrayInputStream(
+                LEXICON.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    private static Span[] tags(String... types) {
+        Span[] spans = new Span[types.length];
+        for (int i = 0; i < types.length; i++) {
+            spans[i] = new Span(i, i + 1, types[i]);
+        }
+        return spans;
+    }
+
+    @Test
+    public void getsMostFrequentSense() throws IOException {
+        MFSResource resource = load();
+        // ties are broken alphabetically
+        assertEquals("noun.artifact", resource.getFirstSense("house#n"));
+        assertEquals("noun.artifact", resource.getMFS(resource.getOrderedMap("house#n")));
+        assertNull(resource.getFirstSense("house#v"));
+    }
+
+    @Test
+    public void tagsMultiwordSpans() throws IOException {
+        MFSResource resource = load();
+        List<String> lemmas = Arrays.asList("run", "to", "New", "York", "house");
+        Span[] posTags = tags("VB", "TO", "NNP", "NNP", "NN");
+        assertEquals(Arrays.asList("verb.motion-" + BioCodec.START,
+                BioCodec.OTHER, "noun.location-" + BioCodec.START,
+                "noun.location-" + BioCodec.CONTINUE,
+                "noun.artifact-" + BioCodec.START),
+                resource.getFirstSenseBio(lemmas, posTags));
+        assertEquals(Arrays.asList("verb.motion-" + BilouCodec.UNIT,
+                BilouCodec.OTHER, "noun.location-" + BilouCodec.START,
+                "noun.location-" + BilouCodec.LAST,
+                "noun.artifact-" + BilouCodec.UNIT),
+                resource.getFirstSenseBilou(lemmas, posTags));
+    }
+}
@@ -0,0 +1,102 @@
+package eus.ixa.ixa.pipe.ml.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.lemma.MorfologikLemmatizer;
+import eus.ixa.ixa.pipe.ml.pos.MorfologikTagger;
+
+public class MorfologikLookupTest {
+
+    /**
+     * A dictionary with the entries houses+B+NNS, left+A+JJ, left+A+VBD,
+     * left+Cave+VBD, saw+A+NN, saw+Cee+VBD and ñandúes+C+NNS.
+     */
+    private static final URL DICTIONARY = MorfologikLookupTest.class
+            .getResource("/morfologik-test.dict");
+
+    @Test
+    public void looksUpAnalysesInDictionaryOrder() throws IOException {
+        MorfologikLookup lookup = new MorfologikLookup(DICTIONARY, 10);
+        MorfologikLookup.Analyses analyses = lookup.lookup("left");
+        assertEquals(3, analyses.size());
+        assertEquals("JJ", analyses.getTag(0));
+        assertEquals("left", analyses.getLemma(0));
+        assertEquals("VBD", analyses.getTag(1));
+        assertEquals("left", analyses.getLemma(1));
+        assertEquals("VBD", analyses.getTag(2));
+        assertEquals("leave", analyses.getLemma(2));
+        // the last analysis with the postag wins
+        assertEquals("leave", analyses.getLemma("VBD"));
+        assertEquals(null, analyses.getLemma("NN"));
+        assertEquals("ñandú", lookup.lookup("ñandúes").getLemma("NNS"));
+        assertEquals(0, lookup.lookup("Left").size());
+        assertEquals(0, lookup.lookup("houses+B").size());
+        // the analyses are cached
+        assertSame(analyses, lookup.lookup("left"));
+    }
+
+    @Test
+    public void boundsTheCache() throws IOException {
+        MorfologikLookup lookup = new MorfologikLookup(DICTIONARY, 2);
+        MorfologikLookup.Analyses left = lookup.lookup("left");
+        lookup.lookup("saw");
+        assertEquals(2, lookup.getCacheSize());
+        // the words not in the dictionary are cached too
+        lookup.lookup("casa");
+        assertEquals(2, lookup.getCacheSize());
+        // the least recently used word was removed
+        MorfologikLookup.Analyses reloaded = lookup.lookup("left");
+        assertEquals(2, lookup.getCacheSize());
+        assertNotSame(left, reloaded);
+        assertEquals(left.getLemma("VBD"), reloaded.getLemma("VBD"));
+
+        MorfologikLookup uncached = new MorfologikLookup(DICTIONARY, 0);
+        assertEquals("see", uncached.lookup("saw").getLemma("VBD"));
+        assertEquals(0, uncached.getCacheSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeCacheSize() throws IOException {
+        new MorfologikLookup(DICTIONARY, -1);
+    }
+
+    @Test
+    public void lemmatizesWords() throws IOException {
+        MorfologikLemmatizer lemmatizer = new MorfologikLemmatizer(DICTIONARY, 2);
+        assertEquals("house", lemmatizer.apply("Houses", "NNS"));
+        assertEquals("leave", lemmatizer.apply("left", "VBD"));
+        assertEquals("left", lemmatizer.apply("LEFT", "JJ"));
+        assertEquals("O", lemmatizer.apply("houses", "NN"));
+        assertEquals("O", lemmatizer.apply("casa", "NN"));
+        assertEquals(Arrays.asList("see", "saw", "O"), Arrays.asList(lemmatizer.lemmatize(
+                new String[] {"saw", "saw", "saw"}, new String[] {"VBD", "NN", "JJ"})));
+
+        List<String> posLemmas = new ArrayList<String>();
+        lemmatizer.getAllPosLemmas("left", posLemmas);
+        lemmatizer.getAllPosLemmas("casa", posLemmas);
+        lemmatizer.getAllPosLemmas("saw", posLemmas);
+        assertEquals(Arrays.asList("JJ#left", "VBD#left", "VBD#leave", "NN#saw", "VBD#see"),
+                posLemmas);
+    }
+
+    @Test
+    public void tagsWithTheLastAnalysis() throws IOException {
+        MorfologikTagger tagger = new MorfologikTagger(DICTIONARY, "en", 2);
+        assertEquals("NNS", tagger.tag("Houses", "NN"));
+        assertEquals("VBD", tagger.tag("left", "NN"));
+        assertEquals("VBD", tagger.tag("SAW", "NN"));
+        assertEquals("NNS", tagger.tag("ñandúes", "NN"));
+        // the words not in the dictionary keep their postag
+        assertEquals("NN", tagger.tag("casa", "NN"));
+    }
+}
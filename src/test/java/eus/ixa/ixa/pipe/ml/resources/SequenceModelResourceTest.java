@@ -0,0 +1,209 @@
+package eus.ixa.ixa.pipe.ml.resources;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.sequence.ModelRegistry;
+import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerFixtures;
+import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerME;
+import eus.ixa.ixa.pipe.ml.sequence.SequenceLabelerModel;
+import eus.ixa.ixa.pipe.ml.sequence.SequenceSample;
+
+public class SequenceModelResourceTest {
+
+    private static final String GENERATOR = "eus.ixa.ixa.pipe.ml.features.POSTagModelFeatureGenerator";
+    private static final String DESCRIPTOR = "<generators><cache><generators>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><token/></window>"
+            + "<custom class=\"" + GENERATOR + "\" model=\"posAbin\" range=\"pos,posclass\"/>"
+            + "<custom class=\"" + GENERATOR + "\" model=\"posBbin\" range=\"pos,posclass\"/>"
+            + "</generators></cache></generators>";
+
+    private static byte[] posModel;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        posModel = serialize(SequenceLabelerFixtures.trainPos());
+    }
+
+    private static byte[] serialize(SequenceLabelerModel model) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.serialize(out);
+        return out.toByteArray();
+    }
+
+    private static Map<String, byte[]> readEntries(byte[] model) throws IOException {
+        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(model));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = zip.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            entries.put(entry.getName(), bytes.toByteArray());
+        }
+        return entries;
+    }
+
+    private static boolean isReference(byte[] artifact) {
+        return new String(artifact, StandardCharsets.UTF_8).startsWith(
+                "SequenceModelResource reference ");
+    }
+
+    @Test
+    public void sharesResourcesWithTheSameModel() throws IOException {
+        SequenceModelResource first = SequenceModelResource.getInstance(
+                new ByteArrayInputStream(posModel));
+        SequenceModelResource second = SequenceModelResource.getInstance(
+                new ByteArrayInputStream(posModel.clone()));
+        assertSame(first, second);
+        // the model is in use in the registry while the resource is reachable
+        assertTrue(ModelRegistry.getDefault().contains("sha1:" + first.getDigest()));
+    }
+
+    @Test
+    public void storesAndLoadsSharedModelOnce() throws IOException {
+        SequenceModelResource posResource = SequenceModelResource.getInstance(
+                new ByteArrayInputStream(posModel));
+        Map<String, Object> resources = new HashMap<String, Object>();
+        resources.put("posAbin", posResource);
+        resources.put("posBbin", posResource);
+        List<SequenceSample> samples = SequenceLabelerFixtures.samples(200, 11, 20);
+        SequenceLabelerModel model = SequenceLabelerFixtures.train(samples,
+                SequenceLabelerFixtures.trainingParameters(),
+                SequenceLabelerFixtures.factory(DESCRIPTOR, resources));
+
+        byte[] serialized = serialize(model);
+        Map<String, byte[]> entries = readEntries(serialized);
+        byte[] posA = entries.get("posAbin");
+        byte[] posB = entries.get("posBbin");
+        assertNotNull(posA);
+        assertNotNull(posB);
+        // one full copy of the model and one reference to it
+        assertTrue(isReference(posA) != isReference(posB));
+        byte[] reference = isReference(posA) ? posA : posB;
+        assertTrue(reference.length < 100);
+
+        SequenceLabelerModel reloaded = new SequenceLabelerModel(
+                new ByteArrayInputStream(serialized));
+        Object reloadedA = reloaded.getArtifact("posAbin");
+        assertTrue(reloadedA instanceof SequenceModelResource);
+        assertSame(reloadedA, reloaded.getArtifact("posBbin"));
+
+        SequenceLabelerME tagger = new SequenceLabelerME(model);
+        SequenceLabelerME reloadedTagger = new SequenceLabelerME(reloaded);
+        for (SequenceSample sample : samples.subList(0, 20)) {
+            assertArrayEquals(tagger.tag(sample.getTokens()),
+                    reloadedTagger.tag(sample.getTokens()));
+        }
+    }
+
+    private static String sha1(byte[] bytes) throws NoSuchAlgorithmException {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void resolvesReferencesLoadedBeforeTheirModel() throws Exception {
+        // a model of its own, not loaded by the other tests
+        byte[] model = serialize(SequenceLabelerFixtures.train(
+                SequenceLabelerFixtures.samples(80, 23, 0),
+                SequenceLabelerFixtures.trainingParameters(),
+                SequenceLabelerFixtures.factory(SequenceLabelerFixtures.DESCRIPTOR, 0)));
+        String digest = sha1(model);
+        assertFalse(SequenceModelResource.isShared(digest));
+        SequenceModelResource reference = SequenceModelResource.getInstance(
+                new ByteArrayInputStream(("SequenceModelResource reference " + digest)
+                        .getBytes(StandardCharsets.UTF_8)));
+        SequenceModelResource resource = SequenceModelResource.getInstance(
+                new ByteArrayInputStream(model));
+        assertEquals(digest, resource.getDigest());
+        assertEquals(digest, reference.getDigest());
+        String[] tokens = SequenceLabelerFixtures.samples(1, 29, 0).get(0).getTokens();
+        assertArrayEquals(resource.seqToSpans(tokens), reference.seqToSpans(tokens));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reference.serialize(out);
+        // the first resource written in a stream writes the whole model
+        assertFalse(isReference(out.toByteArray()));
+        assertTrue(out.size() > 100);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsToUseMissingReferences() throws IOException {
+        SequenceModelResource reference = SequenceModelResource.getInstance(
+                new ByteArrayInputStream("SequenceModelResource reference 0123456789abcdef"
+                        .getBytes(StandardCharsets.UTF_8)));
+        reference.seqToSpans(new String[] {"a"});
+    }
+
+    @Test
+    public void removesCollectedResources() throws Exception {
+        // a model of its own, not shared with the other tests
+        byte[] model = serialize(SequenceLabelerFixtures.train(
+                SequenceLabelerFixtures.samples(100, 5, 0),
+                SequenceLabelerFixtures.trainingParameters(),
+                SequenceLabelerFixtures.factory(SequenceLabelerFixtures.DESCRIPTOR, 0)));
+        SequenceModelResource resource = SequenceModelResource.getInstance(
+                new ByteArrayInputStream(model));
+        String digest = resource.getDigest();
+        String key = "sha1:" + digest;
+        assertTrue(SequenceModelResource.isShared(digest));
+        WeakReference<SequenceModelResource> collected = new WeakReference<SequenceModelResource>(
+                resource);
+        resource = null;
+        List<byte[]> garbage = new ArrayList<byte[]>();
+        for (int i = 0; i < 50 && collected.get() != null; i++) {
+            garbage.add(new byte[1 << 20]);
+            System.gc();
+            garbage.clear();
+        }
+        Assume.assumeTrue(collected.get() == null);
+
+        // the collected resources are removed when the next one is loaded,
+        // once the reference has been enqueued
+        for (int i = 0; i < 100 && SequenceModelResource.isShared(digest); i++) {
+            SequenceModelResource.getInstance(new ByteArrayInputStream(posModel));
+            if (SequenceModelResource.isShared(digest)) {
+                Thread.sleep(50);
+            }
+        }
+        assertFalse(SequenceModelResource.isShared(digest));
+        ModelRegistry registry = ModelRegistry.getDefault();
+        long budget = registry.getMemoryBudget();
+        try {
+            // the model is no longer in use, so it can be evicted
+            registry.setMemoryBudget(0);
+            assertFalse(registry.contains(key));
+        } finally {
+            registry.setMemoryBudget(budget);
+        }
+        assertEquals(budget, registry.getMemoryBudget());
+    }
+}
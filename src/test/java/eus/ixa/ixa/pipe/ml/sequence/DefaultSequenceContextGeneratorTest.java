@@ -0,0 +1,195 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import opennlp.tools.ml.BeamSearch;
+import opennlp.tools.util.TrainingParameters;
+
+import opennlp.tools.util.InvalidFormatException;
+import opennlp.tools.util.featuregen.CustomFeatureGenerator;
+import opennlp.tools.util.featuregen.FeatureGeneratorResourceProvider;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.features.OutcomeDependentFeatureGenerator;
+
+public class DefaultSequenceContextGeneratorTest {
+
+    private static final String[] OUTCOMES = {"O", "PER-start", "PER-cont", "LOC-unit"};
+
+    /**
+     * Uses the previous outcome, as the supersense feature generator does.
+     */
+    public static class PreviousOutcomeFeatureGenerator extends CustomFeatureGenerator
+            implements OutcomeDependentFeatureGenerator {
+
+        private static final AtomicInteger calls = new AtomicInteger();
+
+        public void createFeatures(List<String> features, String[] tokens, int index,
+                String[] previousOutcomes) {
+            calls.incrementAndGet();
+            if (index > 0 && previousOutcomes != null) {
+                features.add("prevLabel=" + previousOutcomes[index - 1] + "," + tokens[index]);
+            }
+        }
+
+        public void updateAdaptiveData(String[] tokens, String[] outcomes) {
+        }
+
+        public void clearAdaptiveData() {
+        }
+
+        public void init(Map<String, String> properties,
+                FeatureGeneratorResourceProvider resourceProvider) throws InvalidFormatException {
+        }
+    }
+
+    /**
+     * Counts the calls to a generator which does not use the previous outcomes.
+     */
+    public static class CountingFeatureGenerator extends CustomFeatureGenerator {
+
+        private static final AtomicInteger calls = new AtomicInteger();
+
+        public void createFeatures(List<String> features, String[] tokens, int index,
+                String[] previousOutcomes) {
+            calls.incrementAndGet();
+            features.add("count=" + tokens[index]);
+        }
+
+        public void updateAdaptiveData(String[] tokens, String[] outcomes) {
+        }
+
+        public void clearAdaptiveData() {
+        }
+
+        public void init(Map<String, String> properties,
+                FeatureGeneratorResourceProvider resourceProvider) throws InvalidFormatException {
+        }
+    }
+
+    /**
+     * The generator whose features are cached and the adaptive data it was
+     * given, to replay it to freshly built generators.
+     */
+    private static class CachedGenerator {
+
+        private final SequenceLabelerFactory factory;
+        private final SequenceContextGenerator generator;
+        private final List<String[][]> updates = new ArrayList<String[][]>();
+
+        CachedGenerator(String descriptor, int featureHashSize) throws IOException {
+            factory = SequenceLabelerFixtures.factory(descriptor, featureHashSize);
+            generator = factory.createContextGenerator();
+        }
+
+        void updateAdaptiveData(String[] tokens, String[] outcomes) {
+            generator.updateAdaptiveData(tokens, outcomes);
+            updates.add(new String[][] {tokens.clone(), outcomes.clone()});
+        }
+
+        void clearAdaptiveData() {
+            generator.clearAdaptiveData();
+            updates.clear();
+        }
+
+        void assertFreshContext(int index, String[] tokens, String[] preds) {
+            SequenceContextGenerator fresh = factory.createContextGenerator();
+            for (String[][] update : updates) {
+                fresh.updateAdaptiveData(update[0], update[1]);
+            }
+            assertArrayEquals(fresh.getContext(index, tokens.clone(), preds, null),
+                    generator.getContext(index, tokens, preds, null));
+        }
+    }
+
+    /**
+     * Ask for the contexts of a sentence as the beam search does, for several
+     * hypotheses of the previous outcomes at every token.
+     */
+    private static String[] tagWithBeam(CachedGenerator generator, String[] tokens,
+            Random random) {
+        List<String[]> hypotheses = new ArrayList<String[]>();
+        hypotheses.add(new String[0]);
+        for (int i = 0; i < tokens.length; i++) {
+            List<String[]> next = new ArrayList<String[]>();
+            for (String[] hypothesis : hypotheses) {
+                generator.assertFreshContext(i, tokens, hypothesis);
+                for (int k = 0; k < 2; k++) {
+                    String[] extended = new String[i + 1];
+                    System.arraycopy(hypothesis, 0, extended, 0, i);
+                    extended[i] = OUTCOMES[random.nextInt(OUTCOMES.length)];
+                    next.add(extended);
+                }
+            }
+            hypotheses = next.subList(0, Math.min(3, next.size()));
+        }
+        return hypotheses.get(0);
+    }
+
+    private static void assertCacheIsTransparent(String descriptor, int featureHashSize)
+            throws IOException {
+        CachedGenerator generator = new CachedGenerator(descriptor, featureHashSize);
+        Random random = new Random(3);
+        List<SequenceSample> samples = SequenceLabelerFixtures.samples(40, 5, 10);
+        for (SequenceSample sample : samples) {
+            if (sample.isClearAdaptiveDataSet()) {
+                generator.clearAdaptiveData();
+            }
+            String[] tokens = sample.getTokens();
+            // the same tokens array is tagged again after its adaptive update
+            for (int pass = 0; pass < 2; pass++) {
+                String[] outcomes = tagWithBeam(generator, tokens, random);
+                generator.updateAdaptiveData(tokens, outcomes);
+            }
+        }
+        assertTrue(generator.updates.size() > 0);
+    }
+
+    @Test
+    public void cachedContextsEqualFreshOnes() throws IOException {
+        assertCacheIsTransparent(SequenceLabelerFixtures.DESCRIPTOR, 0);
+    }
+
+    @Test
+    public void cachedHashedContextsEqualFreshOnes() throws IOException {
+        assertCacheIsTransparent(SequenceLabelerFixtures.DESCRIPTOR, 128);
+    }
+
+    @Test
+    public void cachedContextsFollowThePreviousOutcome() throws IOException {
+        assertCacheIsTransparent("<generators>"
+                + "<window prevLength=\"2\" nextLength=\"2\"><token/></window>"
+                + "<prevmap/><custom class=\"" + PreviousOutcomeFeatureGenerator.class.getName()
+                + "\"/></generators>", 0);
+    }
+
+    @Test
+    public void computesOutcomeIndependentFeaturesOncePerToken() throws IOException {
+        String descriptor = SequenceLabelerFixtures.DESCRIPTOR.replace("<bigram/>",
+                "<bigram/><custom class=\"" + CountingFeatureGenerator.class.getName() + "\"/>"
+                + "<custom class=\"" + PreviousOutcomeFeatureGenerator.class.getName() + "\"/>");
+        TrainingParameters params = SequenceLabelerFixtures.trainingParameters();
+        params.put(BeamSearch.BEAM_SIZE_PARAMETER, "3");
+        SequenceLabelerME tagger = new SequenceLabelerME(SequenceLabelerFixtures.train(
+                SequenceLabelerFixtures.samples(100, 3, 10), params,
+                SequenceLabelerFixtures.factory(descriptor, 0)));
+        String[] tokens = {"John", "lives", "in", "Paris", "and", "Mary", "went", "to",
+            "London", "."};
+        CountingFeatureGenerator.calls.set(0);
+        PreviousOutcomeFeatureGenerator.calls.set(0);
+        tagger.tag(tokens);
+        assertEquals(tokens.length, CountingFeatureGenerator.calls.get());
+        // the outcome dependent features are computed for every hypothesis
+        assertTrue(PreviousOutcomeFeatureGenerator.calls.get() >= 1 + 3 * (tokens.length - 1));
+    }
+}
@@ -0,0 +1,138 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ModelRegistryTest {
+
+    private static ModelRegistry.ModelLoader counting(final AtomicInteger loads) {
+        return new ModelRegistry.ModelLoader() {
+            public SequenceLabelerModel load() throws IOException {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedIdleModels() throws IOException {
+        ModelRegistry registry = new ModelRegistry(250);
+        AtomicInteger loads = new AtomicInteger();
+        ModelRegistry.Handle a = registry.acquire("a", 100, counting(loads));
+        ModelRegistry.Handle b = registry.acquire("b", 100, counting(loads));
+        a.close();
+        b.close();
+        // a was used less recently than b
+        registry.acquire("c", 100, counting(loads)).close();
+        assertFalse(registry.contains("a"));
+        assertTrue(registry.contains("b"));
+        assertTrue(registry.contains("c"));
+        assertEquals(200, registry.getMemoryUsed());
+        assertEquals(1, registry.getEvictions());
+
+        registry.acquire("b", 100, counting(loads)).close();
+        assertEquals(3, loads.get());
+        assertEquals(1, registry.getHits());
+        assertEquals(100, registry.getModelSize("b"));
+    }
+
+    @Test
+    public void keepsModelsInUse() throws IOException {
+        ModelRegistry registry = new ModelRegistry(0);
+        AtomicInteger loads = new AtomicInteger();
+        ModelRegistry.Handle first = registry.acquire("a", 100, counting(loads));
+        ModelRegistry.Handle second = registry.acquire("a", 100, counting(loads));
+        first.close();
+        first.close();
+        assertTrue(registry.contains("a"));
+        second.close();
+        assertFalse(registry.contains("a"));
+        assertEquals(0, registry.getMemoryUsed());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void loadsOnceConcurrently() throws Exception {
+        final ModelRegistry registry = new ModelRegistry(Long.MAX_VALUE);
+        final AtomicInteger loads = new AtomicInteger();
+        final ModelRegistry.ModelLoader slow = new ModelRegistry.ModelLoader() {
+            public SequenceLabelerModel load() throws IOException {
+                loads.incrementAndGet();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return null;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ModelRegistry.Handle>> handles = new ArrayList<Future<ModelRegistry.Handle>>();
+            for (int i = 0; i < 16; i++) {
+                handles.add(executor.submit(new Callable<ModelRegistry.Handle>() {
+                    public ModelRegistry.Handle call() throws IOException {
+                        return registry.acquire("a", 10, slow);
+                    }
+                }));
+            }
+            for (Future<ModelRegistry.Handle> handle : handles) {
+                handle.get().close();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(15, registry.getHits());
+    }
+
+    @Test
+    public void readsTheDefaultBudgetInMegabytes() {
+        assertEquals(256, ModelRegistry.parseMemoryBudget(null, 1024));
+        assertEquals(3L << 20, ModelRegistry.parseMemoryBudget(" 3 ", 1024));
+        assertEquals(0, ModelRegistry.parseMemoryBudget("0", 1024));
+        assertEquals(Long.MAX_VALUE, ModelRegistry.parseMemoryBudget(
+                Long.toString(Long.MAX_VALUE), 1024));
+        for (String invalid : new String[] {"-1", "1g"}) {
+            try {
+                ModelRegistry.parseMemoryBudget(invalid, 1024);
+                fail(invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void retriesFailedLoads() throws IOException {
+        ModelRegistry registry = new ModelRegistry(Long.MAX_VALUE);
+        try {
+            registry.acquire("a", 10, new ModelRegistry.ModelLoader() {
+                public SequenceLabelerModel load() throws IOException {
+                    throw new IOException("broken");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertFalse(registry.contains("a"));
+        AtomicInteger loads = new AtomicInteger();
+        registry.acquire("a", 10, counting(loads)).close();
+        assertEquals(1, loads.get());
+        assertEquals(10, registry.getMemoryUsed());
+    }
+}
@@ -0,0 +1,88 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.ObjectStream;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+public class ParallelSequenceLabelerEventStreamTest {
+
+    private static final String DESCRIPTOR = "<generators><cache><generators>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><tokenclass/></window>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><token/></window>"
+            + "<definition/><prevmap/><bigram/></generators></cache></generators>";
+
+    private static List<SequenceSample> samples(int documentRate) {
+        Random random = new Random(3);
+        String[] words = {"John", "lives", "in", "Paris", ".", "Mary", "went",
+                "London", "Smith", "Berlin", "the", "a"};
+        List<SequenceSample> samples = new ArrayList<SequenceSample>();
+        for (int i = 0; i < 1000; i++) {
+            String[] tokens = new String[1 + random.nextInt(12)];
+            List<Span> spans = new ArrayList<Span>();
+            for (int j = 0; j < tokens.length; j++) {
+                tokens[j] = words[random.nextInt(words.length)];
+                if (Character.isUpperCase(tokens[j].charAt(0))) {
+                    spans.add(new Span(j, j + 1, random.nextBoolean() ? "PER" : "LOC"));
+                }
+            }
+            samples.add(new SequenceSample(tokens, spans.toArray(new Span[spans.size()]),
+                    documentRate > 0 && random.nextInt(documentRate) == 0));
+        }
+        return samples;
+    }
+
+    private static void assertSequentialEvents(List<SequenceSample> samples,
+            int queueSize, int maxDocumentSize) throws IOException {
+        SequenceLabelerFactory factory = new SequenceLabelerFactory(
+                DESCRIPTOR.getBytes("UTF-8"), new HashMap<String, Object>(),
+                new BilouCodec(), 4096);
+        ObjectStream<Event> parallel = new ParallelSequenceLabelerEventStream(
+                new CollectionObjectStream<SequenceSample>(samples), factory, 4,
+                queueSize, maxDocumentSize);
+
+        // the events are generated again after a reset
+        for (int pass = 0; pass < 2; pass++) {
+            ObjectStream<Event> sequential = new SequenceLabelerEventStream(
+                    new CollectionObjectStream<SequenceSample>(samples), null,
+                    factory.createContextGenerator(), factory.createSequenceCodec());
+            Event event;
+            while ((event = sequential.read()) != null) {
+                assertEquals(event.toString(), parallel.read().toString());
+            }
+            assertNull(parallel.read());
+            parallel.reset();
+        }
+        parallel.close();
+    }
+
+    @Test
+    public void generatesSequentialEvents() throws IOException {
+        assertSequentialEvents(samples(20), 3,
+                ParallelSequenceLabelerEventStream.DEFAULT_DOCUMENT_SIZE);
+    }
+
+    @Test
+    public void streamsLongDocuments() throws IOException {
+        // most documents are longer than the maximum document size
+        assertSequentialEvents(samples(20), 3, 8);
+        assertSequentialEvents(samples(20), 1, 1);
+    }
+
+    @Test
+    public void streamsCorpusWithoutDocuments() throws IOException {
+        assertSequentialEvents(samples(0), 3, 50);
+    }
+}
@@ -0,0 +1,78 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.eval.FMeasure;
+
+import org.junit.Test;
+
+public class SequenceLabelerCrossValidatorTest {
+
+    /**
+     * Records the calls to the listener.
+     */
+    private static class RecordingMonitor implements SequenceLabelerEvaluationMonitor {
+
+        private final List<String> calls = new ArrayList<String>();
+
+        public void correctlyClassified(SequenceSample reference, SequenceSample prediction) {
+            calls.add("correct " + reference + " " + prediction);
+        }
+
+        public void missclassified(SequenceSample reference, SequenceSample prediction) {
+            calls.add("missed " + reference + " " + prediction);
+        }
+    }
+
+    private static SequenceLabelerCrossValidator validator(TrainingParameters params,
+            RecordingMonitor monitor) throws IOException {
+        return new SequenceLabelerCrossValidator("en", null, params,
+                SequenceLabelerFixtures.factory(SequenceLabelerFixtures.DESCRIPTOR, 0),
+                monitor);
+    }
+
+    private static void assertSameFMeasure(FMeasure expected, FMeasure actual) {
+        assertEquals(expected.getPrecisionScore(), actual.getPrecisionScore(), 0);
+        assertEquals(expected.getRecallScore(), actual.getRecallScore(), 0);
+        assertEquals(expected.getFMeasure(), actual.getFMeasure(), 0);
+    }
+
+    @Test
+    public void parallelEvaluationEqualsSequential() throws IOException {
+        List<SequenceSample> samples = SequenceLabelerFixtures.samples(300, 17, 8);
+        TrainingParameters params = SequenceLabelerFixtures.trainingParameters();
+        params.put(ParallelSequenceLabelerEventStream.THREADS_PARAMETER, "4");
+
+        RecordingMonitor sequentialMonitor = new RecordingMonitor();
+        SequenceLabelerCrossValidator sequential = validator(params, sequentialMonitor);
+        sequential.evaluate(new CollectionObjectStream<SequenceSample>(samples), 5);
+
+        RecordingMonitor parallelMonitor = new RecordingMonitor();
+        SequenceLabelerCrossValidator parallel = validator(params, parallelMonitor);
+        parallel.evaluate(new CollectionObjectStream<SequenceSample>(samples), 5, 3, 0);
+
+        assertTrue(sequential.getFMeasure().getFMeasure() > 0);
+        assertSameFMeasure(sequential.getFMeasure(), parallel.getFMeasure());
+        assertEquals(samples.size(), sequentialMonitor.calls.size());
+        assertEquals(sequentialMonitor.calls, parallelMonitor.calls);
+        assertEquals(5, parallel.getFoldTimes().size());
+    }
+
+    @Test
+    public void foldTimesAreThoseOfTheLastEvaluation() throws IOException {
+        List<SequenceSample> samples = SequenceLabelerFixtures.samples(100, 19, 5);
+        SequenceLabelerCrossValidator validator = validator(
+                SequenceLabelerFixtures.trainingParameters(), new RecordingMonitor());
+        validator.evaluate(new CollectionObjectStream<SequenceSample>(samples), 4, 2, 0);
+        assertEquals(4, validator.getFoldTimes().size());
+        validator.evaluate(new CollectionObjectStream<SequenceSample>(samples), 3, 2, 0);
+        assertEquals(3, validator.getFoldTimes().size());
+    }
+}
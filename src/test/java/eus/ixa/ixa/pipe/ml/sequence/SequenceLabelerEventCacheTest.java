@@ -0,0 +1,85 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import opennlp.tools.ml.model.Event;
+import opennlp.tools.util.CollectionObjectStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+public class SequenceLabelerEventCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWrittenEvents() throws IOException {
+        List<Event> events = Arrays.asList(
+                new Event("PER-start", new String[] {"w=John", "sh=Xx", "w=John"}),
+                new Event("other", new String[] {"w=vive", "sh=xñ"},
+                        new float[] {0.5f, -2f}),
+                new Event("other", new String[0]));
+        File file = folder.newFile("test.events");
+        SequenceLabelerEventCache.EventWriter writer = new SequenceLabelerEventCache.EventWriter(
+                new FileOutputStream(file));
+        for (Event event : events) {
+            writer.write(event);
+        }
+        writer.close();
+
+        SequenceLabelerEventCache.EventFileStream stream = new SequenceLabelerEventCache.EventFileStream(
+                file);
+        for (int pass = 0; pass < 2; pass++) {
+            for (Event event : events) {
+                Event read = stream.read();
+                assertEquals(event.getOutcome(), read.getOutcome());
+                assertArrayEquals(event.getContext(), read.getContext());
+                if (event.getValues() == null) {
+                    assertNull(read.getValues());
+                } else {
+                    assertArrayEquals(event.getValues(), read.getValues(), 0f);
+                }
+            }
+            assertNull(stream.read());
+            stream.reset();
+        }
+        stream.close();
+    }
+
+    @Test
+    public void keysDependOnSamplesAndFeatures() throws IOException {
+        SequenceLabelerFactory factory = new SequenceLabelerFactory(
+                "<generators><token/></generators>".getBytes("UTF-8"),
+                new HashMap<String, Object>(), new BioCodec());
+        SequenceLabelerFactory otherFactory = new SequenceLabelerFactory(
+                "<generators><tokenclass/></generators>".getBytes("UTF-8"),
+                new HashMap<String, Object>(), new BioCodec());
+        List<SequenceSample> samples = Arrays.asList(new SequenceSample(
+                new String[] {"John", "lives"}, new Span[] {new Span(0, 1, "PER")}, true));
+        List<SequenceSample> otherSamples = Arrays.asList(new SequenceSample(
+                new String[] {"John", "lives"}, new Span[] {new Span(0, 1, "LOC")}, true));
+
+        String key = SequenceLabelerEventCache.getKey(
+                new CollectionObjectStream<SequenceSample>(samples), null, factory);
+        assertEquals(key, SequenceLabelerEventCache.getKey(
+                new CollectionObjectStream<SequenceSample>(samples), null, factory));
+        assertNotEquals(key, SequenceLabelerEventCache.getKey(
+                new CollectionObjectStream<SequenceSample>(otherSamples), null, factory));
+        assertNotEquals(key, SequenceLabelerEventCache.getKey(
+                new CollectionObjectStream<SequenceSample>(samples), null, otherFactory));
+    }
+}
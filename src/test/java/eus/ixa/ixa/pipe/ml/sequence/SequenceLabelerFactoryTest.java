@@ -0,0 +1,111 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.features.FeatureHasher;
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+public class SequenceLabelerFactoryTest {
+
+    private static final int HASH_SIZE = 64;
+
+    private static SequenceLabelerModel reload(SequenceLabelerModel model) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.serialize(out);
+        return new SequenceLabelerModel(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void hashesFeaturesIntoTheTable() {
+        FeatureHasher hasher = new FeatureHasher(HASH_SIZE);
+        assertEquals(HASH_SIZE, hasher.getTableSize());
+        Set<Integer> buckets = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            String feature = "w=" + i;
+            int bucket = hasher.hash(feature);
+            assertTrue(bucket >= 0 && bucket < HASH_SIZE);
+            assertEquals(bucket, new FeatureHasher(HASH_SIZE).hash(feature));
+            assertEquals(Integer.toString(bucket), hasher.hashFeature(feature));
+            // every bucket is represented by one shared string
+            assertSame(hasher.hashFeature(feature), hasher.hashFeature(new String(feature)));
+            buckets.add(bucket);
+        }
+        assertEquals(HASH_SIZE, buckets.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyTable() {
+        new FeatureHasher(0);
+    }
+
+    @Test
+    public void reloadedModelHashesLikeTheTrainedOne() throws IOException {
+        List<SequenceSample> samples = SequenceLabelerFixtures.samples(300, 7, 20);
+        SequenceLabelerFactory factory = SequenceLabelerFixtures.factory(
+                SequenceLabelerFixtures.DESCRIPTOR, HASH_SIZE);
+        assertEquals(HASH_SIZE, factory.getFeatureHashSize());
+        SequenceLabelerModel model = SequenceLabelerFixtures.train(samples,
+                SequenceLabelerFixtures.trainingParameters(), factory);
+        SequenceLabelerModel reloaded = reload(model);
+
+        assertEquals(Integer.toString(HASH_SIZE), reloaded.getManifestProperty(
+                SequenceLabelerModel.FEATURE_HASH_SIZE_PARAMETER));
+        assertEquals(HASH_SIZE, reloaded.getFactory().getFeatureHashSize());
+
+        SequenceContextGenerator generator = factory.createContextGenerator();
+        SequenceContextGenerator reloadedGenerator = reloaded.getFactory()
+                .createContextGenerator();
+        for (SequenceSample sample : samples.subList(0, 50)) {
+            String[] tokens = sample.getTokens();
+            String[] outcomes = new String[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                String[] context = generator.getContext(i, tokens, outcomes, null);
+                assertArrayEquals(context, reloadedGenerator.getContext(i, tokens, outcomes,
+                        null));
+                for (String feature : context) {
+                    int bucket = Integer.parseInt(feature);
+                    assertTrue(bucket >= 0 && bucket < HASH_SIZE);
+                }
+                outcomes[i] = "O";
+            }
+        }
+
+        SequenceLabelerME tagger = new SequenceLabelerME(model);
+        SequenceLabelerME reloadedTagger = new SequenceLabelerME(reloaded);
+        int names = 0;
+        for (SequenceSample sample : samples.subList(0, 50)) {
+            Span[] spans = tagger.tag(sample.getTokens());
+            Span[] reloadedSpans = reloadedTagger.tag(sample.getTokens());
+            assertArrayEquals(spans, reloadedSpans);
+            for (int i = 0; i < spans.length; i++) {
+                assertEquals(spans[i].getProb(), reloadedSpans[i].getProb(), 0);
+            }
+            names += spans.length;
+        }
+        assertTrue(names > 0);
+    }
+
+    @Test
+    public void unhashedModelHasNoHashSize() throws IOException {
+        SequenceLabelerModel reloaded = reload(SequenceLabelerFixtures.train(
+                SequenceLabelerFixtures.samples(50, 3, 0),
+                SequenceLabelerFixtures.trainingParameters(),
+                SequenceLabelerFixtures.factory(SequenceLabelerFixtures.DESCRIPTOR, 0)));
+        assertNull(reloaded.getManifestProperty(
+                SequenceLabelerModel.FEATURE_HASH_SIZE_PARAMETER));
+        assertEquals(0, reloaded.getFactory().getFeatureHashSize());
+    }
+}
@@ -0,0 +1,158 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.TrainingParameters;
+
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+/**
+ * Small corpora and models trained in memory for the tests.
+ */
+public final class SequenceLabelerFixtures {
+
+    public static final String DESCRIPTOR = "<generators><cache><generators>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><tokenclass/></window>"
+            + "<window prevLength=\"2\" nextLength=\"2\"><token/></window>"
+            + "<definition/><prevmap/><bigram/></generators></cache></generators>";
+
+    private static final String[] WORDS = {"John", "lives", "in", "Paris", ".",
+        "Mary", "went", "to", "London", "Smith", "Berlin", "the", "a", "city"};
+
+    private SequenceLabelerFixtures() {
+    }
+
+    /**
+     * Generate sentences with the capitalized words labeled as PER or LOC.
+     * @param size the number of sentences
+     * @param seed the seed of the generator
+     * @param documentRate one in documentRate sentences starts a document, or
+     * none if 0
+     * @return the samples
+     */
+    public static List<SequenceSample> samples(int size, long seed, int documentRate) {
+        Random random = new Random(seed);
+        List<SequenceSample> samples = new ArrayList<SequenceSample>();
+        for (int i = 0; i < size; i++) {
+            String[] tokens = new String[1 + random.nextInt(12)];
+            List<Span> spans = new ArrayList<Span>();
+            for (int j = 0; j < tokens.length; j++) {
+                tokens[j] = WORDS[random.nextInt(WORDS.length)];
+                if (Character.isUpperCase(tokens[j].charAt(0))) {
+                    // the type depends on the word and on the previous one
+                    String type = tokens[j].length() % 2 == 0
+                            || (j > 0 && tokens[j - 1].equals("to")) ? "LOC" : "PER";
+                    spans.add(new Span(j, j + 1, type));
+                }
+            }
+            samples.add(new SequenceSample(tokens, spans.toArray(new Span[spans.size()]),
+                    documentRate > 0 && random.nextInt(documentRate) == 0));
+        }
+        return samples;
+    }
+
+    /**
+     * Generate sentences with every token labeled with its part of speech.
+     * @param size the number of sentences
+     * @param seed the seed of the generator
+     * @return the samples
+     */
+    public static List<SequenceSample> posSamples(int size, long seed) {
+        List<SequenceSample> samples = new ArrayList<SequenceSample>();
+        for (SequenceSample sample : samples(size, seed, 0)) {
+            String[] tokens = sample.getTokens();
+            Span[] tags = new Span[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                String tag;
+                if (Character.isUpperCase(tokens[i].charAt(0))) {
+                    tag = "NNP";
+                } else if (tokens[i].equals(".")) {
+                    tag = "PUNCT";
+                } else if (tokens[i].equals("the") || tokens[i].equals("a")) {
+                    tag = "DT";
+                } else if (tokens[i].equals("in") || tokens[i].equals("to")) {
+                    tag = "IN";
+                } else if (tokens[i].equals("city")) {
+                    tag = "NN";
+                } else {
+                    tag = "VB";
+                }
+                tags[i] = new Span(i, i + 1, tag);
+            }
+            samples.add(new SequenceSample(tokens, tags, false));
+        }
+        return samples;
+    }
+
+    /**
+     * Get the parameters of a quick perceptron training.
+     * @return the parameters
+     */
+    public static TrainingParameters trainingParameters() {
+        TrainingParameters params = new TrainingParameters();
+        params.put(TrainingParameters.ALGORITHM_PARAM, "PERCEPTRON");
+        params.put(TrainingParameters.ITERATIONS_PARAM, "20");
+        params.put(TrainingParameters.CUTOFF_PARAM, "0");
+        return params;
+    }
+
+    /**
+     * Create a factory without resources.
+     * @param descriptor the feature generator descriptor
+     * @param featureHashSize the hashing table size, 0 to not hash the features
+     * @return the factory
+     */
+    public static SequenceLabelerFactory factory(String descriptor, int featureHashSize)
+            throws IOException {
+        return new SequenceLabelerFactory(descriptor.getBytes("UTF-8"),
+                new HashMap<String, Object>(), new BilouCodec(), featureHashSize);
+    }
+
+    /**
+     * Train a model.
+     * @param samples the training samples
+     * @param params the training parameters
+     * @param factory the factory
+     * @return the model
+     */
+    public static SequenceLabelerModel train(List<SequenceSample> samples,
+            TrainingParameters params, SequenceLabelerFactory factory) throws IOException {
+        return SequenceLabelerME.train("en", null,
+                new CollectionObjectStream<SequenceSample>(samples), params, factory);
+    }
+
+    /**
+     * Train a model with the default descriptor and parameters.
+     * @return the model
+     */
+    public static SequenceLabelerModel train() throws IOException {
+        return train(samples(300, 7, 20), trainingParameters(), factory(DESCRIPTOR, 0));
+    }
+
+    /**
+     * Train a part of speech model with the default descriptor and
+     * parameters.
+     * @return the model
+     */
+    public static SequenceLabelerModel trainPos() throws IOException {
+        return train(posSamples(300, 7), trainingParameters(), factory(DESCRIPTOR, 0));
+    }
+
+    /**
+     * Create a factory with resources.
+     * @param descriptor the feature generator descriptor
+     * @param resources the resources of the feature generators
+     * @return the factory
+     */
+    public static SequenceLabelerFactory factory(String descriptor,
+            Map<String, Object> resources) throws IOException {
+        return new SequenceLabelerFactory(descriptor.getBytes("UTF-8"), resources,
+                new BilouCodec(), 0);
+    }
+}
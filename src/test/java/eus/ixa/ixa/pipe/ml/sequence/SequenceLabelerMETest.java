@@ -0,0 +1,228 @@
+package eus.ixa.ixa.pipe.ml.sequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.util.InvalidFormatException;
+import opennlp.tools.util.featuregen.CustomFeatureGenerator;
+import opennlp.tools.util.featuregen.FeatureGeneratorResourceProvider;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eus.ixa.ixa.pipe.ml.utils.Span;
+
+public class SequenceLabelerMETest {
+
+    private static SequenceLabelerModel model;
+    private static List<String[]> sentences;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        model = SequenceLabelerFixtures.train();
+        sentences = new ArrayList<String[]>();
+        for (SequenceSample sample : SequenceLabelerFixtures.samples(200, 13, 0)) {
+            sentences.add(sample.getTokens());
+        }
+    }
+
+    private static List<Span[]> tagSequentially(List<String[]> sentences) {
+        SequenceLabelerME tagger = new SequenceLabelerME(model);
+        List<Span[]> spans = new ArrayList<Span[]>();
+        for (String[] tokens : sentences) {
+            spans.add(tagger.tag(tokens));
+        }
+        return spans;
+    }
+
+    private static void assertSameSpans(List<Span[]> expected, List<Span[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        int names = 0;
+        for (Span[] spans : expected) {
+            names += spans.length;
+        }
+        assertTrue(names > 0);
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+            for (int j = 0; j < expected.get(i).length; j++) {
+                assertEquals(expected.get(i)[j].getProb(), actual.get(i)[j].getProb(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentTaggingEqualsSequential() throws Exception {
+        List<Span[]> expected = tagSequentially(sentences);
+        final SequenceLabelerME tagger = new SequenceLabelerME(model);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Span[]>>> futures = new ArrayList<Future<List<Span[]>>>();
+            for (int task = 0; task < 16; task++) {
+                futures.add(executor.submit(new Callable<List<Span[]>>() {
+                    public List<Span[]> call() {
+                        // the adaptive data of the thread may come from a previous task
+                        tagger.clearAdaptiveData();
+                        List<Span[]> spans = new ArrayList<Span[]>();
+                        for (String[] tokens : sentences) {
+                            spans.add(tagger.tag(tokens));
+                        }
+                        return spans;
+                    }
+                }));
+            }
+            for (Future<List<Span[]>> future : futures) {
+                assertSameSpans(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentTaggingWithContextsEqualsSequential() throws Exception {
+        List<Span[]> expected = tagSequentially(sentences);
+        final SequenceLabelerME tagger = new SequenceLabelerME(model);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Span[]>>> futures = new ArrayList<Future<List<Span[]>>>();
+            for (int task = 0; task < 16; task++) {
+                futures.add(executor.submit(new Callable<List<Span[]>>() {
+                    public List<Span[]> call() {
+                        SequenceLabelerContext context = tagger.createContext();
+                        List<Span[]> spans = new ArrayList<Span[]>();
+                        for (String[] tokens : sentences) {
+                            spans.add(tagger.tag(tokens, context));
+                        }
+                        return spans;
+                    }
+                }));
+            }
+            for (Future<List<Span[]>> future : futures) {
+                assertSameSpans(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void batchTaggingEqualsSequential() {
+        SequenceLabelerME tagger = new SequenceLabelerME(model);
+        assertSameSpans(tagSequentially(sentences), tagger.tag(sentences));
+    }
+
+    @Test
+    public void documentApisAgree() {
+        List<List<String[]>> documents = documents(sentences, 23);
+        SequenceLabelerME tagger = new SequenceLabelerME(model);
+        // adaptive data collected by the thread before the documents
+        for (String[] tokens : sentences) {
+            tagger.tag(tokens);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<List<Span[]>> concurrent = tagger.tag(documents, executor);
+            for (int i = 0; i < documents.size(); i++) {
+                List<Span[]> expected = tagSequentially(documents.get(i));
+                assertSameSpans(expected, tagger.tag(documents.get(i)));
+                assertSameSpans(expected, concurrent.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<List<String[]>> documents(List<String[]> sentences, int size) {
+        List<List<String[]>> documents = new ArrayList<List<String[]>>();
+        for (int i = 0; i < sentences.size(); i += size) {
+            documents.add(sentences.subList(i, Math.min(i + size, sentences.size())));
+        }
+        return documents;
+    }
+
+    @Test
+    public void executorTaggingEqualsSequential() {
+        List<List<String[]>> documents = documents(sentences, 17);
+        SequenceLabelerME tagger = new SequenceLabelerME(model);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<List<Span[]>> spans = tagger.tag(documents, executor);
+            assertEquals(documents.size(), spans.size());
+            for (int i = 0; i < documents.size(); i++) {
+                // every document is tagged as by a new labeler
+                assertSameSpans(tagSequentially(documents.get(i)), spans.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Records, for every sentence, the number of sentences for which the
+     * adaptive data was updated since it was last cleared.
+     */
+    public static class AdaptiveDataRecorder extends CustomFeatureGenerator {
+
+        private static final Map<String[], Integer> positions = Collections.synchronizedMap(
+                new IdentityHashMap<String[], Integer>());
+        private int position = 0;
+
+        public void createFeatures(List<String> features, String[] tokens, int index,
+                String[] previousOutcomes) {
+            if (!positions.containsKey(tokens)) {
+                positions.put(tokens, position);
+            }
+        }
+
+        public void updateAdaptiveData(String[] tokens, String[] outcomes) {
+            position++;
+        }
+
+        public void clearAdaptiveData() {
+            position = 0;
+        }
+
+        public void init(Map<String, String> properties,
+                FeatureGeneratorResourceProvider resourceProvider) throws InvalidFormatException {
+        }
+    }
+
+    @Test
+    public void executorTaggingClearsAdaptiveDataPerDocument() throws IOException {
+        String descriptor = SequenceLabelerFixtures.DESCRIPTOR.replace("<bigram/>",
+                "<bigram/><custom class=\"" + AdaptiveDataRecorder.class.getName() + "\"/>");
+        SequenceLabelerME tagger = new SequenceLabelerME(SequenceLabelerFixtures.train(
+                SequenceLabelerFixtures.samples(100, 3, 10),
+                SequenceLabelerFixtures.trainingParameters(),
+                SequenceLabelerFixtures.factory(descriptor, 0)));
+        List<String[]> copies = new ArrayList<String[]>();
+        for (String[] tokens : sentences) {
+            copies.add(tokens.clone());
+        }
+        List<List<String[]>> documents = documents(copies, 9);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AdaptiveDataRecorder.positions.clear();
+            tagger.tag(documents, executor);
+        } finally {
+            executor.shutdown();
+        }
+        for (List<String[]> document : documents) {
+            for (int i = 0; i < document.size(); i++) {
+                assertEquals(Integer.valueOf(i), AdaptiveDataRecorder.positions.get(document.get(i)));
+            }
+        }
+    }
+}
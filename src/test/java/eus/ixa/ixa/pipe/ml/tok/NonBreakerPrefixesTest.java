@@ -0,0 +1,28 @@
+package eus.ixa.ixa.pipe.ml.tok;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class NonBreakerPrefixesTest {
+
+    private static final String[] WORDS = {"", "A", "Ark", "ark", "Sep", "Sept",
+        "Septt", "prov", "provs", "prov(s)", "e.g", "eg", "e", "Nos", "No", "nos",
+        "N", "figs", "fig", "Pág", "pág", "x", "xy", "xyz"};
+
+    @Test
+    public void sameWordsAsRegex() {
+        String[] regexes = {NonPeriodBreaker.NON_BREAKER_DIGITS,
+            "[A]rk|Sept?|prov(s)|e\\.g|x(y(z)?)?",
+            "|Kans?||[Ee]ka|",
+            // not expanded, matched with the regular expression
+            "e.g|[a-z]|x+"};
+        for (String regex : regexes) {
+            NonBreakerPrefixes prefixes = new NonBreakerPrefixes(regex);
+            for (String word : WORDS) {
+                assertEquals(regex + " " + word, word.matches("(" + regex + ")"),
+                        prefixes.matches(word));
+            }
+        }
+    }
+}
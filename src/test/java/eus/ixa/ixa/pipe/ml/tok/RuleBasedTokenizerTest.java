@@ -0,0 +1,193 @@
+package eus.ixa.ixa.pipe.ml.tok;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+/**
+ * Checks the single pass rules of the {@link RuleBasedTokenizer} against the
+ * chain of regular expression replacements they implement.
+ */
+public class RuleBasedTokenizerTest {
+
+    private static final String[] LANGUAGES = {"ca", "de", "en", "es", "eu",
+        "fr", "gl", "it", "nl", "pt", "ru"};
+
+    private static final String[] SENTENCES = {
+        "Mr. Smith doesn't like the U.S.A. , he said: \"I'm going home...\"",
+        "L'home d'Europa va arribar a les 10:30 amb 1,200 euros!!",
+        "Don' t do it , it 's the 1990's and we'll see... or not ....",
+        "Visit http : // www.ixa.eus / ixa-pipes or ftp : //ftp.example.com /files",
+        "¿Qué pasa? ¡Nada! -- dijo el Sr. García - o no / quizás -",
+        "Der Preis beträgt ca. 3.000,50 € (inkl. MwSt.) am 12.3.2015.",
+        "Ceci n'est pas une pipe , c'est l'art d'aujourd'hui’",
+        "Привет , мир... Это тест: 1,5 и 2:3 ¶ ¶ конец",
+        "Jon 's car 'n' stuff ' quoted ' 'x' o’clock rock’n’roll",
+        "  tabs\tand nbsp line​zero width   spaces  ",
+        "𝐀’s 😀, emoji: 𝟎,5 � done.",
+        "DOTMULTI. and ...DOTMULTI.. word.. a.b.c. e.g. i.e. No. 5",
+    };
+
+    @Test
+    public void characterClasses() {
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+            String s = new String(Character.toChars(cp));
+            assertEquals(Integer.toHexString(cp),
+                    RuleBasedTokenizer.specials.matcher(s).matches(),
+                    TokenizerRules.isSpecial(cp));
+            if (cp <= Character.MAX_VALUE) {
+                char c = (char) cp;
+                assertEquals(Integer.toHexString(cp),
+                        RuleBasedTokenizer.asciiHex.matcher(s).matches(),
+                        TokenizerRules.isAsciiHex(c));
+                assertEquals(Integer.toHexString(cp),
+                        RuleBasedTokenizer.generalBlankPunctuation.matcher(s).matches(),
+                        TokenizerRules.isGeneralBlankPunctuation(c));
+            }
+        }
+    }
+
+    @Test
+    public void allLanguages() {
+        for (String lang : LANGUAGES) {
+            for (String sentence : SENTENCES) {
+                assertSameTokens(lang, sentence);
+            }
+        }
+    }
+
+    @Test
+    public void randomText() {
+        String[] pieces = {"a", "n", "t", "s", "re", "ll", "D", "é", "ж",
+            "𝐀", "𝟎", "😀", "\uD800", "\uDC00", "1", "9",
+            "'", "’", "‘", "\u0092", ".", "..", ",", ":", "?", "!", "¿",
+            "-", "—", "/", " ", "  ", "\t", " ", " ", "\u0085", "¶",
+            "$", "(", "\"", "@", "#", "`", "�", "http", "://", ".com", "DOTMULTI",
+            "Mr.", "n't", "'s"};
+        Random random = new Random(42);
+        for (String lang : new String[] {"en", "es"}) {
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(30);
+                for (int j = 0; j < length; j++) {
+                    sb.append(pieces[random.nextInt(pieces.length)]);
+                }
+                assertSameTokens(lang, sb.toString());
+            }
+        }
+    }
+
+    private static void assertSameTokens(String lang, String sentence) {
+        Properties properties = new Properties();
+        properties.setProperty("language", lang);
+        properties.setProperty("untokenizable", "no");
+        RuleBasedTokenizer tokenizer = new RuleBasedTokenizer(sentence, properties);
+        List<List<Token>> expected = referenceTokenize(sentence, properties);
+        List<List<Token>> actual = tokenizer.tokenize(new String[] {sentence});
+        assertEquals(sentence, toString(expected), toString(actual));
+    }
+
+    private static String toString(List<List<Token>> sentences) {
+        StringBuilder sb = new StringBuilder();
+        for (List<Token> tokens : sentences) {
+            for (Token token : tokens) {
+                sb.append(token.getTokenValue()).append('|').append(token.startOffset())
+                        .append('|').append(token.tokenLength()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The tokenization with the regular expressions, as it was before the
+     * rules were compiled.
+     */
+    private static List<List<Token>> referenceTokenize(String sentence, Properties properties) {
+        NonPeriodBreaker nonBreaker = new NonPeriodBreaker(properties);
+        TokenFactory tokenFactory = new TokenFactory();
+        List<Token> tokens = new ArrayList<Token>();
+        int prevIndex = 0;
+        for (String arrayToken : referenceTokens(sentence,
+                properties.getProperty("language"), nonBreaker)) {
+            int curIndex = sentence.indexOf(arrayToken, prevIndex);
+            if (curIndex == -1) {
+                curIndex = prevIndex + 1;
+            }
+            Token curToken = tokenFactory.createToken(arrayToken, curIndex,
+                    arrayToken.length());
+            if (curToken.tokenLength() != 0
+                    && !RuleBasedTokenizer.replacement.matcher(curToken.getTokenValue()).matches()) {
+                tokens.add(curToken);
+            }
+            prevIndex = curIndex + curToken.tokenLength();
+        }
+        List<List<Token>> result = new ArrayList<List<Token>>();
+        result.add(tokens);
+        RuleBasedTokenizer.normalizeTokens(result, properties.getProperty("language"));
+        return result;
+    }
+
+    private static String[] referenceTokens(String line, String lang,
+            NonPeriodBreaker nonBreaker) {
+        line = line.trim();
+        line = RuleBasedTokenizer.doubleSpaces.matcher(line).replaceAll(" ");
+        line = RuleBasedTokenizer.asciiHex.matcher(line).replaceAll(" ");
+        line = RuleBasedTokenizer.generalBlankPunctuation.matcher(line).replaceAll(" ");
+        line = RuleBasedTokenizer.qexc.matcher(line).replaceAll(" $1 ");
+        line = RuleBasedTokenizer.spaceDashSpace.matcher(line).replaceAll(" $1 ");
+        line = RuleBasedTokenizer.specials.matcher(line).replaceAll(" $1 ");
+
+        line = RuleBasedTokenizer.multiDots.matcher(line).replaceAll(" DOTMULTI$1 ");
+        Matcher dotMultiDot = RuleBasedTokenizer.dotmultiDot.matcher(line);
+        while (dotMultiDot.find()) {
+            line = RuleBasedTokenizer.dotmultiDotAny.matcher(line).replaceAll("DOTDOTMULTI $1");
+            line = dotMultiDot.replaceAll("DOTDOTMULTI");
+            dotMultiDot.reset(line);
+        }
+
+        line = RuleBasedTokenizer.noDigitComma.matcher(line).replaceAll("$1 $2");
+        line = RuleBasedTokenizer.commaNoDigit.matcher(line).replaceAll("$1 $2");
+        line = RuleBasedTokenizer.digitCommaNoDigit.matcher(line).replaceAll("$1 $2 $3");
+        line = RuleBasedTokenizer.noDigitCommaDigit.matcher(line).replaceAll("$1 $2 $3");
+
+        line = RuleBasedTokenizer.noAlphaAposNoAlpha.matcher(line).replaceAll("$1 $2 $3");
+        line = RuleBasedTokenizer.noAlphaDigitAposAlpha.matcher(line).replaceAll("$1 $2 $3");
+        line = RuleBasedTokenizer.alphaAposNonAlpha.matcher(line).replaceAll("$1 $2 $3");
+        if (lang.equalsIgnoreCase("en")) {
+            line = RuleBasedTokenizer.englishNegations.matcher(line).replaceAll("$1 $2$3");
+        }
+        line = RuleBasedTokenizer.englishApos.matcher(line).replaceAll("$1 $2$3");
+        line = RuleBasedTokenizer.yearApos.matcher(line).replaceAll("$1 $2$3");
+        line = RuleBasedTokenizer.AlphaAposAlpha.matcher(line).replaceAll("$1$2 $3");
+        line = RuleBasedTokenizer.endOfSentenceApos.matcher(line).replaceAll("$1 $2");
+        line = RuleBasedTokenizer.deTokenEnglishNegation.matcher(line).replaceAll("$1$2$3");
+
+        line = nonBreaker.TokenizerNonBreaker(line);
+
+        while (line.contains("DOTDOTMULTI")) {
+            line = line.replaceAll("DOTDOTMULTI", "DOTMULTI.");
+        }
+        line = line.replaceAll("DOTMULTI", ".");
+
+        Matcher linkMatcher = RuleBasedTokenizer.wrongLink.matcher(line);
+        StringBuffer sb = new StringBuffer();
+        while (linkMatcher.find()) {
+            linkMatcher.appendReplacement(sb, linkMatcher.group().replaceAll("\\s", ""));
+        }
+        linkMatcher.appendTail(sb);
+        line = sb.toString();
+        line = RuleBasedTokenizer.beginLink.matcher(line).replaceAll("$1://");
+        line = RuleBasedTokenizer.endLink.matcher(line).replaceAll("$1$2");
+
+        line = line.trim();
+        line = RuleBasedTokenizer.doubleSpaces.matcher(line).replaceAll(" ");
+        line = RuleBasedTokenizer.detokenParagraphs.matcher(line).replaceAll("$1$2");
+        return line.split(" ");
+    }
+}
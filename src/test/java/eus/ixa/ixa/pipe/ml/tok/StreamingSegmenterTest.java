@@ -0,0 +1,116 @@
+package eus.ixa.ixa.pipe.ml.tok;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the {@link StreamingSegmenter} returns the same sentences as
+ * the {@link RuleBasedSegmenter} on the whole text, whatever the chunk size.
+ */
+public class StreamingSegmenterTest {
+
+    private static final String TEXT = "Mr. Smith went to Washington.\n"
+            + "He said: \"I will not go back.\" And then\n"
+            + "he left ... Really? Yes!\n"
+            + "\n"
+            + "A new paragraph starts here. It has No. 5 and ca. 3 things, e.g. apples.\n"
+            + "\n"
+            + "\n"
+            + "\n"
+            + "this paragraph is spurious and continues\n"
+            + "\n"
+            + "in lowercase. (But) - (This) one ends.\n"
+            + "\"Quoted.\" 'Single.' Visit www.ixa.eus. Or http://ixa.eus now.\n"
+            + "¿Qué pasa? ¡Nada! El Sr. García llegó a las 10.30 h. Fin...\n"
+            + "\n"
+            + "Último párrafo";
+
+    @Test
+    public void sameSentencesAsWholeText() throws IOException {
+        for (String hardParagraph : new String[] {"no", "yes"}) {
+            for (String lang : new String[] {"en", "es"}) {
+                Properties properties = properties(lang, hardParagraph);
+                for (int chunkSize = 1; chunkSize < 300; chunkSize += 7) {
+                    assertSameSentences(TEXT, properties, chunkSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomText() throws IOException {
+        String[] words = {"Mr.", "Dr.", "e.g.", "ca.", "No.", "5", "end.", "end?",
+            "end!", "...", "word", "Word", "\"Quote.\"", "(", ")", "-", "www.ixa.eus",
+            "lower", "Upper", "¿Qué?", "¡Ay!", "", ""};
+        Random random = new Random(7);
+        for (int i = 0; i < 600; i++) {
+            Properties properties = properties("en", i % 2 == 0 ? "no" : "yes");
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                sb.append(words[random.nextInt(words.length)]);
+                sb.append(random.nextInt(5) == 0 ? "\n" : " ");
+            }
+            assertSameSentences(sb.toString(), properties, 1 + random.nextInt(40));
+        }
+    }
+
+    @Test
+    public void longTextWithoutSentenceBreaks() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int words = 0;
+        for (int line = 0; line < 20000; line++) {
+            for (int j = 0; j < 10; j++) {
+                sb.append("word ");
+                words++;
+            }
+            sb.append('\n');
+        }
+        StreamingSegmenter segmenter = new StreamingSegmenter(new StringReader(
+                sb.toString()), properties("en", "no"), 1000, 8000);
+        int sentences = 0;
+        int segmentedWords = 0;
+        String sentence;
+        while ((sentence = segmenter.read()) != null) {
+            sentences++;
+            // at most the maximum length plus a chunk and a line
+            assertTrue(sentence.length() <= 8000 + 1000 + 60);
+            for (String token : sentence.split(" ")) {
+                if (token.equals("word")) {
+                    segmentedWords++;
+                }
+            }
+        }
+        segmenter.close();
+        assertTrue(sentences > 100);
+        assertEquals(words, segmentedWords);
+    }
+
+    private static void assertSameSentences(String text, Properties properties,
+            int chunkSize) throws IOException {
+        String builtText = RuleBasedSegmenter.readText(new BufferedReader(
+                new StringReader(text)));
+        String[] expected = new RuleBasedSegmenter(builtText, properties)
+                .segmentSentence();
+        StreamingSegmenter segmenter = new StreamingSegmenter(
+                new StringReader(text), properties, chunkSize);
+        assertArrayEquals(text + " / " + chunkSize, expected, segmenter.segmentSentence());
+        segmenter.close();
+    }
+
+    private static Properties properties(String lang, String hardParagraph) {
+        Properties properties = new Properties();
+        properties.setProperty("language", lang);
+        properties.setProperty("hardParagraph", hardParagraph);
+        return properties;
+    }
+}
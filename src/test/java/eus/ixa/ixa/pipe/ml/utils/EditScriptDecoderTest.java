@@ -0,0 +1,96 @@
+package eus.ixa.ixa.pipe.ml.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class EditScriptDecoderTest {
+
+    private static final String[][] PAIRS = { { "running", "run" },
+            { "houses", "house" }, { "went", "go" }, { "children", "child" },
+            { "casas", "casa" }, { "etxeak", "etxe" }, { "am", "be" },
+            { "x", "abcdefghijkl" }, { "same", "same" } };
+
+    @Test
+    public void decodesSameLemmasAsParsingTheScript() {
+        EditScriptDecoder decoder = new EditScriptDecoder(4);
+        for (int round = 0; round < 2; round++) {
+            for (String[] pair : PAIRS) {
+                String ses = StringUtils.getShortestEditScript(pair[0], pair[1]);
+                for (String[] other : PAIRS) {
+                    assertEquals(StringUtils.applyShortestEditScript(other[0], ses),
+                            decoder.decode(other[0], ses));
+                }
+            }
+        }
+        assertEquals(4, decoder.size());
+    }
+
+    @Test
+    public void cachedLemmasAreReused() {
+        EditScriptDecoder decoder = new EditScriptDecoder(16);
+        String ses = StringUtils.getShortestEditScript("houses", "house");
+        String lemma = decoder.decode("houses", ses);
+        assertSame(lemma, decoder.decode(new String("houses"), new String(ses)));
+        decoder.clear();
+        assertEquals(0, decoder.size());
+        assertEquals("house", new EditScriptDecoder(0).decode("houses", ses));
+    }
+
+    @Test
+    public void decodesConcurrently() throws Exception {
+        final EditScriptDecoder decoder = new EditScriptDecoder(8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int decoded = 0;
+                        for (int round = 0; round < 200; round++) {
+                            for (String[] pair : PAIRS) {
+                                String ses = StringUtils.getShortestEditScript(pair[0], pair[1]);
+                                for (String[] other : PAIRS) {
+                                    assertEquals(StringUtils.applyShortestEditScript(other[0], ses),
+                                            decoder.decode(other[0], ses));
+                                    decoded++;
+                                }
+                            }
+                        }
+                        return decoded;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(200 * PAIRS.length * PAIRS.length, result.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void decodesLemmaSpans() {
+        String[] tokens = { "Houses", "were", "running" };
+        Span[] spans = {
+                new Span(0, 1, StringUtils.getShortestEditScript("houses", "house")),
+                new Span(1, 2, StringUtils.getShortestEditScript("were", "be")),
+                new Span(2, 3, StringUtils.getShortestEditScript("running", "run")) };
+        assertArrayEquals(new String[] { "house", "be", "run" },
+                StringUtils.decodeLemmas(tokens, spans));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void malformedScriptsFailAsBefore() {
+        new EditScriptDecoder(4).decode("word", "Rxab");
+    }
+}
@@ -0,0 +1,36 @@
+package eus.ixa.ixa.pipe.ml.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class StringUtilsTest {
+
+    private static String fromMatrix(String wordForm, String lemma) {
+        String reversedWF = new StringBuilder(wordForm.toLowerCase()).reverse().toString();
+        String reversedLemma = new StringBuilder(lemma.toLowerCase()).reverse().toString();
+        if (reversedWF.equals(reversedLemma)) {
+            return "O";
+        }
+        StringBuffer permutations = new StringBuffer();
+        StringUtils.computeShortestEditScript(reversedWF, reversedLemma,
+                StringUtils.levenshteinDistance(reversedWF, reversedLemma), permutations);
+        return permutations.toString();
+    }
+
+    @Test
+    public void shortestEditScriptMatchesDistanceMatrix() {
+        String[][] pairs = { { "running", "run" }, { "Houses", "house" },
+                { "went", "go" }, { "", "abc" }, { "abc", "" }, { "same", "same" },
+                { "etxeetatik", "etxe" }, { "x", "abcdefghijklmnopqrstuvwxyz" },
+                { "abcdefghijklmnopqrstuvwxyz", "zyxwvutsrqponmlkjihgfedcba" } };
+        // twice to reuse the buffers of the thread
+        for (int round = 0; round < 2; round++) {
+            for (String[] pair : pairs) {
+                assertEquals(fromMatrix(pair[0], pair[1]),
+                        StringUtils.getShortestEditScript(pair[0], pair[1]));
+            }
+        }
+        assertEquals("R0ge", StringUtils.getShortestEditScript("seg", "see"));
+    }
+}